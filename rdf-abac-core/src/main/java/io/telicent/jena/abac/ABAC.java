@@ -17,7 +17,10 @@
 package io.telicent.jena.abac;
 
 import java.io.InputStream;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Set;
+import java.util.function.Predicate;
 
 import io.telicent.jena.abac.assembler.SecuredDatasetAssembler;
 import io.telicent.jena.abac.core.*;
@@ -25,14 +28,20 @@ import io.telicent.jena.abac.labels.Labels;
 import io.telicent.jena.abac.labels.LabelsGetter;
 import io.telicent.jena.abac.labels.LabelsStore;
 import io.telicent.jena.abac.labels.LabelsStoreZero;
+import org.apache.jena.atlas.lib.tuple.Tuple;
 import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFParser;
 import org.apache.jena.shacl.ShaclValidator;
 import org.apache.jena.shacl.Shapes;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.DatasetGraphFilteredView;
+import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.sys.TDBInternal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,15 +62,90 @@ public class ABAC {
      */
     public static boolean LEGACY = true;
 
-    /** Per request label evaluation cache size. */
+    /**
+     * Parse simple labels (words, "=", "!=", "&amp;", "|", brackets) directly
+     * from the string, without the general tokenizer. Other labels always use
+     * the general parser.
+     */
+    public static boolean labelParserFastPath = true;
+
+    /**
+     * Store labels in canonical form (see {@link AE#canonical}) when they are
+     * added to a labels store. Labels that are written differently but are the
+     * same expression then share parsing, cache entries and evaluation.
+     */
+    public static boolean canonicalLabels = false;
+
+    /**
+     * For datasets stored in TDB2, execute SPARQL queries with the TDB2 query
+     * engine and check labels on the NodeIds read from the TDB2 indexes.
+     * See {@link DatasetGraphFilteredTDB2}.
+     */
+    public static boolean labelFilterTDB2 = true;
+
+    /**
+     * How long, in milliseconds, a labels store may answer from its previous
+     * index after labels have been added. Within this time, the index is rebuilt
+     * in the background and readers do not wait. After it, readers wait for the
+     * new index. Zero means readers always see the latest labels and the index
+     * is rebuilt on the first reader after a change.
+     */
+    public static long labelsIndexStaleness = 0 ;
+
+    /**
+     * Keep the labels for exact triples (no ANY) of a labels index outside the Java heap.
+     * Only a hash of each triple and a label set id are kept, in direct byte buffers.
+     * This is for labels stores with very many labels for individual triples.
+     */
+    public static boolean labelsExactOffHeap = false ;
+
+    /**
+     * Evaluate the operands of "&amp;" and "|" in the order that, from earlier
+     * evaluations of the same label, is most likely to decide the outcome with
+     * the least work. The outcome is the same whichever order is used.
+     * <p>
+     * The statistics are kept in the parsed labels, which are shared by all
+     * requests, so each evaluation writes to memory shared between threads.
+     * This is off by default; it is for labels with expensive operands whose
+     * outcomes are skewed.
+     */
+    public static boolean adaptiveLabelOrder = false ;
+
+    /**
+     * Number of parsed labels kept, process-wide, so that each label string is
+     * parsed once and its parsed form gathers evaluation statistics.
+     * This is also the number of labels specialized to the attributes of a
+     * request that are kept for the request.
+     */
+    public static int labelExprCacheSize = 10_000 ;
+
+    /**
+     * Per request label evaluation cache size.
+     * @deprecated Not used. Labels are specialized to a request (see {@link #labelExprCacheSize}).
+     */
+    @Deprecated
     public static final int labelEvalCacheSize = 10 ;
 
+    /**
+     * Maximum number of distinct atomic tests ("attribute op value") whose results
+     * are remembered within a request. Tests are numbered process-wide, and each
+     * request keeps the result of each test it has evaluated, using one byte per
+     * slot number in the pages of slot numbers it uses: at most this many bytes per request.
+     */
+    public static int atomSlotsMax = 100_000 ;
+
     /**
      * Per request hierarchy retrieval cache size.
      * This could become a global cache. The answers are not request sensitive.
      */
     public static int hierarchyCacheSize = 10 ;
 
+    /**
+     * Maximum number of entries in a dataset-wide label decision cache.
+     * @see DecisionCache
+     */
+    public static long decisionCacheSize = 10_000 ;
+
     /**
      * Create a {@link DatasetGraphABAC}. One of arguments {@code rules} or
      * {@code labels}, but not both, may be null.
@@ -87,7 +171,8 @@ public class ABAC {
      * This is not used by Fuseki.
      */
     public static DatasetGraph requestDataset(DatasetGraphABAC dsgAuthz, AttributeValueSet attributes, HierarchyGetter function) {
-        CxtABAC cxt = CxtABAC.context(attributes, function, dsgAuthz.getBase());
+        CxtABAC cxt = CxtABAC.context(attributes, function, dsgAuthz.environmentProvider().environment(attributes),
+                                      dsgAuthz.getBase(), dsgAuthz.decisionCache());
         DatasetGraph dsg = filterDataset(dsgAuthz, cxt);
         return dsg;
     }
@@ -99,7 +184,8 @@ public class ABAC {
      * This is not used by Fuseki.
      */
     public static DatasetGraph requestDataset(DatasetGraphABAC dsgAuthz, AttributeValueSet attributes, AttributesStore attrStore) {
-        CxtABAC cxt = CxtABAC.context(attributes, attrStore, dsgAuthz.getBase());
+        CxtABAC cxt = CxtABAC.context(attributes, attrStore, dsgAuthz.environmentProvider().environment(attributes),
+                                      dsgAuthz.getBase(), dsgAuthz.decisionCache());
         DatasetGraph dsg = filterDataset(dsgAuthz, cxt);
         return dsg;
     }
@@ -124,8 +210,17 @@ public class ABAC {
     public static DatasetGraph filterDataset(DatasetGraph dsgBase, LabelsStore labels, String defaultLabel, CxtABAC cxt) {
         QuadFilter filter = null;
         if ( labels != null ) {
-            LabelsGetter getter = triple->labels.labelsForTriples(triple);
+            LabelsGetter getter = LabelsGetter.create(labels);
             filter = combineFilter(filter, Labels.securityFilterByLabel(dsgBase, getter, defaultLabel, cxt));
+            Node labelsGraphName = Labels.labelsGraphName(labels, dsgBase);
+            if ( labelsGraphName != null )
+                // Labels stored in the dataset are not data.
+                filter = combineFilter(quad->!labelsGraphName.equals(quad.getGraph()), filter);
+            if ( labelFilterTDB2 && TDBInternal.isBackedByTDB(dsgBase) ) {
+                DatasetGraphTDB dsgTDB = TDBInternal.getDatasetGraphTDB(dsgBase);
+                Predicate<Tuple<NodeId>> tupleFilter = Labels.securityFilterByLabelTDB2(dsgTDB, labels, defaultLabel, cxt);
+                return new DatasetGraphFilteredTDB2(dsgBase, filter, tupleFilter);
+            }
         }
         DatasetGraph dsg = new DatasetGraphFilteredView(dsgBase, filter, Set.of());
         return dsg;
@@ -136,7 +231,19 @@ public class ABAC {
             return filter2;
         if ( filter2 == null )
             return filter1;
-        return q -> filter1.test(q) && filter2.test(q);
+        return new QuadFilter() {
+            @Override
+            public boolean test(Quad q) {
+                return filter1.test(q) && filter2.test(q);
+            }
+
+            @Override
+            public BitSet testBlock(List<Quad> quads) {
+                BitSet selection = filter1.testBlock(quads);
+                selection.and(filter2.testBlock(quads));
+                return selection;
+            }
+        };
     }
 
 
@@ -26,6 +26,7 @@ import io.telicent.jena.abac.attributes.*;
 import io.telicent.jena.abac.attributes.syntax.AE_Allow;
 import io.telicent.jena.abac.attributes.syntax.AE_Deny;
 import io.telicent.jena.abac.attributes.syntax.AttrExprEvaluator;
+import io.telicent.jena.abac.attributes.syntax.AttrExprNormalizer;
 import io.telicent.jena.abac.attributes.syntax.tokens.Words;
 import io.telicent.jena.abac.core.CxtABAC;
 import io.telicent.jena.abac.core.HierarchyGetter;
@@ -82,6 +83,14 @@ public class AE {
         return parse(string, AttributeParser::parseValueTermList);
     }
 
+    /**
+     * Parse a string to get lists of {@link ValueTerm}, separated by ";".
+     * Used for the chains of a hierarchy that is a partial order.
+     */
+    public static List<List<ValueTerm>> parseValueTermChains(String string) {
+        return parse(string, AttributeParser::parseValueTermChains);
+    }
+
     private static <X> X parse(String string, Function<String, X> action) {
         if ( ABAC.LEGACY )
             return legacy(string, action);
@@ -124,10 +133,41 @@ public class AE {
         return AttrExprEvaluator.attrExprEval(expr, env);
     }
 
+    /**
+     * Specialize an attribute expression to the attributes of a request.
+     * Tests that only depend on the request attributes are evaluated, and the
+     * expression is simplified. The result is {@link AE_Allow}, {@link AE_Deny},
+     * or an expression with the parts that must be evaluated later.
+     */
+    public static AttributeExpr partialEval(AttributeExpr expr, CxtABAC cxt) {
+        return AttrExprEvaluator.partialEval(expr, cxt);
+    }
+
     public static Hierarchy parseHierarchy(String string) {
         return AttributeParser.parseHierarchy(string);
     }
 
+    /**
+     * Rewrite an attribute expression into a canonical form: nested
+     * "&amp;&amp;" and "||" flattened, their operands sorted and duplicates
+     * removed, and unnecessary brackets removed.
+     */
+    public static AttributeExpr normalize(AttributeExpr aExpr) {
+        return AttrExprNormalizer.normalize(aExpr);
+    }
+
+    /**
+     * Return the canonical string for a label.
+     * If the label does not parse, it is returned unchanged.
+     */
+    public static String canonical(String label) {
+        try {
+            return serialize(normalize(parseExpr(label)));
+        } catch (AttributeException ex) {
+            return label;
+        }
+    }
+
     /**
      *  Serialize an attribute expression list.
      */
@@ -24,38 +24,91 @@ import io.telicent.jena.abac.attributes.Attribute;
 import io.telicent.jena.abac.attributes.AttributeValue;
 import io.telicent.jena.abac.attributes.ValueTerm;
 import io.telicent.jena.abac.attributes.syntax.tokens.Words;
+import org.apache.jena.ext.com.google.common.collect.Interner;
+import org.apache.jena.ext.com.google.common.collect.Interners;
 import org.apache.jena.ext.com.google.common.collect.MultimapBuilder;
 import org.apache.jena.ext.com.google.common.collect.SetMultimap;
 
 /**
  * {@code AttributeValueSet} is request-side capabilities that are matched against attribute expressions (the data labelling).
+ * <p>
+ * An {@code AttributeValueSet} is immutable and interned: users with the same
+ * attributes share one object. Each has a 64 bit {@link #fingerprint()},
+ * calculated when it is created, which is independent of the order the
+ * attribute values were given in.
  */
 public class AttributeValueSet {
 
-    public static AttributeValueSet EMPTY = new AttributeValueSet(List.of());
+    // Sets no longer referenced elsewhere are garbage collected.
+    private static final Interner<AttributeValueSet> interner = Interners.newWeakInterner();
 
-    // Attribute to a set of values.
+    public static final AttributeValueSet EMPTY = intern(new AttributeValueSet(List.of()));
+
+    // Attribute to a set of values. Not modified after construction.
     private final SetMultimap<Attribute, ValueTerm> attributes = MultimapBuilder.hashKeys().hashSetValues().build();
+    private final long fingerprint;
 
     private AttributeValueSet(Collection<AttributeValue>aValues) {
         aValues.forEach(av->this.attributes.put(av.attribute(), av.value()));
+        this.fingerprint = calcFingerprint(attributes);
+    }
+
+    private static AttributeValueSet intern(AttributeValueSet attributeValueSet) {
+        return interner.intern(attributeValueSet);
     }
 
     public static AttributeValueSet of(AttributeValue attrValue) {
-        return new AttributeValueSet(List.of(attrValue));
+        return intern(new AttributeValueSet(List.of(attrValue)));
     }
 
     public static AttributeValueSet of(Collection<AttributeValue> attrValues) {
-        return new AttributeValueSet(attrValues);
+        return intern(new AttributeValueSet(attrValues));
     }
 
     // For test convenience
     public static AttributeValueSet of(String ... attributes) {
         List<AttributeValue> attrValues = new ArrayList<>(attributes.length);
         for ( String a : attributes ) {
-            attrValues.add(AttributeValue.of(new Attribute(a), ValueTerm.TRUE));
+            attrValues.add(AttributeValue.of(Attribute.create(a), ValueTerm.TRUE));
+        }
+        return intern(new AttributeValueSet(attrValues));
+    }
+
+    /**
+     * A 64 bit hash of the attribute values.
+     * Equal {@code AttributeValueSet}s have the same fingerprint.
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    // Order independent: the sum of a mixed hash of each attribute-value pair.
+    private static long calcFingerprint(SetMultimap<Attribute, ValueTerm> attributes) {
+        long acc = 0;
+        for ( Map.Entry<Attribute, ValueTerm> e : attributes.entries() ) {
+            long h = hash64(e.getKey().name());
+            ValueTerm v = e.getValue();
+            long hv = v.isBoolean() ? ( v.getBoolean() ? 1 : 2 ) : hash64(v.getString());
+            acc += mix64(h * 0x9E3779B97F4A7C15L + hv);
+        }
+        return mix64(acc + attributes.size());
+    }
+
+    // FNV-1a, 64 bit, over the UTF-16 chars.
+    private static long hash64(String string) {
+        long h = 0xcbf29ce484222325L;
+        for ( int i = 0 ; i < string.length() ; i++ ) {
+            h ^= string.charAt(i);
+            h *= 0x100000001b3L;
         }
-        return new AttributeValueSet(attrValues);
+        return h;
+    }
+
+    // Finalizer step of MurmurHash3.
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
     }
 
     public Collection<Attribute> attributes() { return Collections.unmodifiableCollection(attributes.keySet()); }
@@ -78,7 +131,7 @@ public class AttributeValueSet {
     }
 
     public Collection<ValueTerm> get(Attribute attribute) {
-        return attributes.get(attribute);
+        return Collections.unmodifiableSet(attributes.get(attribute));
     }
 
     @Override
@@ -97,7 +150,7 @@ public class AttributeValueSet {
 
     @Override
     public int hashCode() {
-        return Objects.hash(attributes);
+        return Long.hashCode(fingerprint);
     }
 
     @Override
@@ -109,6 +162,8 @@ public class AttributeValueSet {
         if ( getClass() != obj.getClass() )
             return false;
         AttributeValueSet other = (AttributeValueSet)obj;
+        if ( fingerprint != other.fingerprint )
+            return false;
         return Objects.equals(attributes, other.attributes);
     }
 }
@@ -22,7 +22,6 @@ import io.telicent.jena.abac.attributes.Attribute;
 import io.telicent.jena.abac.attributes.ValueTerm;
 import io.telicent.jena.abac.attributes.syntax.tokens.Words;
 import io.telicent.jena.abac.core.HierarchyGetter;
-import org.apache.jena.atlas.lib.InternalErrorException;
 
 /**
  * A hierarchy is a controlled set of values for an attribute where a user request
@@ -33,6 +32,13 @@ import org.apache.jena.atlas.lib.InternalErrorException;
  * <p>
  * A user request with attribute value 'clearance=secret' will
  * give visibility to data items with 'clearance=ordinary'.
+ * <p>
+ * A hierarchy can also be a partial order, given as several chains that share
+ * values. For example, the chains "ordinary, secret, top secret" and
+ * "ordinary, secret, secret-uk" make "top secret" and "secret-uk" both higher
+ * than "secret", and neither higher than the other. The values below each value
+ * are calculated when the hierarchy is created so comparing two values does not
+ * depend on the size of the hierarchy.
  */
 
 public class Hierarchy {
@@ -40,12 +46,17 @@ public class Hierarchy {
     /** Hierarchy getter function that always return null (no hierarchy). */
     public static HierarchyGetter noHierarchy = a->null;
 
-    // Low (index 0) to high
     private final Attribute attribute;
+    // The chains as given, each low to high. A linear hierarchy has one chain.
+    private final List<List<ValueTerm>> chains;
+    // All values, low to high: each value comes after all the values below it.
     private final List<ValueTerm> hierarchy;
+    private final Map<ValueTerm, Integer> index;
+    // below[i] : the indexes of the values less than or equal to value i.
+    private final BitSet[] below;
 
     public static Hierarchy create(String attrName, String ... strings) {
-        Attribute attr = new Attribute(attrName);
+        Attribute attr = Attribute.create(attrName);
         return create(attr, strings);
     }
 
@@ -69,19 +80,34 @@ public class Hierarchy {
         return new Hierarchy(attr, Arrays.asList(a));
     }
 
+    /**
+     * Create a hierarchy that is a partial order, from chains of values, each
+     * written low to high. A value may appear in more than one chain. The chains
+     * must not make a cycle.
+     */
+    public static Hierarchy createPartialOrder(Attribute attr, List<List<ValueTerm>> chains) {
+        return new Hierarchy(attr, chains, true);
+    }
+
     public Hierarchy(Attribute attr, List<ValueTerm> values) {
-        this.attribute = attr;
-        this.hierarchy = values;
-        checkName();
-        checkNoNulls();
-        checkNoDuplicates();
+        this(attr, Collections.singletonList(values), false);
     }
 
-    private Hierarchy(Attribute attr, ValueTerm...values) {
+    private Hierarchy(Attribute attr, List<List<ValueTerm>> chains, boolean partialOrder) {
         this.attribute = attr;
-        this.hierarchy = List.of(values);    // No nulls.
         checkName();
-        checkNoDuplicates();
+        if ( ! partialOrder && chains.size() != 1 )
+            throw new IllegalArgumentException("A linear hierarchy has one chain of values: "+attr);
+        for ( List<ValueTerm> chain : chains ) {
+            checkNoNulls(chain);
+            checkNoDuplicates(chain);
+        }
+        this.chains = chains.stream().map(List::copyOf).toList();
+        this.hierarchy = order(this.chains);
+        this.index = new HashMap<>();
+        for ( int i = 0 ; i < hierarchy.size() ; i++ )
+            index.put(hierarchy.get(i), i);
+        this.below = reachability(this.chains, hierarchy, index);
     }
 
     private void checkName() {
@@ -94,28 +120,113 @@ public class Hierarchy {
             throw new IllegalArgumentException("Hierarchy name must not contain colon: "+attribute);
     }
 
-    private void checkNoNulls() {
+    private static void checkNoNulls(List<ValueTerm> values) {
         // ArrayList supports null.
-        for (int i = 0; i < hierarchy.size(); i++)
-            if (hierarchy.get(i) == null )
-                throw new IllegalArgumentException("Null in attribute value hierarchy: "+hierarchy);
+        for (int i = 0; i < values.size(); i++)
+            if (values.get(i) == null )
+                throw new IllegalArgumentException("Null in attribute value hierarchy: "+values);
     }
 
-    private void checkNoDuplicates() {
-        Set<ValueTerm> setOf = new HashSet<>(hierarchy);
-        if ( setOf.size() != hierarchy.size() )
-            throw new IllegalArgumentException("Duplicate in attribute value hierarchy: "+hierarchy);
+    private static void checkNoDuplicates(List<ValueTerm> values) {
+        Set<ValueTerm> setOf = new HashSet<>(values);
+        if ( setOf.size() != values.size() )
+            throw new IllegalArgumentException("Duplicate in attribute value hierarchy: "+values);
+    }
+
+    /**
+     * Order all the values so that each value comes after the values below it
+     * (Kahn's algorithm). Values are taken in the order they first appear in the
+     * chains when there is a choice, so a single chain keeps its order.
+     */
+    private static List<ValueTerm> order(List<List<ValueTerm>> chains) {
+        Map<ValueTerm, Set<ValueTerm>> higher = new LinkedHashMap<>();
+        Map<ValueTerm, Integer> inDegree = new HashMap<>();
+        for ( List<ValueTerm> chain : chains ) {
+            for ( int i = 0 ; i < chain.size() ; i++ ) {
+                ValueTerm v = chain.get(i);
+                higher.computeIfAbsent(v, k->new LinkedHashSet<>());
+                inDegree.putIfAbsent(v, 0);
+                if ( i > 0 && higher.get(chain.get(i-1)).add(v) )
+                    inDegree.merge(v, 1, Integer::sum);
+            }
+        }
+        List<ValueTerm> ordered = new ArrayList<>(higher.size());
+        Deque<ValueTerm> ready = new ArrayDeque<>();
+        higher.keySet().forEach(v->{ if ( inDegree.get(v) == 0 ) ready.add(v); });
+        while ( ! ready.isEmpty() ) {
+            ValueTerm v = ready.removeFirst();
+            ordered.add(v);
+            for ( ValueTerm w : higher.get(v) ) {
+                if ( inDegree.merge(w, -1, Integer::sum) == 0 )
+                    ready.add(w);
+            }
+        }
+        if ( ordered.size() != higher.size() )
+            throw new IllegalArgumentException("Cycle in attribute value hierarchy: "+chains);
+        return List.copyOf(ordered);
+    }
+
+    // Values are ordered so that the values immediately below a value have already been done.
+    private static BitSet[] reachability(List<List<ValueTerm>> chains, List<ValueTerm> ordered, Map<ValueTerm, Integer> index) {
+        int n = ordered.size();
+        List<Set<Integer>> lower = new ArrayList<>(n);
+        for ( int i = 0 ; i < n ; i++ )
+            lower.add(new HashSet<>());
+        for ( List<ValueTerm> chain : chains ) {
+            for ( int i = 1 ; i < chain.size() ; i++ )
+                lower.get(index.get(chain.get(i))).add(index.get(chain.get(i-1)));
+        }
+        BitSet[] below = new BitSet[n];
+        for ( int i = 0 ; i < n ; i++ ) {
+            BitSet bits = new BitSet(n);
+            bits.set(i);
+            for ( int j : lower.get(i) )
+                bits.or(below[j]);
+            below[i] = bits;
+        }
+        return below;
     }
 
     public Attribute attribute() { return attribute; }
 
+    /**
+     * All the values of the hierarchy, low to high.
+     * For a partial order, each value comes after all the values below it.
+     */
     public List<ValueTerm> values() { return hierarchy; }
 
-    /** Format: "name: a,b,c" - syntactically valid comma separated list */
+    /** The chains of values, each low to high. A linear hierarchy has one chain. */
+    public List<List<ValueTerm>> chains() { return chains; }
+
+    /** Whether the hierarchy is a single list of values. */
+    public boolean isLinear() { return chains.size() <= 1; }
+
+    /**
+     * The values less than or equal to {@code value}, low to high, including {@code value} itself.
+     * Returns an empty list if {@code value} is not in the hierarchy.
+     */
+    public List<ValueTerm> valuesBelow(ValueTerm value) {
+        Integer idx = index.get(value);
+        if ( idx == null )
+            return List.of();
+        BitSet bits = below[idx];
+        List<ValueTerm> x = new ArrayList<>(bits.cardinality());
+        bits.stream().forEach(i->x.add(hierarchy.get(i)));
+        return x;
+    }
+
+    /**
+     * Format: "name: a,b,c" - syntactically valid comma separated list.
+     * For a partial order, the chains are separated by ";" as in "name: a,b; a,c".
+     */
     public String asString() {
-        StringJoiner sj = new StringJoiner(", ");
-        hierarchy.forEach(valueTerm-> sj.add(valueTerm.asString()) );
-        return Words.wordStr(attribute.name())+": "+sj.toString();
+        StringJoiner sjChains = new StringJoiner("; ");
+        chains.forEach(chain->{
+            StringJoiner sj = new StringJoiner(", ");
+            chain.forEach(valueTerm-> sj.add(valueTerm.asString()) );
+            sjChains.add(sj.toString());
+        });
+        return Words.wordStr(attribute.name())+": "+sjChains.toString();
     }
 
     /** From a valid comma separated list */
@@ -130,50 +241,42 @@ public class Hierarchy {
     /**
      * Compare two AttrValues.
      * <p>
-     * Cost is linear in the number of attribute values in the hierarchy.
+     * Cost does not depend on the number of attribute values in the hierarchy.
      * <p>
      * Returns: Comparison; v1 CMP v2.
      * Hierarchy list are stored  "low to high"
      * <ul>
-     * <li> LT, EQ, GT if both elements are in the hierarchy.
-     * <li> NONE if either of v1 and v2 is not in the hierarchy.
+     * <li> LT, EQ, GT if both elements are in the hierarchy and are ordered.
+     * <li> NONE if either of v1 and v2 is not in the hierarchy, or if neither is
+     *      below the other in a partial order.
      * </ul>
      */
     public Comparison compareTo(ValueTerm v1, ValueTerm v2) {
         Objects.requireNonNull(v1);
         Objects.requireNonNull(v2);
-        if ( v1.equals(v2) ) {
-            if ( hierarchy.contains(v1) )
-                return Comparison.EQ;
+        Integer idx1 = index.get(v1);
+        Integer idx2 = index.get(v2);
+        if ( idx1 == null || idx2 == null )
             return Comparison.NONE;
-        }
-        int idx1 = -1;
-        int idx2 = -1;
-        for (int i = 0; i < hierarchy.size(); i++) {
-            ValueTerm v = hierarchy.get(i);
-            if ( idx1 == -1 && v1.equals(v) )
-                idx1 = i;
-            else if ( idx2 == -1 && v2.equals(v) )
-                idx2 = i;
-            if ( idx1 != -1 && idx2 != -1 ) {
-                if ( idx1 < idx2 )
-                    return Comparison.LT;
-                if ( idx1 > idx2 )
-                    return Comparison.GT;
-                throw new InternalErrorException();
-            }
-        }
+        if ( idx1.equals(idx2) )
+            return Comparison.EQ;
+        if ( below[idx2].get(idx1) )
+            return Comparison.LT;
+        if ( below[idx1].get(idx2) )
+            return Comparison.GT;
         return Comparison.NONE;
     }
 
     @Override
     public String toString() {
-        return attribute.name()+": "+hierarchy.toString();
+        if ( isLinear() )
+            return attribute.name()+": "+hierarchy.toString();
+        return attribute.name()+": "+chains.toString();
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(hierarchy, attribute);
+        return Objects.hash(chains, attribute);
     }
 
     @Override
@@ -185,6 +288,6 @@ public class Hierarchy {
         if ( getClass() != obj.getClass() )
             return false;
         Hierarchy other = (Hierarchy)obj;
-        return Objects.equals(hierarchy, other.hierarchy) && Objects.equals(attribute, other.attribute);
+        return Objects.equals(chains, other.chains) && Objects.equals(attribute, other.attribute);
     }
 }
@@ -20,12 +20,16 @@ import static io.telicent.jena.abac.core.VocabAuthzDataset.*;
 import static org.apache.jena.sparql.util.graph.GraphUtils.getAsStringValue;
 import static org.apache.jena.sparql.util.graph.GraphUtils.getStringValue;
 
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+
 import io.telicent.jena.abac.core.*;
 import io.telicent.jena.abac.labels.Labels;
 import io.telicent.jena.abac.labels.LabelsStore;
 import org.apache.jena.assembler.Assembler;
 import org.apache.jena.assembler.exceptions.AssemblerException;
 import org.apache.jena.query.Dataset;
+import org.apache.jena.rdf.model.Literal;
 import org.apache.jena.rdf.model.Property;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
@@ -44,14 +48,15 @@ public class Secured {
      */
     public static DatasetGraphABAC buildDatasetGraphAuthz(DatasetGraph base, Resource root) {
         String accessAttributes = getAccessAttributes(root);
-        LabelsStore labels = labelsStore(root);
+        LabelsStore labels = labelsStore(root, base);
         String tripleDefaultLabel = getTripleDefaultLabel(root);
         if ( labels == null )
             // In-memory
             labels = Labels.createLabelsStore();
 
         AttributesStore attributesStore = attributesStore(root);
-        DatasetGraphABAC dsgAuthz = new DatasetGraphABAC(base, accessAttributes, labels, tripleDefaultLabel, attributesStore);
+        DecisionCache decisionCache = decisionCache(root, attributesStore);
+        DatasetGraphABAC dsgAuthz = new DatasetGraphABAC(base, accessAttributes, labels, tripleDefaultLabel, attributesStore, decisionCache);
         return dsgAuthz;
     }
 
@@ -128,8 +133,49 @@ public class Secured {
         return accessAttributes;
     }
 
+    /** Cross-request decision cache, or null if not configured. */
+    public static DecisionCache decisionCache(Resource root, AttributesStore attributesStore) {
+        RDFNode obj = GraphUtils.getAsRDFNode(root, pDecisionCacheTTL);
+        if ( obj == null )
+            return null;
+        if ( ! obj.isLiteral() )
+            throw new AssemblerException(root, ":decisionCacheTTL must be a literal");
+        Literal lit = obj.asLiteral();
+        Duration ttl;
+        try {
+            if ( lit.getValue() instanceof Number n )
+                ttl = Duration.ofSeconds(n.longValue());
+            else
+                ttl = Duration.parse(lit.getLexicalForm());
+        } catch (DateTimeParseException ex) {
+            throw new AssemblerException(root, "Bad :decisionCacheTTL: '"+lit.getLexicalForm()+"'");
+        }
+        if ( ttl.isZero() || ttl.isNegative() )
+            throw new AssemblerException(root, ":decisionCacheTTL must be positive: '"+lit.getLexicalForm()+"'");
+        return DecisionCache.create(ttl, attributesStore);
+    }
+
     // ---- Labels
 
+    /**
+     * Labels store from the configuration, which may be in a named graph of the
+     * base dataset. Return null if there is no labels configuration.
+     */
+    public static LabelsStore labelsStore(Resource root, DatasetGraph base) {
+        RDFNode graphName = GraphUtils.getAsRDFNode(root, pLabelsGraph);
+        if ( graphName == null )
+            return labelsStore(root);
+        if ( GraphUtils.getAsRDFNode(root, pLabels) != null )
+            throw new AssemblerException(root, "Both :labels and :labelsGraph");
+        if ( ! graphName.isURIResource() )
+            throw new AssemblerException(root, ":labelsGraph must be a URI");
+        try {
+            return Labels.createLabelsStore(base, graphName.asNode());
+        } catch(Throwable th) {
+            throw new AssemblerException(root, "Failed to parse the labels descriptions", th);
+        }
+    }
+
     public static LabelsStore labelsStore(Resource root) {
         RDFNode obj = GraphUtils.getAsRDFNode(root, pLabels);
         if ( obj == null )
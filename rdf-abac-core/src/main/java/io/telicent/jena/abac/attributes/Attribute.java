@@ -16,4 +16,16 @@
 
 package io.telicent.jena.abac.attributes;
 
-public record Attribute(String name) {}
+import org.apache.jena.ext.com.google.common.collect.Interner;
+import org.apache.jena.ext.com.google.common.collect.Interners;
+
+public record Attribute(String name) {
+
+    // Attributes no longer referenced elsewhere are garbage collected.
+    private static final Interner<Attribute> interner = Interners.newWeakInterner();
+
+    /** Get the attribute for a name, sharing one object while it is in use. */
+    public static Attribute create(String name) {
+        return interner.intern(new Attribute(name));
+    }
+}
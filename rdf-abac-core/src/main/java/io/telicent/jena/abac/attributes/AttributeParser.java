@@ -19,6 +19,7 @@ package io.telicent.jena.abac.attributes;
 import java.util.List;
 import java.util.function.Function;
 
+import io.telicent.jena.abac.ABAC;
 import io.telicent.jena.abac.AE;
 import io.telicent.jena.abac.Hierarchy;
 import io.telicent.jena.abac.attributes.syntax.*;
@@ -40,6 +41,11 @@ public class AttributeParser {
     }
 
     private static AttributeExpr attributeExpression(String string) {
+        if ( ABAC.labelParserFastPath ) {
+            AttributeExpr exprFast = AttributeParserFast.parseExprOrNull(string);
+            if ( exprFast != null )
+                return exprFast;
+        }
         AttributeParserEngine parser = new AttributeParserEngine(string);
         AttributeExpr expr = parser.attributeExpression();
         checkEndOfInput(parser);
@@ -58,6 +64,13 @@ public class AttributeParser {
             if ( op != Operator.EQ && op != Operator.NE )
                 throw new AttributeSyntaxError("Operator not supported: "+op+" at "+this);
         }
+
+        @Override
+        public void visit(AE_RelVar element) {
+            Operator op = element.relation();
+            if ( op != Operator.EQ && op != Operator.NE )
+                throw new AttributeSyntaxError("Operator not supported: "+op+" at "+this);
+        }
     };
 
     private static void checkEndOfInput(AttributeParserEngine parser) {
@@ -86,6 +99,11 @@ public class AttributeParser {
             return List.of(AE.ALLOW);
         if ( string.equals(AEX.strDENY) )
             return List.of(AE.DENY);
+        if ( ABAC.labelParserFastPath ) {
+            List<AttributeExpr> exprsFast = AttributeParserFast.parseExprListOrNull(string);
+            if ( exprsFast != null )
+                return exprsFast;
+        }
         Function<AttributeParserEngine, AttributeExpr> parseOneItem = (parser) -> {
             AttributeExpr expr = parser.attributeExpression();
             check(expr);
@@ -102,6 +120,13 @@ public class AttributeParser {
         return x;
     }
 
+    public static List<List<ValueTerm>> parseValueTermChains(String string) {
+        AttributeParserEngine parser = new AttributeParserEngine(string);
+        List<List<ValueTerm>> x = parser.parseListChains();
+        checkEndOfInput(parser);
+        return x;
+    }
+
     public static Hierarchy parseHierarchy(String string) {
         AttributeParserEngine parser = new AttributeParserEngine(string);
         Hierarchy hierarchy = parser.hierarchy();
@@ -107,8 +107,36 @@ class AttributeParserEngine {
             throw new AttributeSyntaxError("Expected ':' after attribute name in hierarchy: "+token);
 //            if ( tokenizer.eof() )
 //                throw new AttributeSyntaxError("Unexpected end to attribute hierarchy");
-        List<ValueTerm> values = parseListValues();
-        return new Hierarchy(attribute, values);
+        List<List<ValueTerm>> chains = parseListChains();
+        if ( chains.size() == 1 )
+            return new Hierarchy(attribute, chains.get(0));
+        return Hierarchy.createPartialOrder(attribute, chains);
+    }
+
+    /** Lists of values, separated by ";" */
+    List<List<ValueTerm>> parseListChains() {
+        if ( endOfTokens() )
+            return List.of(List.of());
+        List<List<ValueTerm>> chains = new ArrayList<>();
+        List<ValueTerm> chain = new ArrayList<>();
+        for(;;) {
+            chain.add(readAttributeValue().asValue());
+            Token t2 = tokenizer.peek();
+            if ( t2 == null )
+                break;
+            if ( t2.getType() == TokenType.SEMICOLON ) {
+                chains.add(chain);
+                chain = new ArrayList<>();
+            } else if ( t2.getType() != TokenType.COMMA )
+                break;
+            tokenizer.next();
+            if ( ! tokenizer.hasNext() )
+                throw new AttributeSyntaxError("Trailing separator");
+        }
+        chains.add(chain);
+        if ( ! tokenizer.eof() )
+            throw new AttributeSyntaxError("Trailing content: "+tokenizer.peek()+" ...");
+        return chains;
     }
 
     List<ValueTerm> parseListValues() {
@@ -172,22 +200,27 @@ class AttributeParserEngine {
             throw new AttributeSyntaxError("Expected RPAREN: "+token);
         }
 
-        if ( peek == TokenType.LBRACE ) {
-            Token t1 = tokenizer.next();
-            if ( tokenizer.eof() )
-                throw new AttributeSyntaxError("No RBRACE: "+t1);
-            Token token = tokenizer.next();
-            if ( token.getType() != TokenType.WORD )
-                throw new AttributeSyntaxError("Expected WORD after: "+t1);
-            String varName = token.getImage();
-            Token t2 = tokenizer.next();
-            if ( t2.getType() == TokenType.RBRACE )
-                return new AE_Var(varName);
-            throw new AttributeSyntaxError("Expected RBRACE: "+t2);
-        }
+        if ( peek == TokenType.LBRACE )
+            return readVar();
         throw new AttributeSyntaxError("Not recognized: "+tokenizer.peek());
     }
 
+    private AE_Var readVar() {
+        Token t1 = tokenizer.next();
+        if ( tokenizer.eof() )
+            throw new AttributeSyntaxError("No RBRACE: "+t1);
+        Token token = tokenizer.next();
+        if ( token.getType() != TokenType.WORD )
+            throw new AttributeSyntaxError("Expected WORD after: "+t1);
+        String varName = token.getImage();
+        if ( tokenizer.eof() )
+            throw new AttributeSyntaxError("No RBRACE: "+t1);
+        Token t2 = tokenizer.next();
+        if ( t2.getType() == TokenType.RBRACE )
+            return new AE_Var(varName);
+        throw new AttributeSyntaxError("Expected RBRACE: "+t2);
+    }
+
     private AttributeExpr readExprRel() {
         if ( tokenizer.eof() )
             throw new AttributeSyntaxError("END");
@@ -210,8 +243,6 @@ class AttributeParserEngine {
         if ( tokenizer.eof() )
             throw new AttributeSyntaxError("Expected a relationship operator: '<', '=', '>', '<=', '>='");
 
-        AE_AttrValue expr2 = readAttributeValue();
-
         Operator op = switch ( relToken.getType() ) {
             case EQ ->  Operator.EQ;
             //case EQUIVALENT ->  Operator.EQ;
@@ -223,6 +254,13 @@ class AttributeParserEngine {
             // Not OK.
             default -> throw new AttributeSyntaxError("Not a relationship operator: '"+relToken+"'");
         };
+
+        if ( tokenizer.peek().getType() == TokenType.LBRACE ) {
+            AE_Var var = readVar();
+            return new AE_RelVar(relToken.getImage(), op, expr1, var);
+        }
+
+        AE_AttrValue expr2 = readAttributeValue();
         return new AE_RelAny(relToken.getImage(), op, expr1, expr2);
     }
 
@@ -0,0 +1,203 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.attributes;
+
+import static io.telicent.jena.abac.attributes.syntax.AEX.kwFALSE;
+import static io.telicent.jena.abac.attributes.syntax.AEX.kwTRUE;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.telicent.jena.abac.attributes.syntax.*;
+import io.telicent.jena.abac.attributes.syntax.tokens.Words;
+import org.apache.jena.riot.system.RiotChars;
+
+/**
+ * Fast path parser for the common forms of label: words, "=", "!=", "&amp;", "|"
+ * and brackets. It works on the string with an index and does not create tokens.
+ * <p>
+ * Anything else (quoted strings, numbers, comments, variables, other
+ * relations, syntax errors) causes the parser to give up, returning null, and
+ * the caller uses the full {@link AttributeParserEngine}, which also produces any
+ * error messages. When it does return an expression, it is the same as the
+ * full parser would produce.
+ */
+/*package*/ class AttributeParserFast {
+
+    // Expr    = ExprAnd ( ("|" | "||") ExprAnd )*
+    // ExprAnd = ExprRel ( ("&" | "&&") ExprRel )*
+    // ExprRel = "(" Expr ")" | Word ( ("=" | "!=") Word )?
+
+    // Thrown to abandon the fast path. No stack trace.
+    private static class GiveUp extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        GiveUp() { super(null, null, false, false); }
+    }
+    private static final GiveUp giveUp = new GiveUp();
+
+    private final String string;
+    private final int length;
+    private int idx;
+
+    private AttributeParserFast(String string) {
+        this.string = string;
+        this.length = string.length();
+        this.idx = 0;
+    }
+
+    /** Parse an expression, or return null if the string is not in the simple subset. */
+    static AttributeExpr parseExprOrNull(String string) {
+        AttributeParserFast parser = new AttributeParserFast(string);
+        try {
+            AttributeExpr expr = parser.readExprOr();
+            parser.skipWhitespace();
+            if ( parser.idx != parser.length )
+                return null;
+            return expr;
+        } catch (GiveUp ex) {
+            return null;
+        }
+    }
+
+    /** Parse a comma separated list of expressions, or return null if the string is not in the simple subset. */
+    static List<AttributeExpr> parseExprListOrNull(String string) {
+        AttributeParserFast parser = new AttributeParserFast(string);
+        List<AttributeExpr> acc = new ArrayList<>();
+        try {
+            for (;;) {
+                acc.add(parser.readExprOr());
+                parser.skipWhitespace();
+                if ( parser.idx == parser.length )
+                    return acc;
+                if ( parser.string.charAt(parser.idx) != ',' )
+                    return null;
+                parser.idx++;
+            }
+        } catch (GiveUp ex) {
+            return null;
+        }
+    }
+
+    private AttributeExpr readExprOr() {
+        AttributeExpr expr1 = readExprAnd();
+        for (;;) {
+            skipWhitespace();
+            if ( ! operator('|') )
+                return expr1;
+            AttributeExpr expr2 = readExprAnd();
+            expr1 = new AE_Or(expr1, expr2);
+        }
+    }
+
+    private AttributeExpr readExprAnd() {
+        AttributeExpr expr1 = readExprRel();
+        for (;;) {
+            skipWhitespace();
+            if ( ! operator('&') )
+                return expr1;
+            AttributeExpr expr2 = readExprRel();
+            expr1 = new AE_And(expr1, expr2);
+        }
+    }
+
+    // Single or double character logical operator.
+    private boolean operator(char ch) {
+        if ( idx >= length || string.charAt(idx) != ch )
+            return false;
+        idx++;
+        if ( idx < length && string.charAt(idx) == ch )
+            idx++;
+        return true;
+    }
+
+    private AttributeExpr readExprRel() {
+        skipWhitespace();
+        if ( idx >= length )
+            throw giveUp;
+        if ( string.charAt(idx) == '(' ) {
+            idx++;
+            AttributeExpr expr = readExprOr();
+            skipWhitespace();
+            if ( idx >= length || string.charAt(idx) != ')' )
+                throw giveUp;
+            idx++;
+            return new AE_Bracketted(expr);
+        }
+
+        String attrName = readWord();
+        switch(attrName) {
+            case kwTRUE, kwFALSE: throw giveUp;
+        }
+        AE_Attribute attribute = AE_Attribute.create(attrName);
+        skipWhitespace();
+        if ( idx >= length )
+            return attribute;
+
+        String image;
+        Operator op;
+        char ch = string.charAt(idx);
+        if ( ch == '=' ) {
+            if ( idx+1 < length && string.charAt(idx+1) == '=' )
+                // "==" is not a relation.
+                throw giveUp;
+            idx++;
+            image = "=";
+            op = Operator.EQ;
+        } else if ( ch == '!' && idx+1 < length && string.charAt(idx+1) == '=' ) {
+            idx += 2;
+            image = "!=";
+            op = Operator.NE;
+        } else if ( ch == '<' || ch == '>' || ch == '!' ) {
+            throw giveUp;
+        } else {
+            return attribute;
+        }
+        skipWhitespace();
+        String value = readWord();
+        return new AE_RelAny(image, op, attribute, AE_AttrValue.create(value));
+    }
+
+    /** A word that the full tokenizer would read as a single WORD token. */
+    private String readWord() {
+        if ( idx >= length )
+            throw giveUp;
+        int start = idx;
+        char ch = string.charAt(idx);
+        // Numbers are for the full parser.
+        if ( ch == '+' || ch == '-' || ( ch >= '0' && ch <= '9' ) || ! Words.isWordStart(ch) )
+            throw giveUp;
+        idx++;
+        while ( idx < length && Words.isWordMiddle(string.charAt(idx)) )
+            idx++;
+        // The full tokenizer backs off characters that can not end a word.
+        if ( ! Words.isWordEnd(string.charAt(idx-1)) )
+            throw giveUp;
+        return string.substring(start, idx);
+    }
+
+    private void skipWhitespace() {
+        while ( idx < length ) {
+            char ch = string.charAt(idx);
+            if ( ch == '#' )
+                // Comment
+                throw giveUp;
+            if ( ! RiotChars.isWhitespace(ch) )
+                return;
+            idx++;
+        }
+    }
+}
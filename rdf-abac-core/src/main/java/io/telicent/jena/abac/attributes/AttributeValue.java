@@ -30,7 +30,7 @@ public class AttributeValue {
     private final ValueTerm value;
 
     public static AttributeValue of(String attribute, ValueTerm value) {
-        return new AttributeValue(new Attribute(attribute), value);
+        return new AttributeValue(Attribute.create(attribute), value);
     }
 
     public static AttributeValue of(Attribute attribute, ValueTerm value) {
@@ -20,30 +20,44 @@ import java.util.Objects;
 
 import io.telicent.jena.abac.attributes.syntax.tokens.Words;
 import org.apache.jena.atlas.io.IndentedWriter;
-
+import org.apache.jena.ext.com.google.common.collect.Interner;
+import org.apache.jena.ext.com.google.common.collect.Interners;
+
+/**
+ * A value: a boolean or a string.
+ * <p>
+ * String values are interned, so while a value is in use there is only one
+ * object for it and equal values are usually the same object.
+ */
 public class ValueTerm {
+    // Values no longer referenced elsewhere are garbage collected.
+    private static final Interner<ValueTerm> interner = Interners.newWeakInterner();
+
     public static ValueTerm TRUE = new ValueTerm(true);
     public static ValueTerm FALSE = new ValueTerm(false);
 
     private final boolean booleanValue;
     private final String string;
+    private final int hash;
 
     public static ValueTerm value(boolean b) {
         return b ? TRUE : FALSE ;
     }
 
     public static ValueTerm value(String str) {
-        return new ValueTerm(str);
+        return interner.intern(new ValueTerm(str));
     }
 
     private ValueTerm(boolean val) {
         this.booleanValue = val;
         this.string = null;
+        this.hash = Boolean.hashCode(val);
     }
 
     private ValueTerm(String str) {
         this.booleanValue = false;
         this.string = str;
+        this.hash = Objects.hashCode(str);
     }
 
     public boolean isString() { return string != null; }
@@ -78,7 +92,7 @@ public class ValueTerm {
 
     @Override
     public int hashCode() {
-        return Objects.hash(booleanValue, string);
+        return hash;
     }
 
     @Override
@@ -90,6 +104,8 @@ public class ValueTerm {
         if ( getClass() != obj.getClass() )
             return false;
         ValueTerm other = (ValueTerm)obj;
+        if ( hash != other.hash )
+            return false;
         return booleanValue == other.booleanValue && Objects.equals(string, other.string);
     }
 
@@ -47,5 +47,6 @@ public interface VisitorAttrExpr {
     public default void visit(AE_And element) {}
     public default void visit(AE_Or element) {}
     public default void visit(AE_RelAny element) {}
+    public default void visit(AE_RelVar element) {}
 
 }
@@ -64,5 +64,8 @@ public class WalkerAttrExpr {
 
         @Override
         public void visit(AE_RelAny element) { element.visitor(visitor); }
+
+        @Override
+        public void visit(AE_RelVar element) { element.visitor(visitor); }
     }
 }
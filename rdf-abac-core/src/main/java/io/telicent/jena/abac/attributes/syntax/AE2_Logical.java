@@ -33,9 +33,77 @@ public abstract class AE2_Logical implements AttributeExpr {
     protected final AttributeExpr left;
     protected final AttributeExpr right;
 
+    // Adaptive order of evaluation of the two operands (ABAC.adaptiveLabelOrder).
+    // A parsed label is shared by all requests, and these fields are updated by
+    // concurrent evaluations without synchronization. Racing updates only lose
+    // counts or apply an older choice of order: both operands always evaluate to
+    // a boolean, so the outcome is the same in either order.
+    private static final int ReorderPeriod = 256;
+    private final boolean reorderable;
+    private final int cost;
+    private int evaluations = 0;
+    private int leftEvals = 0;
+    private int leftDecisive = 0;
+    private int rightEvals = 0;
+    private int rightDecisive = 0;
+    private boolean rightFirst = false;
+
     protected AE2_Logical(AttributeExpr left, AttributeExpr right) {
         this.left = left;
         this.right = right;
+        this.reorderable = AttrExprEvaluator.isReorderable(left) && AttrExprEvaluator.isReorderable(right);
+        this.cost = AttrExprEvaluator.cost(left) + AttrExprEvaluator.cost(right);
+    }
+
+    /*package*/ boolean reorderable() { return reorderable; }
+
+    /*package*/ int cost() { return cost; }
+
+    /**
+     * Evaluate, with the operand most likely to decide the outcome for its cost
+     * evaluated first. For "&amp;", an operand is decisive when it is false; for
+     * "|" when it is true. Only used when both operands always evaluate to a
+     * boolean, so the order does not change the outcome.
+     */
+    /*package*/ ValueTerm evalAdaptive(boolean decisive, CxtABAC cxt) {
+        boolean swap = rightFirst;
+        AttributeExpr first = swap ? right : left;
+        AttributeExpr second = swap ? left : right;
+        boolean b1 = first.eval(cxt).getBoolean();
+        observe(swap, b1 == decisive);
+        if ( b1 != decisive ) {
+            boolean b2 = second.eval(cxt).getBoolean();
+            observe(!swap, b2 == decisive);
+            b1 = b2;
+        }
+        if ( ++evaluations >= ReorderPeriod )
+            reorder();
+        return ValueTerm.value(b1);
+    }
+
+    private void observe(boolean isRight, boolean decided) {
+        if ( isRight ) {
+            rightEvals++;
+            if ( decided )
+                rightDecisive++;
+        } else {
+            leftEvals++;
+            if ( decided )
+                leftDecisive++;
+        }
+    }
+
+    // Compare (chance of deciding)/(cost) for each operand, then halve the
+    // counts so that later evaluations count for more.
+    private void reorder() {
+        double scoreLeft = (leftDecisive + 1.0) / (leftEvals + 2.0) / AttrExprEvaluator.cost(left);
+        double scoreRight = (rightDecisive + 1.0) / (rightEvals + 2.0) / AttrExprEvaluator.cost(right);
+        rightFirst = scoreRight > scoreLeft;
+        evaluations = 0;
+        leftEvals /= 2;
+        leftDecisive /= 2;
+        rightEvals /= 2;
+        rightDecisive /= 2;
     }
 
     @Override
@@ -47,6 +47,8 @@ public abstract class AE2_Relation implements AttributeExpr {
     // Evaluation objects
     private final Attribute attribute;
     private final ValueTerm attrValue;
+    // Slot for the result of this test in the request context.
+    private final int slot;
 
     protected AE2_Relation(Operator relation, AE_Attribute left, AE_AttrValue right) {
         //left, right AE_Value? (renamed AE_Atom)
@@ -56,11 +58,20 @@ public abstract class AE2_Relation implements AttributeExpr {
         // These are "cached" because they get used in eval.
         this.attribute = left.attribute();
         this.attrValue = right.asValue();
+        this.slot = AtomSlots.slot(relation, attribute, attrValue);
     }
 
     @Override
     public ValueTerm eval(CxtABAC cxt) {
-        return AttrExprEvaluator.eval(relation, attribute, attrValue, cxt);
+        if ( slot == AtomSlots.NoSlot )
+            return AttrExprEvaluator.eval(relation, attribute, attrValue, cxt);
+        // Evaluated at most once per request.
+        ValueTerm value = cxt.atomValue(slot);
+        if ( value == null ) {
+            value = AttrExprEvaluator.eval(relation, attribute, attrValue, cxt);
+            cxt.atomValue(slot, value);
+        }
+        return value;
     }
 
     protected String sym() { return relation.str(); }
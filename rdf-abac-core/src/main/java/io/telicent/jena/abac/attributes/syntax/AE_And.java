@@ -28,7 +28,7 @@ public final class AE_And extends AE2_Logical {
 
     @Override
     public ValueTerm eval(CxtABAC cxt) {
-        return AttrExprEvaluator.evalAnd(left, right, cxt);
+        return AttrExprEvaluator.evalAnd(this, cxt);
     }
 
     @Override
@@ -41,7 +41,7 @@ public class AE_Attribute implements AttributeExpr {
     }
 
     private AE_Attribute(String name) {
-        this.attribute = new Attribute(name);
+        this.attribute = Attribute.create(name);
     }
 
     public Attribute attribute() { return attribute; }
@@ -28,7 +28,7 @@ public final class AE_Or extends AE2_Logical {
 
     @Override
     public ValueTerm eval(CxtABAC cxt) {
-        return AttrExprEvaluator.evalOr(left, right, cxt);
+        return AttrExprEvaluator.evalOr(this, cxt);
     }
 
     @Override
@@ -0,0 +1,104 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.attributes.syntax;
+
+import java.util.Objects;
+
+import io.telicent.jena.abac.attributes.*;
+import io.telicent.jena.abac.core.CxtABAC;
+import org.apache.jena.atlas.io.IndentedWriter;
+
+/**
+ * Relationship between an attribute of the request and a variable.
+ * <p>
+ * Examples:
+ * <pre>
+ *    tenant = {tenant}
+ *    region != {region}
+ * </pre>
+ * The value of the variable is set for the request (see {@link AE_Var}) and the
+ * relationship is then evaluated as if the value had been written in the label.
+ * If the variable has no value, the outcome is false.
+ */
+public class AE_RelVar implements AttributeExpr {
+
+    private final String appearance;
+    private final Operator relation;
+    private final AE_Attribute left;
+    private final AE_Var right;
+
+    public AE_RelVar(String image, Operator relation, AE_Attribute left, AE_Var right) {
+        this.appearance = image;
+        this.relation = relation;
+        this.left = left;
+        this.right = right;
+    }
+
+    @Override
+    public ValueTerm eval(CxtABAC cxt) {
+        ValueTerm value = cxt.getVar(right.var());
+        if ( value == null )
+            return ValueTerm.FALSE;
+        return AttrExprEvaluator.eval(relation, left.attribute(), value, cxt);
+    }
+
+    public Operator relation() { return relation; }
+
+    public AE_Attribute attribute() { return left; }
+
+    public AE_Var var() { return right; }
+
+    protected String sym() {
+        if ( appearance != null )
+            return appearance;
+        return relation.str();
+    }
+
+    @Override
+    public void print(IndentedWriter out) {
+        left.print(out);
+        out.write(" ");
+        out.write(sym());
+        out.write(" ");
+        right.print(out);
+    }
+
+    @Override
+    public void visitor(VisitorAttrExpr visitor) {visitor.visit(this); }
+
+    @Override
+    public String toString() {
+        return "("+sym()+" "+left+" "+right+")";
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(left, relation, right);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if ( this == obj )
+            return true;
+        if ( obj == null )
+            return false;
+        if ( getClass() != obj.getClass() )
+            return false;
+        AE_RelVar other = (AE_RelVar)obj;
+        return Objects.equals(left, other.left) && relation == other.relation && Objects.equals(right, other.right);
+    }
+}
@@ -18,31 +18,39 @@ package io.telicent.jena.abac.attributes.syntax;
 
 import java.util.Objects;
 
+import io.telicent.jena.abac.attributes.Attribute;
+import io.telicent.jena.abac.attributes.AttributeExpr;
 import io.telicent.jena.abac.attributes.ValueTerm;
 import io.telicent.jena.abac.attributes.VisitorAttrExpr;
-import io.telicent.jena.abac.attributes.AttributeExpr;
 import io.telicent.jena.abac.core.CxtABAC;
+import io.telicent.jena.abac.core.EnvironmentProvider;
 import org.apache.jena.atlas.io.IndentedWriter;
-import org.apache.jena.atlas.lib.NotImplemented;
 
 /**
  * Variable that substitutes a context sensitive value.
  * This is looked up in the execution security context to evaluate.
+ * The values of variables are set for each request.
+ * See {@link EnvironmentProvider}.
  */
 public class AE_Var implements AttributeExpr {
-    private String varName;
+    private final String varName;
+    private final Attribute var;
 
     public AE_Var(String varName) {
         this.varName = varName;
+        this.var = Attribute.create(varName);
     }
 
+    public String varName() { return varName; }
+
+    /*package*/ Attribute var() { return var; }
+
     @Override
     public ValueTerm eval(CxtABAC cxt) {
-        throw new NotImplemented();
-//        Attribute attr = cxt.getVar(varName);
-//        if ( attr == null )
-//            return AttrExprValue.FALSE;
-//        return AttrExprValue.create(attr.name());
+        ValueTerm value = cxt.getVar(var);
+        if ( value == null )
+            return ValueTerm.FALSE;
+        return value;
     }
 
     @Override
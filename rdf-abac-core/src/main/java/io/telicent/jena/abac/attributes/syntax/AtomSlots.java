@@ -0,0 +1,59 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.attributes.syntax;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.telicent.jena.abac.ABAC;
+import io.telicent.jena.abac.attributes.Attribute;
+import io.telicent.jena.abac.attributes.Operator;
+import io.telicent.jena.abac.attributes.ValueTerm;
+import io.telicent.jena.abac.core.CxtABAC;
+
+/**
+ * Process-wide numbering of atomic tests "attribute op value".
+ * <p>
+ * The same test, such as {@code clearance=secret}, appearing in different
+ * labels gets the same slot number. A request context ({@link CxtABAC}) keeps the
+ * result of each test by slot number, so each test is evaluated at most once in
+ * a request whichever labels it appears in.
+ * <p>
+ * Slots are never reused. When {@link ABAC#atomSlotsMax} slots have been given
+ * out, new tests get no slot and are evaluated each time.
+ */
+/*package*/ final class AtomSlots {
+
+    /** No slot: the test is not remembered. */
+    /*package*/ static final int NoSlot = -1;
+
+    private record Atom(Operator relation, Attribute attribute, ValueTerm value) {}
+
+    private static final Map<Atom, Integer> slots = new ConcurrentHashMap<>();
+    private static final AtomicInteger counter = new AtomicInteger(0);
+
+    /*package*/ static int slot(Operator relation, Attribute attribute, ValueTerm value) {
+        Atom atom = new Atom(relation, attribute, value);
+        Integer slot = slots.get(atom);
+        if ( slot != null )
+            return slot;
+        if ( counter.get() >= ABAC.atomSlotsMax )
+            return NoSlot;
+        return slots.computeIfAbsent(atom, a->counter.getAndIncrement());
+    }
+}
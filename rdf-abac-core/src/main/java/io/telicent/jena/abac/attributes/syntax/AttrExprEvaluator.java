@@ -17,16 +17,13 @@
 package io.telicent.jena.abac.attributes.syntax;
 
 import java.util.Collection;
-import java.util.Optional;
 
-import io.telicent.jena.abac.Hierarchy;
-import io.telicent.jena.abac.Hierarchy.Comparison;
+import io.telicent.jena.abac.ABAC;
 import io.telicent.jena.abac.attributes.Attribute;
 import io.telicent.jena.abac.attributes.AttributeExpr;
 import io.telicent.jena.abac.attributes.Operator;
 import io.telicent.jena.abac.attributes.ValueTerm;
 import io.telicent.jena.abac.core.CxtABAC;
-import org.apache.jena.atlas.lib.Cache;
 import org.apache.jena.atlas.lib.NotImplemented;
 
 /**
@@ -41,6 +38,58 @@ public class AttrExprEvaluator {
         return expr.eval(env);
     }
 
+    /**
+     * Partial evaluation of an {@link AttributeExpr} for the request attributes of
+     * a {@link CxtABAC}. Tests of request attributes and variables become
+     * {@link AE_Allow} or {@link AE_Deny} and these are folded through "&amp;" and
+     * "|". Anything else, such as relations other than "=" and "!=", is left to be
+     * evaluated later.
+     * <p>
+     * The outcome of evaluating the result is the same as evaluating the original
+     * expression, including whether parts that cause an error are reached.
+     */
+    public static AttributeExpr partialEval(AttributeExpr expr, CxtABAC cxt) {
+        if ( expr instanceof AE_Allow || expr instanceof AE_Deny )
+            return expr;
+        if ( expr instanceof AE_Attribute || expr instanceof AE2_Relation || expr instanceof AE_RelVar )
+            // Request attributes and variables do not change during the request.
+            return isReorderable(expr) ? constant(expr.eval(cxt)) : expr;
+        if ( expr instanceof AE_Var ) {
+            ValueTerm value = expr.eval(cxt);
+            return value.isBoolean() ? constant(value) : expr;
+        }
+        if ( expr instanceof AE_Bracketted bracketted )
+            return partialEval(bracketted.get(), cxt);
+        if ( expr instanceof AE_And and )
+            return partialEval(and, AE_Deny.value(), AE_Allow.value(), cxt);
+        if ( expr instanceof AE_Or or )
+            return partialEval(or, AE_Allow.value(), AE_Deny.value(), cxt);
+        return expr;
+    }
+
+    // "decisive" is the constant that decides the outcome (Deny for "&", Allow for "|"),
+    // "neutral" is the constant that leaves the other operand as the outcome.
+    private static AttributeExpr partialEval(AE2_Logical expr, AttributeExpr decisive, AttributeExpr neutral, CxtABAC cxt) {
+        AttributeExpr left = partialEval(expr.left(), cxt);
+        if ( left == decisive )
+            return decisive;
+        AttributeExpr right = partialEval(expr.right(), cxt);
+        if ( left == neutral )
+            return right;
+        if ( right == neutral )
+            return left;
+        // The left operand is evaluated before the right operand decides the outcome.
+        if ( right == decisive && isReorderable(left) )
+            return decisive;
+        if ( left == expr.left() && right == expr.right() )
+            return expr;
+        return ( expr instanceof AE_And ) ? new AE_And(left, right) : new AE_Or(left, right);
+    }
+
+    private static AttributeExpr constant(ValueTerm value) {
+        return value.getBoolean() ? AE_Allow.value() : AE_Deny.value();
+    }
+
     /**
      * Two argument relationship.
      * <p>
@@ -61,44 +110,90 @@ public class AttrExprEvaluator {
         if (requestValueTerms == null || requestValueTerms.isEmpty() )
             return ValueTerm.FALSE;
 
-        for ( ValueTerm requestValueTerm : requestValueTerms ) {
-            ValueTerm result = switch (relation) {
-                case EQ -> {
-                    // Calculate for "attribute = value" directly.
-                    ValueTerm vt = ValueTerm.value(requestValueTerm.equals(requiredAttrValue));
-
-                    // If false, try for a hierarchy match.
-                    if ( vt.equals(ValueTerm.FALSE) ) {
-                        Cache<Attribute, Optional<Hierarchy>> cache = cxt.hierarchyCache();
-                        // Caches can't hold nulls.
-                        Optional<Hierarchy> entry = cache.getOrFill(attribute, ()->{
-                            return Optional.ofNullable(cxt.getHierarchy(attribute));
-                        } );
-                        if ( entry.isEmpty() )
-                            // No hierarchy for this attribute.
-                            yield vt;
-                        Hierarchy attrHierarchy = entry.get();
-                        // Try again. Is requiredAttrValue(data) < requestValueTerm(access rights)?
-                        Comparison cmp = attrHierarchy.compareTo(requiredAttrValue, requestValueTerm);
-                        //System.out.printf("%s :: Data=%s %s Request=%s\n", attrHierarchy, requiredAttrValue, cmp, requestValueTerm);
-                        vt = switch (cmp) {
-                            case EQ, LT -> ValueTerm.TRUE;
-                            default -> ValueTerm.FALSE;
-                        };
-                    }
-                    yield vt;
+        return switch (relation) {
+            case EQ -> {
+                // Calculate for "attribute = value" directly.
+                if ( requestValueTerms.contains(requiredAttrValue) )
+                    yield ValueTerm.TRUE;
+                // Try for a hierarchy match. Is requiredAttrValue(data) <= a requestValueTerm(access rights)?
+                // The request values with the values they imply are calculated once per request.
+                yield ValueTerm.value(cxt.getImpliedValues(attribute).contains(requiredAttrValue));
+            }
+            case NE -> {
+                for ( ValueTerm requestValueTerm : requestValueTerms ) {
+                    if ( ! requestValueTerm.equals(requiredAttrValue) )
+                        yield ValueTerm.TRUE;
                 }
-                case NE -> ValueTerm.value(!requestValueTerm.equals(requiredAttrValue));
-                case GE -> throw new NotImplemented();
-                case GT -> throw new NotImplemented();
-                case LE -> throw new NotImplemented();
-                case LT -> throw new NotImplemented();
-                default -> throw new NotImplemented();
-            };
-            if ( result == ValueTerm.TRUE )
-                return result;
-        }
-        return ValueTerm.FALSE;
+                yield ValueTerm.FALSE;
+            }
+            case GE -> throw new NotImplemented();
+            case GT -> throw new NotImplemented();
+            case LE -> throw new NotImplemented();
+            case LT -> throw new NotImplemented();
+            default -> throw new NotImplemented();
+        };
+    }
+
+    /**
+     * Evaluate AND ({@code &}), choosing which operand to evaluate first from
+     * the outcomes of earlier evaluations of the same expression.
+     * See {@link ABAC#adaptiveLabelOrder}.
+     */
+    /*package*/ static ValueTerm evalAnd(AE2_Logical expr, CxtABAC cxt) {
+        if ( ! ABAC.adaptiveLabelOrder || ! expr.reorderable() )
+            return evalAnd(expr.left(), expr.right(), cxt);
+        return expr.evalAdaptive(false, cxt);
+    }
+
+    /**
+     * Evaluate OR ({@code |}), choosing which operand to evaluate first from
+     * the outcomes of earlier evaluations of the same expression.
+     * See {@link ABAC#adaptiveLabelOrder}.
+     */
+    /*package*/ static ValueTerm evalOr(AE2_Logical expr, CxtABAC cxt) {
+        if ( ! ABAC.adaptiveLabelOrder || ! expr.reorderable() )
+            return evalOr(expr.left(), expr.right(), cxt);
+        return expr.evalAdaptive(true, cxt);
+    }
+
+    /**
+     * Whether an expression always evaluates to true or false without an error,
+     * so that it can be evaluated before or after another operand.
+     */
+    /*package*/ static boolean isReorderable(AttributeExpr expr) {
+        if ( expr instanceof AE2_Logical logical )
+            return logical.reorderable();
+        if ( expr instanceof AE2_Relation relation )
+            return relation.relation() == Operator.EQ || relation.relation() == Operator.NE;
+        if ( expr instanceof AE_RelVar relation )
+            return relation.relation() == Operator.EQ || relation.relation() == Operator.NE;
+        if ( expr instanceof AE_Bracketted bracketted )
+            return isReorderable(bracketted.get());
+        return expr instanceof AE_Attribute || expr instanceof AE_Allow || expr instanceof AE_Deny;
+    }
+
+    /**
+     * Whether the outcome of an expression depends only on the request
+     * attributes (and attribute value hierarchies), so it is the same for all
+     * requests with the same attributes.
+     */
+    public static boolean isRequestOnly(AttributeExpr expr) {
+        if ( expr instanceof AE2_Logical logical )
+            return isRequestOnly(logical.left()) && isRequestOnly(logical.right());
+        if ( expr instanceof AE_Bracketted bracketted )
+            return isRequestOnly(bracketted.get());
+        if ( expr instanceof AE_Var || expr instanceof AE_RelVar )
+            return false;
+        return isReorderable(expr);
+    }
+
+    /** Estimated cost of evaluating an expression: the number of tests in it. */
+    /*package*/ static int cost(AttributeExpr expr) {
+        if ( expr instanceof AE2_Logical logical )
+            return logical.cost();
+        if ( expr instanceof AE1 ae1 )
+            return cost(ae1.get());
+        return 1;
     }
 
     /**
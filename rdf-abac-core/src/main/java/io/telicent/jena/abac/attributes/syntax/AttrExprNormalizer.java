@@ -0,0 +1,78 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.attributes.syntax;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+
+import io.telicent.jena.abac.attributes.AttributeExpr;
+
+/**
+ * Rewrite an {@link AttributeExpr} into a canonical form, so that equivalent
+ * labels written differently serialize to the same string.
+ * <ul>
+ * <li>Nested "&amp;&amp;" and "||" are flattened.</li>
+ * <li>The operands of "&amp;&amp;" and "||" are sorted and duplicates removed.</li>
+ * <li>Brackets are removed, except around an "||" that is an operand of "&amp;&amp;".</li>
+ * </ul>
+ */
+public class AttrExprNormalizer {
+
+    public static AttributeExpr normalize(AttributeExpr expr) {
+        if ( expr instanceof AE_Bracketted bracketted )
+            return normalize(bracketted.get());
+        if ( expr instanceof AE_And )
+            return logical(expr, AE_And.class, AE_And::new);
+        if ( expr instanceof AE_Or )
+            return logical(expr, AE_Or.class, AE_Or::new);
+        return expr;
+    }
+
+    private static AttributeExpr logical(AttributeExpr expr, Class<? extends AE2_Logical> kind,
+                                         BiFunction<AttributeExpr, AttributeExpr, AttributeExpr> maker) {
+        List<AttributeExpr> operands = new ArrayList<>();
+        flatten(expr, kind, operands);
+        // Sort by serialized form, dropping duplicates.
+        TreeMap<String, AttributeExpr> sorted = new TreeMap<>();
+        for ( AttributeExpr operand : operands ) {
+            AttributeExpr e = normalize(operand);
+            // "||" binds less tightly than "&&".
+            if ( kind == AE_And.class && e instanceof AE_Or )
+                e = new AE_Bracketted(e);
+            sorted.putIfAbsent(e.str(), e);
+        }
+        AttributeExpr result = null;
+        for ( AttributeExpr e : sorted.values() )
+            result = ( result == null ) ? e : maker.apply(result, e);
+        return result;
+    }
+
+    // Collect the operands of a chain of the same logical operator, looking through brackets.
+    private static void flatten(AttributeExpr expr, Class<? extends AE2_Logical> kind, List<AttributeExpr> acc) {
+        while ( expr instanceof AE_Bracketted bracketted )
+            expr = bracketted.get();
+        if ( kind.isInstance(expr) ) {
+            AE2_Logical logical = (AE2_Logical)expr;
+            flatten(logical.left(), kind, acc);
+            flatten(logical.right(), kind, acc);
+            return;
+        }
+        acc.add(expr);
+    }
+}
@@ -17,7 +17,9 @@
 package io.telicent.jena.abac.core;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -129,12 +131,18 @@ public class Attributes {
 
     private static void hierarchies(Graph attributesStoreGraph, AttributesStoreModifiable store) {
         RowSet hierarchies = QueryExec.graph(attributesStoreGraph).query(qHierarchies).select();
+        // Several value lists for the same attribute are the chains of a partial order.
+        Map<Attribute, List<List<ValueTerm>>> chains = new LinkedHashMap<>();
         hierarchies.forEachRemaining(row ->{
             String attrName = string(row.get("attribute"));
             String attrVals = string(row.get("values"));
-            List<ValueTerm> values = AE.parseValueTermList(attrVals);
-            Attribute a = new Attribute(attrName);
-            Hierarchy h = new Hierarchy(a, values);
+            Attribute a = Attribute.create(attrName);
+            chains.computeIfAbsent(a, k->new ArrayList<>()).addAll(AE.parseValueTermChains(attrVals));
+        });
+        chains.forEach((a, valueChains)->{
+            Hierarchy h = ( valueChains.size() == 1 )
+                    ? new Hierarchy(a, valueChains.get(0))
+                    : Hierarchy.createPartialOrder(a, valueChains);
             store.addHierarchy(h);
         });
     }
@@ -46,4 +46,10 @@ public interface AttributesStore extends HierarchyGetter {
     /** Return the hierarchy for an attribute. Returns null if there isn't one. */
     @Override
     public Hierarchy getHierarchy(Attribute attribute);
+
+    /**
+     * A number that changes whenever a hierarchy in this store changes.
+     * Stores that can not tell, such as a remote store, return a constant.
+     */
+    public default long hierarchyGeneration() { return 0; }
 }
@@ -20,6 +20,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.telicent.jena.abac.AttributeValueSet;
 import io.telicent.jena.abac.Hierarchy;
@@ -30,6 +31,7 @@ public class AttributesStoreLocal implements AttributesStoreModifiable {
 
     private Map<String, AttributeValueSet> attributeRegistry = new ConcurrentHashMap<>();
     private Map<Attribute, Hierarchy> hierarchyRegistry = new ConcurrentHashMap<>();
+    private AtomicLong hierarchyGeneration = new AtomicLong(0);
 
     public AttributesStoreLocal() {}
 
@@ -68,5 +70,11 @@ public class AttributesStoreLocal implements AttributesStoreModifiable {
     @Override
     public void addHierarchy(Hierarchy hierarchy) {
         hierarchyRegistry.put(hierarchy.attribute(), hierarchy);
+        hierarchyGeneration.incrementAndGet();
+    }
+
+    @Override
+    public long hierarchyGeneration() {
+        return hierarchyGeneration.get();
     }
 }
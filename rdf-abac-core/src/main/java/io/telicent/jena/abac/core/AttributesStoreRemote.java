@@ -34,8 +34,10 @@ import io.telicent.jena.abac.Hierarchy;
 import io.telicent.jena.abac.attributes.Attribute;
 import io.telicent.jena.abac.attributes.AttributeSyntaxError;
 import io.telicent.jena.abac.attributes.AttributeValue;
+import io.telicent.jena.abac.attributes.ValueTerm;
 import org.apache.jena.atlas.io.IO;
 import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonArray;
 import org.apache.jena.atlas.json.JsonObject;
 import org.apache.jena.atlas.json.JsonValue;
 import org.apache.jena.atlas.lib.StreamOps;
@@ -174,7 +176,6 @@ public class AttributesStoreRemote implements AttributesStore {
     private static Function<Stream<String>, AttributeValueSet> parseResponse = (Stream<String> items) -> {
         Stream<AttributeValue> s2 = items.map((str) -> AE.parseAttrValue(str));
         List<AttributeValue> attrValues = StreamOps.toList(s2);
-        AttributeValueSet attributeValueSet = AttributeValueSet.of(attrValues);
         return AttributeValueSet.of(attrValues);
     };
 
@@ -218,6 +219,8 @@ public class AttributesStoreRemote implements AttributesStore {
             //   "name": "...." ,
             //   "tiers" : [ string , string, ]"
             // }
+            // or, for a partial order, an array of chains, each low to high:
+            //   "tiers" : [ [ string , string, ] , [ string , string, ] ]
             //
 
             if ( ! jv.isObject() ) {
@@ -235,12 +238,24 @@ public class AttributesStoreRemote implements AttributesStore {
                 return null;
             }
 
-            List<String> levels = jva.getAsArray().stream()
-                    .map(a->jsonStringToString(a, jva))
-                    .filter(Objects::nonNull)
-                    .toList();
-
-            Hierarchy hierarchy = Hierarchy.create(attribute, levels);
+            JsonArray array = jva.getAsArray();
+            Hierarchy hierarchy;
+            if ( ! array.isEmpty() && array.stream().allMatch(JsonValue::isArray) ) {
+                List<List<ValueTerm>> chains = array.stream()
+                        .map(chain->chain.getAsArray().stream()
+                                .map(a->jsonStringToString(a, chain))
+                                .filter(Objects::nonNull)
+                                .map(ValueTerm::value)
+                                .toList())
+                        .toList();
+                hierarchy = Hierarchy.createPartialOrder(attribute, chains);
+            } else {
+                List<String> levels = array.stream()
+                        .map(a->jsonStringToString(a, jva))
+                        .filter(Objects::nonNull)
+                        .toList();
+                hierarchy = Hierarchy.create(attribute, levels);
+            }
             LOG.info("Response: "+hierarchy);
             return hierarchy;
         }
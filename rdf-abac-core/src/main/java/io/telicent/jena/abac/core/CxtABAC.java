@@ -17,12 +17,17 @@
 package io.telicent.jena.abac.core;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import io.telicent.jena.abac.ABAC;
 import io.telicent.jena.abac.AttributeValueSet;
 import io.telicent.jena.abac.Hierarchy;
 import io.telicent.jena.abac.attributes.Attribute;
+import io.telicent.jena.abac.attributes.AttributeExpr;
 import io.telicent.jena.abac.attributes.ValueTerm;
+import io.telicent.jena.abac.attributes.syntax.AE_Allow;
+import io.telicent.jena.abac.attributes.syntax.AE_Deny;
 import org.apache.jena.atlas.lib.Cache;
 import org.apache.jena.atlas.lib.CacheFactory;
 import org.apache.jena.graph.Node;
@@ -49,12 +54,30 @@ public class CxtABAC {
     /** Cache of types of nodes for patterns "X where X has type T" */
     private final Cache<Node, Node> typeCache;
 
-    /** Cache of evaluations within this request context. */
-    private final Cache<String, ValueTerm> evalCache;
+    /** Labels specialized to this request, by label string. See {@link #specializedLabel}. */
+    private final Map<String, AttributeExpr> specializedLabels = new ConcurrentHashMap<>();
 
     /** Hierarchy lookup cache. Cache can't hold nulls. */
     private Cache<Attribute, Optional<Hierarchy>> hierarchyCache;
 
+    /** Request attribute values with the values implied by hierarchies. */
+    private final Map<Attribute, Set<ValueTerm>> impliedValues = new ConcurrentHashMap<>();
+
+    /**
+     * Results of atomic tests ("attribute op value") in this request, by slot number.
+     * 0 is not known, 1 is false, 2 is true. Results are kept in pages of
+     * {@code AtomPageSize} slots, allocated when a slot in the page is first used, so
+     * a request only has space for the ranges of slot numbers of the tests it uses,
+     * and at most {@link ABAC#atomSlotsMax} bytes. If two threads race, a result may
+     * be lost and the test evaluated again, which gives the same answer.
+     */
+    private byte[][] atomResults = new byte[0][];
+    private static final int AtomPageBits = 10;
+    private static final int AtomPageSize = 1 << AtomPageBits;
+
+    /** Decisions shared across requests. May be null. */
+    private final DecisionCache decisionCache;
+
     /** The data being protected. */
     private final DatasetGraph baseData;
     /** Request environment values. These are not the attributes of the user.*/
@@ -67,52 +90,185 @@ public class CxtABAC {
                                   DatasetGraph dsgBase) {
         Objects.requireNonNull(requestAttributes);
         Objects.requireNonNull(attrHierarchy);
-        // No environment support yet.
+        // No environment.
         // No "security by rdf:type yet.
-        return context(requestAttributes, attrHierarchy, null, null, dsgBase);
+        return context(requestAttributes, attrHierarchy, null, null, dsgBase, null);
+    }
+
+    /**
+     * Create a context that uses a {@link DecisionCache} for label decisions
+     * made by earlier requests. The decision cache may be null.
+     */
+    public static CxtABAC context(AttributeValueSet requestAttributes,
+                                  HierarchyGetter attrHierarchy,
+                                  DatasetGraph dsgBase,
+                                  DecisionCache decisionCache) {
+        Objects.requireNonNull(requestAttributes);
+        Objects.requireNonNull(attrHierarchy);
+        return context(requestAttributes, attrHierarchy, null, null, dsgBase, decisionCache);
+    }
+
+    /**
+     * Create a context with values for the variables used in labels.
+     * The environment and the decision cache may be null.
+     */
+    public static CxtABAC context(AttributeValueSet requestAttributes,
+                                  HierarchyGetter attrHierarchy,
+                                  Map<Attribute, ValueTerm> environment,
+                                  DatasetGraph dsgBase,
+                                  DecisionCache decisionCache) {
+        Objects.requireNonNull(requestAttributes);
+        Objects.requireNonNull(attrHierarchy);
+        return context(requestAttributes, attrHierarchy, environment, null, dsgBase, decisionCache);
     }
 
     private static CxtABAC context(AttributeValueSet requestAttributes,
                                    HierarchyGetter attrHierarchy,
                                    Map<Attribute, ValueTerm> environment,
                                    Cache<Node, Node> typeCache,
-                                   DatasetGraph dsgBase) {
-        return new CxtABAC(requestAttributes, attrHierarchy, environment, typeCache, dsgBase);
+                                   DatasetGraph dsgBase,
+                                   DecisionCache decisionCache) {
+        return new CxtABAC(requestAttributes, attrHierarchy, environment, typeCache, dsgBase, decisionCache);
     }
 
     private CxtABAC(AttributeValueSet requestAttributes, HierarchyGetter attrHierarchy,
                     Map<Attribute, ValueTerm> environment, Cache<Node, Node> typeCache,
-                    DatasetGraph baseData) {
+                    DatasetGraph baseData, DecisionCache decisionCache) {
         this.requestAttributes = requestAttributes;
         this.attrHierarchy = attrHierarchy;
+        this.decisionCache = decisionCache;
 
         this.typeCache = typeCache;
-        this.evalCache = CacheFactory.createCache(ABAC.labelEvalCacheSize);
-        // Having a label eval cache means the hierarchy cache is less important
-        // because there are often (?) only a few distinct labels using the hierarchy
-        // across the data.
+        // Labels are specialized once per request, so the hierarchy cache is less
+        // important because there are often (?) only a few distinct labels using
+        // the hierarchy across the data.
         this.hierarchyCache = CacheFactory.createCache(ABAC.hierarchyCacheSize);
 
         this.baseData = baseData;
-        this.environment = environment;
+        this.environment = ( environment == null ) ? Map.of() : environment;
         this.trace = globalTrace;
         this.id = UUID.randomUUID();
     }
 
     public AttributeValueSet requestAttributes() { return requestAttributes; }
 
-    public Hierarchy getHierarchy(Attribute attr) { return attrHierarchy.getHierarchy(attr); }
+    public Hierarchy getHierarchy(Attribute attr) {
+        Hierarchy hierarchy = attrHierarchy.getHierarchy(attr);
+        if ( decisionCache != null )
+            decisionCache.observeHierarchy(attr, hierarchy);
+        return hierarchy;
+    }
 
     public Collection<ValueTerm> getValue(Attribute attribute) {
         return requestAttributes.get(attribute);
     }
 
+    /** The value of a variable for this request, or null if it has no value. */
+    public ValueTerm getVar(Attribute var) {
+        return environment.get(var);
+    }
+
+    /**
+     * The values of an attribute in the request together with the values they
+     * imply by the hierarchy for the attribute. For a hierarchy "U, C, S, TS", a
+     * request with {@code clearance=S} implies {@code clearance=C} and
+     * {@code clearance=U}.
+     * <p>
+     * This is calculated once for each attribute in a request, when first needed,
+     * so hierarchies are only looked up for attributes that labels use.
+     */
+    public Set<ValueTerm> getImpliedValues(Attribute attribute) {
+        return impliedValues.computeIfAbsent(attribute, this::calcImpliedValues);
+    }
+
+    private Set<ValueTerm> calcImpliedValues(Attribute attribute) {
+        Collection<ValueTerm> values = getValue(attribute);
+        if ( values.isEmpty() )
+            return Set.of();
+        // Caches can't hold nulls.
+        Optional<Hierarchy> entry = hierarchyCache.getOrFill(attribute, ()->Optional.ofNullable(getHierarchy(attribute)));
+        if ( entry.isEmpty() )
+            // No hierarchy for this attribute.
+            return Set.copyOf(values);
+        Hierarchy hierarchy = entry.get();
+        Set<ValueTerm> acc = new HashSet<>(values);
+        for ( ValueTerm value : values )
+            acc.addAll(hierarchy.valuesBelow(value));
+        return Set.copyOf(acc);
+    }
+
+    /**
+     * The result of the atomic test with the given slot number in this request,
+     * or null if it has not been evaluated yet.
+     */
+    public ValueTerm atomValue(int slot) {
+        byte[][] pages = atomResults;
+        int page = slot >>> AtomPageBits;
+        if ( page >= pages.length || pages[page] == null )
+            return null;
+        return switch (pages[page][slot & (AtomPageSize-1)]) {
+            case 1 -> ValueTerm.FALSE;
+            case 2 -> ValueTerm.TRUE;
+            default -> null;
+        };
+    }
+
+    /** Record the result of the atomic test with the given slot number. */
+    public void atomValue(int slot, ValueTerm value) {
+        byte[][] pages = atomResults;
+        int page = slot >>> AtomPageBits;
+        if ( page >= pages.length ) {
+            pages = Arrays.copyOf(pages, page+1);
+            atomResults = pages;
+        }
+        byte[] results = pages[page];
+        if ( results == null ) {
+            results = new byte[AtomPageSize];
+            pages[page] = results;
+        }
+        results[slot & (AtomPageSize-1)] = value.getBoolean() ? (byte)2 : (byte)1;
+    }
+
+    /** The number of slots this request has space for; results are only kept for slots below this. */
+    public int atomSlotsAllocated() {
+        return atomResults.length * AtomPageSize;
+    }
+
+    /**
+     * The label, specialized to the attributes of this request, usually to
+     * {@code AE_Allow} or {@code AE_Deny}. The specializer is called the first
+     * time a label is seen in the request. At most {@link ABAC#labelExprCacheSize}
+     * labels are kept for a request.
+     */
+    public AttributeExpr specializedLabel(String label, Function<String, AttributeExpr> specializer) {
+        AttributeExpr expr = specializedLabels.get(label);
+        if ( expr != null )
+            return expr;
+        expr = specializer.apply(label);
+        if ( specializedLabels.size() < ABAC.labelExprCacheSize )
+            specializedLabels.put(label, expr);
+        return expr;
+    }
+
+    /**
+     * Record the value for this request of a label whose specialized form was not
+     * a constant, once it has been evaluated, so it is not evaluated again.
+     */
+    public void specializedLabelValue(String label, boolean value) {
+        specializedLabels.replace(label, value ? AE_Allow.value() : AE_Deny.value());
+    }
+
     //public Cache<Node, Node> typeCache()    { return typeCache; }
 
-    public Cache<String, ValueTerm> labelEvalCache()  { return evalCache ; }
+    /** @deprecated Not used. Returns a cache that keeps nothing. */
+    @Deprecated
+    public Cache<String, ValueTerm> labelEvalCache()  { return CacheFactory.createNullCache(); }
 
     public Cache<Attribute, Optional<Hierarchy>> hierarchyCache()  { return hierarchyCache; }
 
+    /** Cross-request decision cache; may be null. */
+    public DecisionCache decisionCache()  { return decisionCache; }
+
     public DatasetGraph data() { return baseData; }
 
     public Object requestId() { return id; }
@@ -16,15 +16,32 @@
 
 package io.telicent.jena.abac.core;
 
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
 import io.telicent.jena.abac.AE;
 import io.telicent.jena.abac.attributes.AttributeExpr;
 import io.telicent.jena.abac.labels.Labels;
 import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.ReadWrite;
 import org.apache.jena.query.TxnType;
+import org.apache.jena.riot.out.NodeFmtLib;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.shared.AddDeniedException;
+import org.apache.jena.shared.DeleteDeniedException;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.DatasetGraphWrapper;
+import org.apache.jena.sparql.core.GraphView;
+import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.core.Transactional;
+import org.apache.jena.sparql.graph.GraphFactory;
 
 public class DatasetGraphABAC extends DatasetGraphWrapper {
     // Attribute expression used to determine whether access is allowed.
@@ -37,6 +54,24 @@ public class DatasetGraphABAC extends DatasetGraphWrapper {
     // Can be null for system wide policy (which is deny).
     private final String defaultLabel;
     private final AttributesStore attributesStore;
+    // Label decisions shared across requests. May be null.
+    private final DecisionCache decisionCache;
+    // Values of label variables for each request.
+    private volatile EnvironmentProvider environmentProvider = EnvironmentProvider.noEnvironment;
+    // Transactions of the labels store, if different from the base dataset, else null.
+    private final Transactional labelsTransactional;
+    // Graph of the base dataset holding the labels, else null.
+    private final Node labelsGraphName;
+    // Triples deleted in the current transaction of this thread.
+    // Their labels are removed at commit if the triple is no longer in the data.
+    private final ThreadLocal<Set<Triple>> deletedTriples = ThreadLocal.withInitial(HashSet::new);
+    // Labelled change in progress on this thread (see executeLabelled).
+    private final ThreadLocal<LabelledChange> labelledChange = new ThreadLocal<>();
+    // Number of quads found and deleted at a time by deleteAny.
+    private static final int DeleteSliceSize = 1000;
+    // Number of deleted triples kept for removing their labels together, at the
+    // end of the operation or at commit.
+    private static final int DeletedTriplesMax = 100 * DeleteSliceSize;
 
     /** Return a {@code DatasetGraphAuthz} with empty labels, and no access attribute expression. */
     public static DatasetGraphABAC create(DatasetGraph dsg, String tripleDefaultAttributes, String datasetDefaultLabel, AttributesStore attributesStore) {
@@ -52,12 +87,22 @@ public class DatasetGraphABAC extends DatasetGraphWrapper {
     public DatasetGraphABAC(DatasetGraph base, String accessAttributes,
                              LabelsStore labelsStore, String datasetDefaultLabel,
                              AttributesStore attributesStore) {
+        this(base, accessAttributes, labelsStore, datasetDefaultLabel, attributesStore, null);
+    }
+
+    public DatasetGraphABAC(DatasetGraph base, String accessAttributes,
+                             LabelsStore labelsStore, String datasetDefaultLabel,
+                             AttributesStore attributesStore, DecisionCache decisionCache) {
         super(base);
         this.accessAttributesStr = accessAttributes;
         this.accessAttributesExpr = AE.parseExpr(accessAttributesStr);
         this.labelsStore = labelsStore;
         this.defaultLabel = datasetDefaultLabel;
         this.attributesStore = attributesStore;
+        this.decisionCache = decisionCache;
+        Transactional other = ( labelsStore == null ) ? null : labelsStore.getTransactional();
+        this.labelsTransactional = ( other == base ) ? null : other;
+        this.labelsGraphName = ( labelsStore == null ) ? null : Labels.labelsGraphName(labelsStore, base);
     }
 
     public AttributeExpr getAccessAttributes() {
@@ -77,78 +122,376 @@ public class DatasetGraphABAC extends DatasetGraphWrapper {
         return attributesStore ;
     }
 
+    /** Return the cross-request decision cache for this dataset, or null if there isn't one. */
+    public DecisionCache decisionCache() {
+        return decisionCache;
+    }
+
+    /** Return the provider of the values of label variables for requests on this dataset. */
+    public EnvironmentProvider environmentProvider() {
+        return environmentProvider;
+    }
+
+    /** Set the provider of the values of label variables, such as {@code {tenant}}, for requests on this dataset. */
+    public void setEnvironmentProvider(EnvironmentProvider environmentProvider) {
+        this.environmentProvider = Objects.requireNonNull(environmentProvider);
+    }
+
     /** Return the function for getting the user's attributes for this datasets. */
     public AttributesForUser attributesForUser() {
         return attributesStore::attributes ;
     }
 
-    // Propagate transactions to the labels store.
+    /**
+     * Run an action that changes the data, such as a SPARQL Update or an RDF Patch,
+     * with the same labelling as a data upload. Triples added to the default graph
+     * are given the labels {@code dataDftLabels}, if not null. Otherwise, triples
+     * added to the graph {@link VocabAuthz#graphForLabels} are label descriptions
+     * and go to the labels store, not the data. Labels are collected and added to
+     * the labels store once, in the same transaction as the data change.
+     */
+    public void executeLabelled(List<String> dataDftLabels, Runnable action) {
+        if ( labelsStore == null ) {
+            action.run();
+            return;
+        }
+        Graph labelsGraph = GraphFactory.createDefaultGraph();
+        StreamSplitter splitter = new StreamSplitter(StreamRDFLib.dataset(getBase()), labelsGraph, dataDftLabels);
+        labelledChange.set(new LabelledChange(splitter, labelsGraph));
+        try {
+            action.run();
+            // The action ran in a transaction of the caller: the labels go in that transaction.
+            if ( isInTransaction() )
+                applyLabels();
+        } finally {
+            labelledChange.remove();
+        }
+    }
+
+    // Label descriptions are collected, and added to the labels store once, at commit.
+    private record LabelledChange(StreamSplitter splitter, Graph labelsGraph) {}
+
+    // The labels graph, when the labels are kept in the base dataset, is only
+    // changed through the labels store. Adding or deleting triples in it is
+    // refused; operations on whole graphs leave it unchanged.
+
+    private boolean isLabelsGraph(Node g) {
+        return labelsGraphName != null && labelsGraphName.equals(g);
+    }
+
+    private void checkAdd(Node g) {
+        if ( isLabelsGraph(g) )
+            throw new AddDeniedException("Can't add to the labels graph: "+NodeFmtLib.displayStr(g));
+    }
+
+    private void checkDelete(Node g) {
+        if ( isLabelsGraph(g) )
+            throw new DeleteDeniedException("Can't delete from the labels graph: "+NodeFmtLib.displayStr(g));
+    }
+
+    @Override
+    public void add(Quad quad) {
+        checkAdd(quad.getGraph());
+        LabelledChange change = labelledChange.get();
+        if ( change == null ) {
+            super.add(quad);
+            return;
+        }
+        change.splitter().quad(quad);
+    }
+
+    @Override
+    public void add(Node g, Node s, Node p, Node o) {
+        checkAdd(g);
+        if ( labelledChange.get() == null ) {
+            super.add(g, s, p, o);
+            return;
+        }
+        // Null is the default graph (e.g. RDF Patch).
+        add(Quad.create(g == null ? Quad.defaultGraphIRI : g, s, p, o));
+    }
+
+    @Override
+    public void addGraph(Node graphName, Graph graph) {
+        checkAdd(graphName);
+        super.addGraph(graphName, graph);
+    }
 
-    private Transactional getOther() { return labelsStore.getTransactional(); }
+    @Override
+    public Graph getGraph(Node graphNode) {
+        if ( isLabelsGraph(graphNode) )
+            // Changes go through this dataset.
+            return GraphView.createNamedGraph(this, graphNode);
+        return super.getGraph(graphNode);
+    }
+
+    @Override
+    public void removeGraph(Node graphName) {
+        if ( isLabelsGraph(graphName) )
+            return;
+        super.removeGraph(graphName);
+    }
+
+    @Override
+    public void clear() {
+        if ( labelsGraphName == null ) {
+            super.clear();
+            return;
+        }
+        deleteAny(Node.ANY, Node.ANY, Node.ANY, Node.ANY);
+    }
+
+    private void applyLabels(LabelledChange change) {
+        Graph labelsGraph = change.labelsGraph();
+        if ( labelsGraph.isEmpty() )
+            return;
+        labelsStore.add(labelsGraph);
+        labelsGraph.clear();
+    }
+
+    private void applyLabels() {
+        LabelledChange change = labelledChange.get();
+        if ( change != null )
+            applyLabels(change);
+    }
+
+    private void discardLabels() {
+        LabelledChange change = labelledChange.get();
+        if ( change != null )
+            change.labelsGraph().clear();
+    }
+
+    // Keep the labels store in step with deletes: labels for a concrete triple
+    // are removed when the triple is deleted and is not in any graph of the data.
+
+    @Override
+    public void delete(Quad quad) {
+        checkDelete(quad.getGraph());
+        super.delete(quad);
+        deleted(quad.getSubject(), quad.getPredicate(), quad.getObject());
+    }
+
+    @Override
+    public void delete(Node g, Node s, Node p, Node o) {
+        checkDelete(g);
+        super.delete(g, s, p, o);
+        deleted(s, p, o);
+    }
+
+    @Override
+    public void deleteAny(Node g, Node s, Node p, Node o) {
+        if ( isLabelsGraph(g) )
+            return;
+        if ( labelsStore == null ) {
+            super.deleteAny(g, s, p, o);
+            return;
+        }
+        // Removing whole graphs leaves the labels to LabelsCompaction.
+        boolean wholeGraphs = isAny(s) && isAny(p) && isAny(o);
+        Set<Triple> triples = new HashSet<>();
+        boolean allGraphs = isAny(g);
+        if ( Quad.isUnionGraph(g) || ( allGraphs && labelsGraphName != null ) ) {
+            // Graph by graph: the union graph can not be deleted from, and the
+            // labels graph is skipped.
+            if ( allGraphs )
+                deleteAny(Quad.defaultGraphIRI, s, p, o, wholeGraphs, triples);
+            for ( Node gn : Iter.toList(listGraphNodes()) ) {
+                if ( ! isLabelsGraph(gn) )
+                    deleteAny(gn, s, p, o, wholeGraphs, triples);
+            }
+        } else {
+            deleteAny(g, s, p, o, wholeGraphs, triples);
+        }
+        deleted(triples);
+    }
+
+    private static boolean isAny(Node node) {
+        return node == null || Node.ANY.equals(node);
+    }
+
+    /**
+     * Delete matches in slices, without holding all the matches at once. Unless
+     * {@code wholeGraphs}, record their triples, passing them on when there are
+     * many. Stops if a slice deletes nothing.
+     */
+    private void deleteAny(Node g, Node s, Node p, Node o, boolean wholeGraphs, Set<Triple> triples) {
+        for ( ;; ) {
+            Iterator<Quad> iter = find(g, s, p, o);
+            List<Quad> slice;
+            try {
+                slice = Iter.take(iter, DeleteSliceSize);
+            } finally { Iter.close(iter); }
+            if ( slice.isEmpty() )
+                return;
+            for ( Quad quad : slice ) {
+                super.delete(quad);
+                if ( ! wholeGraphs )
+                    triples.add(quad.asTriple());
+            }
+            if ( triples.size() >= DeletedTriplesMax ) {
+                deleted(triples);
+                triples.clear();
+            }
+            // The slice would be found again.
+            if ( slice.stream().allMatch(super::contains) )
+                return;
+        }
+    }
+
+    private void deleted(Node s, Node p, Node o) {
+        if ( labelsStore == null )
+            return;
+        Triple triple = Triple.create(s, p, o);
+        if ( ! triple.isConcrete() )
+            return;
+        deleted(Set.of(triple));
+    }
+
+    /** Concrete triples deleted by one operation. */
+    private void deleted(Set<Triple> triples) {
+        if ( triples.isEmpty() )
+            return;
+        if ( isInTransaction() ) {
+            Set<Triple> x = deletedTriples.get();
+            x.addAll(triples);
+            // A large transaction removes labels as it goes. A triple added again
+            // later in the transaction then needs its label again.
+            if ( x.size() >= DeletedTriplesMax ) {
+                removeLabels(x);
+                x.clear();
+            }
+            return;
+        }
+        removeLabels(triples);
+    }
+
+    /** Remove the labels for triples that are no longer in the data. */
+    private void removeLabels(Set<Triple> triples) {
+        DatasetGraph base = getBase();
+        List<Triple> orphans = triples.stream()
+                .filter(t->!base.contains(Node.ANY, t.getSubject(), t.getPredicate(), t.getObject()))
+                .toList();
+        labelsStore.remove(orphans);
+    }
+
+    private void removeLabelsForDeleted() {
+        Set<Triple> triples = deletedTriples.get();
+        deletedTriples.remove();
+        if ( ! triples.isEmpty() )
+            removeLabels(triples);
+    }
+
+    // Propagate transactions to the labels store, unless it uses the transactions
+    // of the base dataset.
+
+    private Transactional getOther() { return labelsTransactional; }
 
     @Override
     public void begin() {
-        getOther().begin();
+        if ( getOther() != null )
+            getOther().begin();
         super.begin();
+        labelsBeforeWrite(true);
     }
 
     @Override
     public ReadWrite transactionMode() {
-        getOther().transactionMode();
+        if ( getOther() != null )
+            getOther().transactionMode();
         return super.transactionMode();
     }
 
     @Override
     public TxnType transactionType() {
-        getOther().transactionType();
+        if ( getOther() != null )
+            getOther().transactionType();
         return super.transactionType();
     }
 
     @Override
     public void begin(TxnType type) {
-        getOther().begin(type);
+        if ( getOther() != null )
+            getOther().begin(type);
         super.begin(type);
+        labelsBeforeWrite(type != TxnType.READ);
     }
 
     @Override
     public void begin(ReadWrite readWrite) {
-        getOther().begin(readWrite);
+        if ( getOther() != null )
+            getOther().begin(readWrite);
         super.begin(readWrite);
+        labelsBeforeWrite(readWrite == ReadWrite.WRITE);
     }
 
     @Override
     public boolean promote() {
-        getOther().promote();
+        if ( getOther() != null )
+            getOther().promote();
         return super.promote();
     }
 
     @Override
     public boolean promote(Promote type) {
-        getOther().promote(type);
+        if ( getOther() != null )
+            getOther().promote(type);
         return super.promote(type);
     }
 
     @Override
     public void commit() {
-        getOther().commit();
-        super.commit();
+        removeLabelsForDeleted();
+        applyLabels();
+        try {
+            if ( getOther() != null )
+                getOther().commit();
+            super.commit();
+        } catch (RuntimeException ex) {
+            labelsAfterAbort();
+            throw ex;
+        }
+        // Labels changed in the transaction are used by other requests from now.
+        if ( labelsStore != null )
+            labelsStore.afterCommit();
     }
 
     @Override
     public void abort() {
-        getOther().abort();
+        deletedTriples.remove();
+        discardLabels();
+        if ( getOther() != null )
+            getOther().abort();
         super.abort();
+        labelsAfterAbort();
     }
 
     @Override
     public void end() {
-        getOther().end();
+        deletedTriples.remove();
+        discardLabels();
+        if ( getOther() != null )
+            getOther().end();
         super.end();
+        // No-op after a commit.
+        labelsAfterAbort();
+    }
+
+    // This dataset tells the labels store when a transaction that may change
+    // the labels finishes (see LabelsStore#beforeWrite).
+    private void labelsBeforeWrite(boolean mayWrite) {
+        if ( mayWrite && labelsStore != null )
+            labelsStore.beforeWrite();
+    }
+
+    private void labelsAfterAbort() {
+        if ( labelsStore != null )
+            labelsStore.afterAbort();
     }
 
     @Override
     public boolean isInTransaction() {
-        getOther().isInTransaction();
+        if ( getOther() != null )
+            getOther().isInTransaction();
         return super.isInTransaction();
     }
 
@@ -0,0 +1,48 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.core;
+
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.apache.jena.atlas.lib.tuple.Tuple;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFilteredView;
+import org.apache.jena.tdb2.store.NodeId;
+
+/**
+ * A filtered view of a TDB2 dataset.
+ * <p>
+ * Access by {@code find} uses the quad filter, as for any
+ * {@link DatasetGraphFilteredView}. SPARQL queries are executed by the TDB2 query
+ * engine on the base dataset with the tuple filter applied to the
+ * {@code Tuple<NodeId>} read from the TDB2 indexes (see {@code QueryEngineFactoryFilteredTDB2}).
+ * Both filters must make the same decisions.
+ */
+public class DatasetGraphFilteredTDB2 extends DatasetGraphFilteredView {
+
+    private final Predicate<Tuple<NodeId>> tupleFilter;
+
+    public DatasetGraphFilteredTDB2(DatasetGraph dsgBase, QuadFilter quadFilter, Predicate<Tuple<NodeId>> tupleFilter) {
+        super(dsgBase, quadFilter, Set.of());
+        this.tupleFilter = tupleFilter;
+    }
+
+    public Predicate<Tuple<NodeId>> tupleFilter() {
+        return tupleFilter;
+    }
+}
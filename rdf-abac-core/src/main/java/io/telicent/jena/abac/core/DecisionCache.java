@@ -0,0 +1,131 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.core;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import io.telicent.jena.abac.ABAC;
+import io.telicent.jena.abac.AttributeValueSet;
+import io.telicent.jena.abac.Hierarchy;
+import io.telicent.jena.abac.attributes.Attribute;
+import io.telicent.jena.abac.attributes.ValueTerm;
+import org.apache.jena.ext.com.google.common.cache.Cache;
+import org.apache.jena.ext.com.google.common.cache.CacheBuilder;
+
+/**
+ * Label decisions shared across requests on a dataset.
+ * <p>
+ * The key is the request attributes, not the user, so a change to a user's
+ * attributes is a different key, and users with the same attributes share
+ * entries. {@link AttributeValueSet}s are interned and hash by their fingerprint,
+ * so the key is cheap to use. Entries expire after a short time.
+ * <p>
+ * Hierarchies are not part of the key. All cached decisions are dropped when
+ * the attributes store reports a new {@link AttributesStore#hierarchyGeneration()},
+ * or when a hierarchy fetched by a request differs from the one last seen
+ * (remote stores can not report changes so for them this, and the time-to-live,
+ * are the only checks).
+ */
+public class DecisionCache {
+
+    private record Key(AttributeValueSet attributes, String label) {}
+
+    private final Duration ttl;
+    private final Cache<Key, ValueTerm> cache;
+    // May be null.
+    private final AttributesStore attributesStore;
+    private volatile long hierarchyGeneration;
+    // Hierarchies as last seen by a request.
+    private final Map<Attribute, Optional<Hierarchy>> hierarchies = new ConcurrentHashMap<>();
+
+    public static DecisionCache create(Duration ttl, AttributesStore attributesStore) {
+        return new DecisionCache(ttl, ABAC.decisionCacheSize, attributesStore);
+    }
+
+    public static DecisionCache create(Duration ttl, long maxSize, AttributesStore attributesStore) {
+        return new DecisionCache(ttl, maxSize, attributesStore);
+    }
+
+    private DecisionCache(Duration ttl, long maxSize, AttributesStore attributesStore) {
+        Objects.requireNonNull(ttl);
+        if ( ttl.isNegative() || ttl.isZero() )
+            throw new AuthzException("Decision cache time-to-live must be positive: "+ttl);
+        this.ttl = ttl;
+        this.cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .build();
+        this.attributesStore = attributesStore;
+        this.hierarchyGeneration = ( attributesStore == null ) ? 0 : attributesStore.hierarchyGeneration();
+    }
+
+    /**
+     * Get the decision for a label, and these request attributes, or
+     * calculate it and remember the outcome.
+     */
+    public ValueTerm getOrFill(AttributeValueSet attributes, String label, Supplier<ValueTerm> evaluator) {
+        checkHierarchyGeneration();
+        Key key = new Key(attributes, label);
+        ValueTerm value = cache.getIfPresent(key);
+        if ( value == null ) {
+            value = evaluator.get();
+            if ( value != null )
+                cache.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Record a hierarchy as retrieved for a request.
+     * If it is different to the last time, cached decisions are cleared.
+     */
+    public void observeHierarchy(Attribute attribute, Hierarchy hierarchy) {
+        Optional<Hierarchy> now = Optional.ofNullable(hierarchy);
+        Optional<Hierarchy> before = hierarchies.put(attribute, now);
+        if ( before != null && ! before.equals(now) )
+            cache.invalidateAll();
+    }
+
+    private void checkHierarchyGeneration() {
+        if ( attributesStore == null )
+            return;
+        long generation = attributesStore.hierarchyGeneration();
+        if ( generation != hierarchyGeneration ) {
+            hierarchyGeneration = generation;
+            cache.invalidateAll();
+        }
+    }
+
+    /** Clear all cached decisions. */
+    public void invalidate() {
+        cache.invalidateAll();
+        hierarchies.clear();
+    }
+
+    public Duration ttl() {
+        return ttl;
+    }
+
+    public long size() {
+        return cache.size();
+    }
+}
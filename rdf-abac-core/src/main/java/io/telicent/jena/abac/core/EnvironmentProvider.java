@@ -0,0 +1,39 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.core;
+
+import java.util.Map;
+
+import io.telicent.jena.abac.AttributeValueSet;
+import io.telicent.jena.abac.attributes.Attribute;
+import io.telicent.jena.abac.attributes.ValueTerm;
+
+/**
+ * Provider of the values of the variables, such as {@code {tenant}}, used in labels.
+ * <p>
+ * It is called once when the {@link CxtABAC} for a request is created. The values
+ * do not change during the request.
+ */
+@FunctionalInterface
+public interface EnvironmentProvider {
+
+    /** Environment provider with no variables. */
+    public static EnvironmentProvider noEnvironment = requestAttributes->Map.of();
+
+    /** The values of variables for a request with the given attributes. */
+    public Map<Attribute, ValueTerm> environment(AttributeValueSet requestAttributes);
+}
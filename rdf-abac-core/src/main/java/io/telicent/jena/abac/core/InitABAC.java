@@ -29,6 +29,7 @@ public class InitABAC implements JenaSubsystemLifecycle {
         JenaSystem.logLifecycle("ABAC - start") ;
         VocabAuthzDataset.init();
         SysABAC.init();
+        QueryEngineFactoryFilteredTDB2.init();
         JenaSystem.logLifecycle("ABAC - finish") ;
     }
 
@@ -0,0 +1,80 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.core;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.lib.Closeable;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * Iterator that reads quads a block at a time and filters each block with
+ * {@link QuadFilter#testBlock}.
+ */
+/*package*/ class IteratorQuadFilterBlock implements Iterator<Quad>, Closeable {
+
+    private final Iterator<Quad> input;
+    private final QuadFilter filter;
+    private final int blockSize;
+
+    private List<Quad> block;
+    private BitSet selection;
+    // Index of the next selected quad in the block, or -1.
+    private int idx = -1;
+
+    /*package*/ IteratorQuadFilterBlock(Iterator<Quad> input, QuadFilter filter, int blockSize) {
+        if ( blockSize <= 0 )
+            throw new IllegalArgumentException("Block size must be positive: "+blockSize);
+        this.input = input;
+        this.filter = filter;
+        this.blockSize = blockSize;
+        this.block = new ArrayList<>(blockSize);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while ( idx < 0 ) {
+            if ( ! input.hasNext() )
+                return false;
+            block.clear();
+            while ( block.size() < blockSize && input.hasNext() )
+                block.add(input.next());
+            selection = filter.testBlock(block);
+            idx = selection.nextSetBit(0);
+        }
+        return true;
+    }
+
+    @Override
+    public Quad next() {
+        if ( ! hasNext() )
+            throw new NoSuchElementException();
+        Quad quad = block.get(idx);
+        idx = selection.nextSetBit(idx+1);
+        return quad;
+    }
+
+    @Override
+    public void close() {
+        Iter.close(input);
+    }
+}
@@ -16,8 +16,33 @@
 
 package io.telicent.jena.abac.core;
 
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.function.Predicate;
 
 import org.apache.jena.sparql.core.Quad;
 
-public interface QuadFilter extends Predicate<Quad> {}
+public interface QuadFilter extends Predicate<Quad> {
+
+    /**
+     * Test a block of quads.
+     * Returns a selection bitmap: bit {@code i} is set if {@code quads.get(i)} passes the filter.
+     * Implementations can override this to share work across the block.
+     */
+    public default BitSet testBlock(List<Quad> quads) {
+        BitSet selection = new BitSet(quads.size());
+        for ( int i = 0 ; i < quads.size() ; i++ ) {
+            if ( test(quads.get(i)) )
+                selection.set(i);
+        }
+        return selection;
+    }
+
+    /**
+     * Filter an iterator, testing quads in blocks of {@code blockSize} with {@link #testBlock}.
+     */
+    public static Iterator<Quad> filter(Iterator<Quad> iter, QuadFilter filter, int blockSize) {
+        return new IteratorQuadFilterBlock(iter, filter, blockSize);
+    }
+}
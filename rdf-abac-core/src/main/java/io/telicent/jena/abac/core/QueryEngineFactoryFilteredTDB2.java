@@ -0,0 +1,158 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.core;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.OpVisitorBase;
+import org.apache.jena.sparql.algebra.op.*;
+import org.apache.jena.sparql.algebra.walker.Walker;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.Plan;
+import org.apache.jena.sparql.engine.QueryEngineFactory;
+import org.apache.jena.sparql.engine.QueryEngineRegistry;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.main.OpExecutor;
+import org.apache.jena.sparql.engine.main.QC;
+import org.apache.jena.sparql.expr.ExprVisitorBase;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.tdb2.TDB2;
+import org.apache.jena.tdb2.solver.QC2;
+import org.apache.jena.tdb2.solver.QueryEngineTDB;
+import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.sys.TDBInternal;
+
+/**
+ * Query engine factory for {@link DatasetGraphFilteredTDB2}.
+ * <p>
+ * The query is executed by the TDB2 query engine on the TDB2 storage with the
+ * label filter as the TDB2 tuple filter, so triples are checked as they come off
+ * the indexes, before any NodeIds are turned into Nodes.
+ * <p>
+ * Queries are accepted by the type of the dataset; queries with a dataset description
+ * or that use the union default graph are left to the general query engine which
+ * uses the quad filter of the {@code DatasetGraphFilteredView}. The query is compiled
+ * once, by the TDB2 engine, and an algebra expression that names graphs is
+ * evaluated on the filtered view, not on the TDB2 storage. That keeps the named
+ * graph visibility of the view.
+ */
+/*package*/ class QueryEngineFactoryFilteredTDB2 implements QueryEngineFactory {
+
+    private static final QueryEngineFactory factory = new QueryEngineFactoryFilteredTDB2();
+
+    /*package*/ static void init() {
+        QueryEngineRegistry.addFactory(factory);
+    }
+
+    @Override
+    public boolean accept(Query query, DatasetGraph dataset, Context context) {
+        if ( ! isFilteredTDB2(dataset, context) )
+            return false;
+        return ! query.hasDatasetDescription();
+    }
+
+    @Override
+    public Plan create(Query query, DatasetGraph dataset, Binding inputBinding, Context context) {
+        DatasetGraphFilteredTDB2 dsg = (DatasetGraphFilteredTDB2)dataset;
+        DatasetGraphTDB dsgTDB = TDBInternal.getDatasetGraphTDB(dsg.getBase());
+        QueryEngineFilteredTDB2 engine = new QueryEngineFilteredTDB2(query, dsg, dsgTDB, inputBinding, filterContext(dsg, context));
+        return engine.getPlan();
+    }
+
+    @Override
+    public boolean accept(Op op, DatasetGraph dataset, Context context) {
+        if ( ! isFilteredTDB2(dataset, context) )
+            return false;
+        return isDefaultGraphOnly(op);
+    }
+
+    @Override
+    public Plan create(Op op, DatasetGraph dataset, Binding inputBinding, Context context) {
+        DatasetGraphFilteredTDB2 dsg = (DatasetGraphFilteredTDB2)dataset;
+        DatasetGraphTDB dsgTDB = TDBInternal.getDatasetGraphTDB(dsg.getBase());
+        return QueryEngineTDB.getFactory().create(op, dsgTDB, inputBinding, filterContext(dsg, context));
+    }
+
+    private static boolean isFilteredTDB2(DatasetGraph dataset, Context context) {
+        if ( ! ( dataset instanceof DatasetGraphFilteredTDB2 ) )
+            return false;
+        if ( context != null && context.isTrue(TDB2.symUnionDefaultGraph) )
+            return false;
+        return true;
+    }
+
+    private static Context filterContext(DatasetGraphFilteredTDB2 dsg, Context context) {
+        Context cxt = ( context == null ) ? new Context() : context.copy();
+        QC2.setFilter(cxt, dsg.tupleFilter());
+        return cxt;
+    }
+
+    /**
+     * TDB2 query engine that evaluates algebra expressions that access named graphs
+     * on the filtered view with the general query engine.
+     */
+    private static class QueryEngineFilteredTDB2 extends QueryEngineTDB {
+        private final DatasetGraphFilteredTDB2 dsgFiltered;
+        // Set when the algebra expression is prepared, before any evaluation.
+        private boolean defaultGraphOnly;
+
+        QueryEngineFilteredTDB2(Query query, DatasetGraphFilteredTDB2 dsgFiltered, DatasetGraphTDB dsgTDB, Binding input, Context context) {
+            super(query, dsgTDB, input, context);
+            this.dsgFiltered = dsgFiltered;
+        }
+
+        @Override
+        protected Op modifyOp(Op op) {
+            defaultGraphOnly = isDefaultGraphOnly(op);
+            if ( defaultGraphOnly )
+                return super.modifyOp(op);
+            // Not the TDB2 quad form.
+            return Algebra.optimize(op, context);
+        }
+
+        @Override
+        public QueryIterator eval(Op op, DatasetGraph dsg, Binding input, Context context) {
+            if ( defaultGraphOnly )
+                return super.eval(op, dsg, input, context);
+            ExecutionContext execCxt = new ExecutionContext(context, dsgFiltered.getDefaultGraph(), dsgFiltered, OpExecutor.stdFactory);
+            return QC.execute(op, input, execCxt);
+        }
+    }
+
+    /** Check whether an algebra expression, including any EXISTS, only accesses the default graph. */
+    private static boolean isDefaultGraphOnly(Op op) {
+        NamedGraphFinder finder = new NamedGraphFinder();
+        Walker.walk(op, finder, new ExprVisitorBase());
+        return ! finder.namedGraphs;
+    }
+
+    private static class NamedGraphFinder extends OpVisitorBase {
+        boolean namedGraphs = false;
+
+        @Override public void visit(OpGraph opGraph)                { namedGraphs = true; }
+        @Override public void visit(OpDatasetNames dsNames)         { namedGraphs = true; }
+        @Override public void visit(OpQuad opQuad)                  { namedGraphs = true; }
+        @Override public void visit(OpQuadBlock quadBlock)          { namedGraphs = true; }
+        @Override public void visit(OpQuadPattern quadPattern) {
+            if ( ! quadPattern.isDefaultGraph() )
+                namedGraphs = true;
+        }
+    }
+}
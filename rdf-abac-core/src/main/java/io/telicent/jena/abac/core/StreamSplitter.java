@@ -22,6 +22,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import io.telicent.jena.abac.ABAC;
+import io.telicent.jena.abac.AE;
 import org.apache.jena.atlas.logging.Log;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
@@ -47,17 +49,22 @@ public class StreamSplitter extends StreamRDFWrapper {
     public StreamSplitter(StreamRDF data, Graph labelsGraph, List<String> dataDftLabels) {
         super(data);
         this.labelsGraph = labelsGraph;
-        this.dataDftLabels = dataDftLabels;
+        this.dataDftLabels = ( dataDftLabels != null && ABAC.canonicalLabels )
+                ? dataDftLabels.stream().map(AE::canonical).toList()
+                : dataDftLabels;
         this.useDftLabels = (dataDftLabels != null);
     }
 
     @Override
     public void prefix(String prefix, String uri) {
         super.prefix(prefix, uri);
-        labelsGraph.getPrefixMapping().setNsPrefix(prefix, uri);
+        if ( labelsGraph != null )
+            labelsGraph.getPrefixMapping().setNsPrefix(prefix, uri);
     }
 
     private void defaultLabels(Triple triple) {
+        if ( labelsGraph == null || dataDftLabels == null )
+            return;
         // Add  [ authz:pattern '...triple...' ;  authz:label "..label.." ] .
         Node x = NodeFactory.createBlankNode();
         for ( String label : dataDftLabels ) {
@@ -68,6 +68,12 @@ public class VocabAuthzDataset {
      */
     public static Property pLabels = ResourceFactory.createProperty(NS+"labels");
 
+    /**
+     * Labels: The name of a graph in the dataset being secured which holds the labels.
+     * The labels and the data are then updated in the same transaction.
+     */
+    public static Property pLabelsGraph = ResourceFactory.createProperty(NS+"labelsGraph");
+
     // -- Dataset attribute settings.
 
     /**
@@ -82,6 +88,13 @@ public class VocabAuthzDataset {
      */
     public static Property pTripleDefaultLabels = ResourceFactory.createProperty(NS+"tripleDefaultLabels");
 
+    /**
+     * Time-to-live of label decisions shared across requests, either as
+     * an integer number of seconds or as an {@code xsd:duration}-style string
+     * such as "PT2S". If absent, there is no cross-request decision cache.
+     */
+    public static Property pDecisionCacheTTL = ResourceFactory.createProperty(NS+"decisionCacheTTL");
+
     /** @deprecated Use {@link #pTripleDefaultLabels} */
     @Deprecated
     public static Property pTripleDefaultAttributes = ResourceFactory.createProperty(NS+"tripleDefaultAttributes");
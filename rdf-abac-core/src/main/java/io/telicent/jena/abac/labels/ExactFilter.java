@@ -0,0 +1,89 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.labels;
+
+/**
+ * Bloom filter for the exact (S P O) entries of a labels index.
+ * <p>
+ * A "no" answer means there is no exact entry for the triple and the exact
+ * sector of the index need not be looked at. A "yes" answer may be wrong.
+ * <p>
+ * The filter is blocked: all the bits for a key are in one 64-bit word, so a
+ * test reads one word of the array. It is sized when created, from the number of
+ * exact entries, and is not changed after the index is built.
+ */
+/*package*/ final class ExactFilter {
+
+    // Bits per entry, before rounding the number of words up to a power of two.
+    private static final int BitsPerEntry = 16;
+    // Bits set per entry, in one word. Each uses 6 bits of the hash.
+    private static final int BitsPerKey = 4;
+
+    private final long[] words;
+    private final int mask;
+
+    /*package*/ static ExactFilter create(int expectedEntries) {
+        long bits = (long)expectedEntries * BitsPerEntry;
+        int n = (int)Math.min(Math.max(1L, (bits + 63) / 64), 1 << 30);
+        int words = ( n == 1 ) ? 1 : Integer.highestOneBit(n - 1) << 1;
+        return new ExactFilter(words);
+    }
+
+    private ExactFilter(int numWords) {
+        this.words = new long[numWords];
+        this.mask = numWords - 1;
+    }
+
+    /*package*/ void add(long hash) {
+        words[index(hash)] |= bits(hash);
+    }
+
+    /*package*/ boolean mightContain(long hash) {
+        long b = bits(hash);
+        return (words[index(hash)] & b) == b;
+    }
+
+    private int index(long hash) {
+        return (int)hash & mask;
+    }
+
+    // Bits from the upper part of the hash, which is not used for the word index.
+    private static long bits(long hash) {
+        long b = 0;
+        for ( int i = 0 ; i < BitsPerKey ; i++ )
+            b |= 1L << ( (hash >>> (40 + 6*i)) & 63 );
+        return b;
+    }
+
+    /** Hash for a triple, given the hash codes of its terms. */
+    /*package*/ static long hash(int s, int p, int o) {
+        long h = s;
+        h = h * 0x9E3779B97F4A7C15L + p;
+        h = h * 0x9E3779B97F4A7C15L + o;
+        return mix(h);
+    }
+
+    // MurmurHash3 finalizer.
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,476 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.labels;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+
+import org.apache.jena.graph.Node;
+
+/**
+ * Off-heap table for the exact (S P O) entries of a labels index.
+ * <p>
+ * The table is open-addressed with linear probing. Each slot holds a 64-bit hash
+ * of the triple, the location of the key and an int label set id. The key is the
+ * triple encoded as the strings of its RDF terms, and is kept off-heap as well.
+ * A lookup compares the key when the hash matches, so triples with the same hash
+ * are not confused. The hash is calculated from the RDF terms, not from
+ * {@code Node.hashCode}.
+ * <p>
+ * Slots and keys are in direct {@link ByteBuffer}s, in segments, so the table is
+ * not on the Java heap and can be larger than one buffer. Label sets are shared
+ * and kept on the heap; there are usually few different label sets.
+ * <p>
+ * When a table is no longer used, {@link #release} passes its segments on to the
+ * next table built. Lookups may still be running on the table: each lookup checks
+ * afterwards that the table was not released meanwhile, and if it was, throws
+ * {@link Released} so the caller can use the current index instead.
+ */
+/*package*/ final class ExactTable {
+
+    // Slot: hash (8 bytes), key location (8 bytes), label set id + 1 (4 bytes). Zero id means empty.
+    private static final int SlotBytes = 20;
+    // Slots per segment: 2^24 slots is 320M bytes.
+    private static final int SegmentBits = 24;
+    private static final int MinCapacity = 16;
+    // Key segments: 16M bytes, or smaller for small tables. A key location is the
+    // segment number (high 32 bits) and the position in the segment.
+    private static final int KeySegmentBytes = 1 << 24;
+    private static final int MinKeySegmentBytes = 1 << 10;
+
+    private ByteBuffer[] segments;
+    private long capacity;
+    private long mask;
+    private long size = 0;
+
+    private final List<ByteBuffer> keySegments = new ArrayList<>();
+    private int keyPosition = 0;
+
+    private final List<List<String>> labelSets = new ArrayList<>();
+    private final Map<List<String>, Integer> labelSetIds = new HashMap<>();
+
+    // Lookups are optimistic reads; release takes the write lock and does not unlock it.
+    private final StampedLock releaseLock = new StampedLock();
+
+    /** A lookup overlapped with the release of the table. */
+    /*package*/ static class Released extends RuntimeException {
+        Released() { super("Exact table released", null, false, false); }
+    }
+
+    /*package*/ ExactTable(long expectedEntries) {
+        allocate(capacityFor(expectedEntries));
+    }
+
+    /*package*/ long size() {
+        return size;
+    }
+
+    /*package*/ boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Labels for a triple, or null if there is no entry.
+     * @throws Released if the table has been released.
+     */
+    /*package*/ List<String> get(Node s, Node p, Node o) {
+        long stamp = releaseLock.tryOptimisticRead();
+        if ( stamp == 0 )
+            throw new Released();
+        List<String> x;
+        try {
+            x = get$(s, p, o);
+        } catch (RuntimeException ex) {
+            // The segments may have been reused while reading them.
+            if ( releaseLock.validate(stamp) )
+                throw ex;
+            throw new Released();
+        }
+        if ( ! releaseLock.validate(stamp) )
+            throw new Released();
+        return x;
+    }
+
+    private List<String> get$(Node s, Node p, Node o) {
+        if ( size == 0 )
+            return null;
+        long h = hash(s, p, o);
+        long slot = h & mask;
+        // Bounded so that a read of reused segments ends.
+        for ( long i = 0 ; i < capacity ; i++ ) {
+            ByteBuffer bb = segment(slot);
+            int offset = offset(slot);
+            int id = bb.getInt(offset+16);
+            if ( id == 0 )
+                return null;
+            if ( bb.getLong(offset) == h && keyEquals(bb.getLong(offset+8), s, p, o) )
+                return labelSets.get(id-1);
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Add labels for a triple. If there is already an entry for the triple, the
+     * labels are added to those of the entry.
+     */
+    /*package*/ void add(Node s, Node p, Node o, List<String> labels) {
+        if ( size+1 > capacity - (capacity >>> 2) )
+            resize(capacity << 1);
+        long h = hash(s, p, o);
+        long slot = find(h, s, p, o);
+        ByteBuffer bb = segment(slot);
+        int offset = offset(slot);
+        int id = bb.getInt(offset+16);
+        List<String> x;
+        long key;
+        if ( id == 0 ) {
+            x = labels;
+            key = writeKey(s, p, o);
+            size++;
+        } else {
+            x = new ArrayList<>(labelSets.get(id-1));
+            x.addAll(labels);
+            key = bb.getLong(offset+8);
+        }
+        write(slot, h, key, labelSetId(x)+1);
+    }
+
+    /**
+     * Pass the segments of this table on to tables built later. Lookups on this
+     * table throw {@link Released} from now on.
+     */
+    /*package*/ void release() {
+        if ( releaseLock.tryWriteLock() == 0 )
+            // Already released.
+            return;
+        ByteBuffer[] x = segments;
+        segments = null;
+        for ( ByteBuffer bb : x )
+            SegmentPool.release(bb);
+        keySegments.forEach(SegmentPool::release);
+    }
+
+    // Shared label sets.
+    private int labelSetId(List<String> labels) {
+        Integer id = labelSetIds.get(labels);
+        if ( id != null )
+            return id;
+        List<String> x = List.copyOf(labels);
+        int newId = labelSets.size();
+        labelSets.add(x);
+        labelSetIds.put(x, newId);
+        return newId;
+    }
+
+    // The slot for the triple, or the empty slot where it would go.
+    private long find(long h, Node s, Node p, Node o) {
+        long slot = h & mask;
+        for ( ;; ) {
+            ByteBuffer bb = segment(slot);
+            int offset = offset(slot);
+            if ( bb.getInt(offset+16) == 0 )
+                return slot;
+            if ( bb.getLong(offset) == h && keyEquals(bb.getLong(offset+8), s, p, o) )
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    // The empty slot for a hash, when the key is known not to be in the table.
+    private long findEmpty(long h) {
+        long slot = h & mask;
+        while ( segment(slot).getInt(offset(slot)+16) != 0 )
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void write(long slot, long h, long key, int id) {
+        ByteBuffer bb = segment(slot);
+        int offset = offset(slot);
+        bb.putLong(offset, h);
+        bb.putLong(offset+8, key);
+        bb.putInt(offset+16, id);
+    }
+
+    private ByteBuffer segment(long slot) {
+        return segments[(int)(slot >>> SegmentBits)];
+    }
+
+    private static int offset(long slot) {
+        return (int)(slot & ((1L << SegmentBits) - 1)) * SlotBytes;
+    }
+
+    private static long capacityFor(long entries) {
+        long n = Math.max(MinCapacity, entries + entries/3 + 1);
+        return Long.highestOneBit(n - 1) << 1;
+    }
+
+    private void allocate(long newCapacity) {
+        long segmentSlots = 1L << SegmentBits;
+        int numSegments = (int)Math.max(1, newCapacity / segmentSlots);
+        int slotsPerSegment = (int)Math.min(newCapacity, segmentSlots);
+        segments = new ByteBuffer[numSegments];
+        for ( int i = 0 ; i < numSegments ; i++ )
+            segments[i] = SegmentPool.allocate(slotsPerSegment * SlotBytes, true);
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+    }
+
+    private void resize(long newCapacity) {
+        ByteBuffer[] oldSegments = segments;
+        long oldCapacity = capacity;
+        allocate(newCapacity);
+        int slotsPerSegment = (int)Math.min(oldCapacity, 1L << SegmentBits);
+        for ( ByteBuffer bb : oldSegments ) {
+            for ( int i = 0 ; i < slotsPerSegment ; i++ ) {
+                int offset = i * SlotBytes;
+                int id = bb.getInt(offset+16);
+                if ( id == 0 )
+                    continue;
+                long h = bb.getLong(offset);
+                write(findEmpty(h), h, bb.getLong(offset+8), id);
+            }
+            // Not yet visible to lookups.
+            SegmentPool.release(bb);
+        }
+    }
+
+    // ---- Keys: each RDF term is its kind and its strings, each string as its
+    // length (-1 for null) and its characters.
+
+    private long writeKey(Node s, Node p, Node o) {
+        int bytes = keyBytes(s) + keyBytes(p) + keyBytes(o);
+        ByteBuffer bb = keySegments.isEmpty() ? null : keySegments.get(keySegments.size()-1);
+        if ( bb == null || keyPosition + bytes > bb.capacity() ) {
+            int segmentBytes = ( bb == null ) ? MinKeySegmentBytes : Math.min(KeySegmentBytes, bb.capacity() << 1);
+            bb = SegmentPool.allocate(Math.max(bytes, segmentBytes), false);
+            keySegments.add(bb);
+            keyPosition = 0;
+        }
+        long key = ((long)(keySegments.size()-1) << 32) | keyPosition;
+        int pos = keyPosition;
+        pos = writeNode(bb, pos, s);
+        pos = writeNode(bb, pos, p);
+        pos = writeNode(bb, pos, o);
+        keyPosition = pos;
+        return key;
+    }
+
+    private boolean keyEquals(long key, Node s, Node p, Node o) {
+        ByteBuffer bb = keySegments.get((int)(key >>> 32));
+        int pos = (int)key;
+        pos = matchNode(bb, pos, s);
+        if ( pos < 0 )
+            return false;
+        pos = matchNode(bb, pos, p);
+        if ( pos < 0 )
+            return false;
+        return matchNode(bb, pos, o) >= 0;
+    }
+
+    private static int keyBytes(Node node) {
+        if ( node.isURI() )
+            return 1 + stringBytes(node.getURI());
+        if ( node.isLiteral() )
+            return 1 + stringBytes(node.getLiteralLexicalForm()) + stringBytes(node.getLiteralDatatypeURI()) + stringBytes(node.getLiteralLanguage());
+        if ( node.isBlank() )
+            return 1 + stringBytes(node.getBlankNodeLabel());
+        return 1 + stringBytes(node.toString());
+    }
+
+    private static int stringBytes(String string) {
+        return ( string == null ) ? 4 : 4 + 2 * string.length();
+    }
+
+    private static int writeNode(ByteBuffer bb, int pos, Node node) {
+        if ( node.isURI() ) {
+            bb.put(pos, (byte)'U');
+            return writeString(bb, pos+1, node.getURI());
+        }
+        if ( node.isLiteral() ) {
+            bb.put(pos, (byte)'L');
+            pos = writeString(bb, pos+1, node.getLiteralLexicalForm());
+            pos = writeString(bb, pos, node.getLiteralDatatypeURI());
+            return writeString(bb, pos, node.getLiteralLanguage());
+        }
+        if ( node.isBlank() ) {
+            bb.put(pos, (byte)'B');
+            return writeString(bb, pos+1, node.getBlankNodeLabel());
+        }
+        bb.put(pos, (byte)'X');
+        return writeString(bb, pos+1, node.toString());
+    }
+
+    private static int writeString(ByteBuffer bb, int pos, String string) {
+        if ( string == null ) {
+            bb.putInt(pos, -1);
+            return pos+4;
+        }
+        int len = string.length();
+        bb.putInt(pos, len);
+        pos += 4;
+        for ( int i = 0 ; i < len ; i++ ) {
+            bb.putChar(pos, string.charAt(i));
+            pos += 2;
+        }
+        return pos;
+    }
+
+    // Compare a node with the key at a position. Returns the position after the node, or -1.
+    private static int matchNode(ByteBuffer bb, int pos, Node node) {
+        if ( node.isURI() ) {
+            if ( bb.get(pos) != 'U' )
+                return -1;
+            return matchString(bb, pos+1, node.getURI());
+        }
+        if ( node.isLiteral() ) {
+            if ( bb.get(pos) != 'L' )
+                return -1;
+            pos = matchString(bb, pos+1, node.getLiteralLexicalForm());
+            if ( pos < 0 )
+                return -1;
+            pos = matchString(bb, pos, node.getLiteralDatatypeURI());
+            if ( pos < 0 )
+                return -1;
+            return matchString(bb, pos, node.getLiteralLanguage());
+        }
+        if ( node.isBlank() ) {
+            if ( bb.get(pos) != 'B' )
+                return -1;
+            return matchString(bb, pos+1, node.getBlankNodeLabel());
+        }
+        if ( bb.get(pos) != 'X' )
+            return -1;
+        return matchString(bb, pos+1, node.toString());
+    }
+
+    private static int matchString(ByteBuffer bb, int pos, String string) {
+        int len = bb.getInt(pos);
+        pos += 4;
+        if ( string == null )
+            return ( len == -1 ) ? pos : -1;
+        if ( len != string.length() )
+            return -1;
+        for ( int i = 0 ; i < len ; i++ ) {
+            if ( bb.getChar(pos) != string.charAt(i) )
+                return -1;
+            pos += 2;
+        }
+        return pos;
+    }
+
+    /**
+     * Segments of released tables, by size. Direct memory is only given back
+     * by the garbage collector, and a released table may still have lookups
+     * reading it, so segments are reused rather than freed.
+     */
+    private static class SegmentPool {
+        // Segments beyond this are left to the garbage collector.
+        private static final long MaxPooledBytes = 1L << 30;
+        private static final Map<Integer, Deque<ByteBuffer>> pool = new HashMap<>();
+        private static long pooledBytes = 0;
+
+        static ByteBuffer allocate(int bytes, boolean zero) {
+            ByteBuffer bb = null;
+            synchronized(pool) {
+                Deque<ByteBuffer> x = pool.get(bytes);
+                if ( x != null && ! x.isEmpty() ) {
+                    bb = x.pop();
+                    pooledBytes -= bytes;
+                }
+            }
+            if ( bb == null )
+                return ByteBuffer.allocateDirect(bytes);
+            if ( zero ) {
+                int i = 0;
+                for ( ; i + 8 <= bytes ; i += 8 )
+                    bb.putLong(i, 0L);
+                for ( ; i < bytes ; i++ )
+                    bb.put(i, (byte)0);
+            }
+            return bb;
+        }
+
+        static void release(ByteBuffer bb) {
+            synchronized(pool) {
+                if ( pooledBytes + bb.capacity() > MaxPooledBytes )
+                    return;
+                pool.computeIfAbsent(bb.capacity(), k->new ArrayDeque<>()).push(bb);
+                pooledBytes += bb.capacity();
+            }
+        }
+    }
+
+    // ---- 64-bit hash of a triple.
+    // Each RDF term contributes its kind and the lengths and characters of its strings.
+
+    private static final long Seed = 0xcbf29ce484222325L;
+    private static final long Mult = 0x100000001b3L;
+
+    private static long hash(Node s, Node p, Node o) {
+        long h = Seed;
+        h = hashNode(h, s);
+        h = hashNode(h, p);
+        h = hashNode(h, o);
+        return mix(h);
+    }
+
+    private static long hashNode(long h, Node node) {
+        if ( node.isURI() ) {
+            h = step(h, 'U');
+            return hashString(h, node.getURI());
+        }
+        if ( node.isLiteral() ) {
+            h = step(h, 'L');
+            h = hashString(h, node.getLiteralLexicalForm());
+            h = hashString(h, node.getLiteralDatatypeURI());
+            return hashString(h, node.getLiteralLanguage());
+        }
+        if ( node.isBlank() ) {
+            h = step(h, 'B');
+            return hashString(h, node.getBlankNodeLabel());
+        }
+        h = step(h, 'X');
+        return hashString(h, node.toString());
+    }
+
+    private static long hashString(long h, String string) {
+        if ( string == null )
+            return step(h, -1);
+        int len = string.length();
+        h = step(h, len);
+        for ( int i = 0 ; i < len ; i++ )
+            h = step(h, string.charAt(i));
+        return h;
+    }
+
+    private static long step(long h, long v) {
+        return (h ^ v) * Mult;
+    }
+
+    // MurmurHash3 finalizer.
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -16,11 +16,20 @@
 
 package io.telicent.jena.abac.labels;
 
+import java.util.function.Predicate;
+
 import io.telicent.jena.abac.core.CxtABAC;
+import io.telicent.jena.abac.core.DatasetGraphFilteredTDB2;
 import io.telicent.jena.abac.core.QuadFilter;
+import org.apache.jena.atlas.lib.tuple.Tuple;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.PrefixMapFactory;
 import org.apache.jena.sparql.core.*;
+import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.store.NodeId;
 
 public class Labels {
 
@@ -28,12 +37,38 @@ public class Labels {
         return new SecurityFilterByLabel(dsgBase, labels, defaultLabel, cxt);
     }
 
+    /**
+     * Label filter for TDB2 storage tuples, as used by {@link DatasetGraphFilteredTDB2}.
+     * The decisions are the same as {@link #securityFilterByLabel}.
+     */
+    public static Predicate<Tuple<NodeId>> securityFilterByLabelTDB2(DatasetGraphTDB dsgTDB, LabelsStore labels, String defaultLabel, CxtABAC cxt) {
+        SecurityFilterByLabel filter = new SecurityFilterByLabel(dsgTDB, LabelsGetter.create(labels), defaultLabel, cxt);
+        return new SecurityFilterByLabelTDB2(dsgTDB, labels, filter);
+    }
+
+    /**
+     * Parse a triple pattern written as for {@code authz:pattern}, with {@code ANY}
+     * for a wildcard. Prefixed names are not supported.
+     */
+    public static Triple parseTriplePattern(String string) {
+        TriplePattern pattern = LabelsIndex.parsePattern(string, PrefixMapFactory.emptyPrefixMap());
+        return Triple.create(pattern.subject(), pattern.predicate(), pattern.object());
+    }
+
     private static final LabelsStore noLabelsStore = new LabelsStoreZero();
 
     public static LabelsStore emptyStore() {
         return noLabelsStore;
     }
 
+    /**
+     * Builder for loading a large number of labels into a new labels store.
+     * See {@link LabelsStoreBuilder}.
+     */
+    public static LabelsStoreBuilder builder() {
+        return new LabelsStoreBuilder();
+    }
+
     /** In-memory label store */
     public static LabelsStore createLabelsStore() {
         DatasetGraph tim = DatasetGraphFactory.createTxnMem();
@@ -51,6 +86,37 @@ public class Labels {
         return LabelsStoreImpl.create(dsg.getDefaultGraph(), dsg);
     }
 
+    /**
+     * Create a label store, using a named graph of a dataset.
+     * The labels store uses the transactions of the dataset, so when this is the
+     * dataset being secured, labels and data are in the same transaction.
+     * The labels graph is not visible in a request dataset (see {@link #labelsGraphName}).
+     */
+    public static LabelsStore createLabelsStore(DatasetGraph dsg, Node graphName) {
+        return LabelsStoreImpl.create(dsg.getGraph(graphName), dsg);
+    }
+
+    /**
+     * Return the graph name if the labels store keeps the labels in a named graph of the dataset,
+     * otherwise return null.
+     */
+    public static Node labelsGraphName(LabelsStore labelsStore, DatasetGraph dsg) {
+        if ( ! ( labelsStore instanceof LabelsStoreImpl labelsStoreImpl ) )
+            return null;
+        if ( ! ( labelsStoreImpl.storageGraph() instanceof GraphView graphView ) )
+            return null;
+        Node graphName = graphView.getGraphName();
+        if ( graphName == null || Quad.isDefaultGraph(graphName) )
+            return null;
+        if ( unwrap(graphView.getDataset()) != unwrap(dsg) )
+            return null;
+        return graphName;
+    }
+
+    private static DatasetGraph unwrap(DatasetGraph dsg) {
+        return ( dsg instanceof DatasetGraphWrapper wrapper ) ? wrapper.getBase() : dsg;
+    }
+
     /**
      * Create a label store from a graph.
      * The labels graph is modified by {@link LabelsStore#add} operations.
@@ -0,0 +1,171 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.labels;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.core.VocabAuthzLabels;
+import io.telicent.jena.abac.labels.LabelsIndex.AuthzTriplePatternException;
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.other.G;
+import org.apache.jena.riot.system.PrefixMap;
+import org.apache.jena.riot.system.PrefixMapFactory;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.system.Txn;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removal of orphan labels: label descriptions for a concrete triple that is not
+ * in any graph of the data.
+ * <p>
+ * Deletes through a {@link DatasetGraphABAC} remove the labels of the deleted
+ * triples. Labels can still be left behind, for example after CLEAR or DROP, or
+ * when the data is changed directly in the base dataset. Label descriptions for
+ * patterns are never removed.
+ * <p>
+ * Compaction is not run unless asked for, by {@link #compact()}, {@link #step} or
+ * {@link #schedule}. It can not tell an orphan label from a label loaded ahead of
+ * its data, and removes both; do not use it where labels may be loaded before the
+ * data they apply to.
+ * <p>
+ * The work is done in time-bounded steps, each in its own write transaction, so
+ * that a compaction pass does not hold up other writers for long. A pass goes
+ * through the {@code authz:pattern} triples of the labels graph in the order the
+ * graph lists them; each step carries on from where the last one stopped. If the
+ * labels change between steps, the order may change and some patterns may be
+ * missed, to be checked by the next pass.
+ */
+public class LabelsCompaction {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LabelsCompaction.class);
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r->{
+        Thread thread = new Thread(r, "LabelsCompaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DatasetGraphABAC dsgz;
+    // Number of patterns of the current pass already checked and kept.
+    private long position = 0;
+    private long removed = 0;
+
+    public LabelsCompaction(DatasetGraphABAC dsgz) {
+        this.dsgz = dsgz;
+    }
+
+    /**
+     * Run a full compaction pass.
+     * Return the number of label descriptions removed.
+     */
+    public long compact() {
+        long before = removed;
+        while ( ! step(null) ) {}
+        return removed - before;
+    }
+
+    /**
+     * Check patterns for a period of time, and remove any orphan labels found.
+     * At least one pattern is checked. A null duration means no time limit.
+     * Return true when the pass is complete; the next call starts a new pass.
+     */
+    public synchronized boolean step(Duration slice) {
+        if ( ! ( dsgz.labelsStore() instanceof LabelsStoreImpl labelsStore ) )
+            return true;
+        long deadline = ( slice == null ) ? Long.MAX_VALUE : System.nanoTime() + slice.toNanos();
+        Graph labels = labelsStore.storageGraph();
+        DatasetGraph base = dsgz.getBase();
+        boolean finished = Txn.calculateWrite(dsgz, ()->{
+            PrefixMap pmap = PrefixMapFactory.create(labels.getPrefixMapping());
+            List<Node> orphans = new ArrayList<>();
+            boolean atEnd;
+            ExtendedIterator<Triple> iter = G.find(labels, Node.ANY, VocabAuthzLabels.pPattern, Node.ANY);
+            try {
+                // Skip the patterns checked by earlier steps.
+                for ( long i = 0 ; i < position && iter.hasNext() ; i++ )
+                    iter.next();
+                while ( iter.hasNext() ) {
+                    Triple t = iter.next();
+                    position++;
+                    Triple triple = exactTriple(t.getObject(), pmap);
+                    if ( triple != null && ! base.contains(Node.ANY, triple.getSubject(), triple.getPredicate(), triple.getObject()) )
+                        orphans.add(t.getSubject());
+                    if ( System.nanoTime() >= deadline )
+                        break;
+                }
+                atEnd = ! iter.hasNext();
+            } finally { iter.close(); }
+            labelsStore.removeEntries(orphans);
+            removed += orphans.size();
+            // The entries removed are no longer counted by the position.
+            position -= orphans.size();
+            return atEnd;
+        });
+        if ( finished )
+            position = 0;
+        return finished;
+    }
+
+    // The triple of an exact pattern, else null.
+    private static Triple exactTriple(Node pattern, PrefixMap pmap) {
+        if ( ! pattern.isLiteral() )
+            return null;
+        TriplePattern m;
+        try {
+            m = LabelsIndex.parsePattern(pattern.getLiteralLexicalForm(), pmap);
+        } catch (AuthzTriplePatternException ex) {
+            // Logged. Not in the index either.
+            return null;
+        }
+        if ( ! m.subject().isConcrete() || ! m.predicate().isConcrete() || ! m.object().isConcrete() )
+            return null;
+        return Triple.create(m.subject(), m.predicate(), m.object());
+    }
+
+    /** The number of label descriptions removed so far. */
+    public long removed() {
+        return removed;
+    }
+
+    /**
+     * Run compaction in the background: one step of at most {@code slice} every {@code period}.
+     * Cancel the returned {@link ScheduledFuture} to stop.
+     */
+    public static ScheduledFuture<?> schedule(DatasetGraphABAC dsgz, Duration period, Duration slice) {
+        LabelsCompaction compaction = new LabelsCompaction(dsgz);
+        long periodMillis = period.toMillis();
+        return scheduler.scheduleWithFixedDelay(()->{
+            try {
+                compaction.step(slice);
+            } catch (Throwable th) {
+                FmtLog.warn(LOG, "Labels compaction: %s", th.getMessage());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+}
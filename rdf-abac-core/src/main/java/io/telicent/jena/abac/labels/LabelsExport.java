@@ -0,0 +1,125 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.labels;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import io.telicent.jena.abac.core.VocabAuthzLabels;
+import io.telicent.jena.abac.labels.LabelsIndex.AuthzTriplePatternException;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.other.G;
+import org.apache.jena.riot.system.PrefixMap;
+import org.apache.jena.riot.system.PrefixMapFactory;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.util.iterator.ExtendedIterator;
+
+/**
+ * Export of label descriptions from a labels graph.
+ * Each label description is a pattern and its labels:
+ * <pre>
+ *    [ authz:pattern '...' ; authz:label "..." ; authz:label "..." ]
+ * </pre>
+ * Without paging, descriptions are sent to the output one at a time, in the order
+ * of the storage. That order may change when the labels graph changes, so a page
+ * (an offset or a limit) is taken from the descriptions ordered by their pattern
+ * string, keeping at most offset+limit descriptions in memory.
+ * The caller provides any transaction.
+ */
+/*package*/ class LabelsExport {
+
+    // A label description, with the key for ordering pages.
+    private record Description(String key, Triple pattern) {}
+
+    private static final Comparator<Description> pageOrder =
+            Comparator.comparing(Description::key).thenComparing(d->d.pattern().getSubject().toString());
+
+    /** @see LabelsStore#export */
+    /*package*/ static void export(Graph graph, StreamRDF output, Triple filter, long offset, long limit) {
+        PrefixMap pmap = PrefixMapFactory.create(graph.getPrefixMapping());
+        output.start();
+        pmap.forEach(output::prefix);
+        if ( offset <= 0 && limit < 0 )
+            exportAll(graph, output, filter, pmap);
+        else
+            exportPage(graph, output, filter, pmap, Math.max(offset, 0), limit);
+        output.finish();
+    }
+
+    private static void exportAll(Graph graph, StreamRDF output, Triple filter, PrefixMap pmap) {
+        ExtendedIterator<Triple> iter = G.find(graph, Node.ANY, VocabAuthzLabels.pPattern, Node.ANY);
+        try {
+            while ( iter.hasNext() ) {
+                Triple triple = iter.next();
+                if ( filter != null && ! matches(triple.getObject(), filter, pmap) )
+                    continue;
+                output(graph, output, triple);
+            }
+        } finally { iter.close(); }
+    }
+
+    private static void exportPage(Graph graph, StreamRDF output, Triple filter, PrefixMap pmap, long offset, long limit) {
+        long keep = ( limit < 0 || offset > Long.MAX_VALUE - limit ) ? Long.MAX_VALUE : offset + limit;
+        // The first "keep" descriptions in page order, with the last at the head of the queue.
+        PriorityQueue<Description> first = new PriorityQueue<>(pageOrder.reversed());
+        ExtendedIterator<Triple> iter = G.find(graph, Node.ANY, VocabAuthzLabels.pPattern, Node.ANY);
+        try {
+            while ( iter.hasNext() ) {
+                Triple triple = iter.next();
+                if ( filter != null && ! matches(triple.getObject(), filter, pmap) )
+                    continue;
+                Node patternNode = triple.getObject();
+                String key = patternNode.isLiteral() ? patternNode.getLiteralLexicalForm() : patternNode.toString();
+                first.add(new Description(key, triple));
+                if ( first.size() > keep )
+                    first.poll();
+            }
+        } finally { iter.close(); }
+        List<Description> descriptions = new ArrayList<>(first);
+        descriptions.sort(pageOrder);
+        for ( long i = offset ; i < descriptions.size() ; i++ )
+            output(graph, output, descriptions.get((int)i).pattern());
+    }
+
+    private static void output(Graph graph, StreamRDF output, Triple patternTriple) {
+        output.triple(patternTriple);
+        G.find(graph, patternTriple.getSubject(), VocabAuthzLabels.pLabel, Node.ANY).forEachRemaining(output::triple);
+    }
+
+    /** Whether the pattern in a label description matches the filter, slot by slot, with ANY in the filter matching anything. */
+    private static boolean matches(Node patternNode, Triple filter, PrefixMap pmap) {
+        if ( ! patternNode.isLiteral() )
+            return false;
+        TriplePattern pattern;
+        try {
+            pattern = LabelsIndex.parsePattern(patternNode.getLiteralLexicalForm(), pmap);
+        } catch (AuthzTriplePatternException ex) {
+            return false;
+        }
+        return matches(pattern.subject(), filter.getSubject()) &&
+               matches(pattern.predicate(), filter.getPredicate()) &&
+               matches(pattern.object(), filter.getObject());
+    }
+
+    private static boolean matches(Node node, Node filterNode) {
+        return Node.ANY.equals(filterNode) || filterNode.equals(node);
+    }
+}
@@ -19,6 +19,7 @@ package io.telicent.jena.abac.labels;
 import java.util.List;
 import java.util.function.Function;
 
+import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Triple;
 
 /**
@@ -28,4 +29,25 @@ import org.apache.jena.graph.Triple;
  * <p>
  * Return null for "no labels configured" (ABAC not active).
  */
-public interface LabelsGetter extends Function<Triple, List<String>> {}
+public interface LabelsGetter extends Function<Triple, List<String>> {
+
+    /** Labels for a triple in a graph. The graph name may be null. */
+    public default List<String> labelsFor(Node graph, Node subject, Node predicate, Node object) {
+        return apply(Triple.create(subject, predicate, object));
+    }
+
+    /** A {@code LabelsGetter} for a {@link LabelsStore}, using {@link LabelsStore#labelsFor}. */
+    public static LabelsGetter create(LabelsStore labelsStore) {
+        return new LabelsGetter() {
+            @Override
+            public List<String> apply(Triple triple) {
+                return labelsStore.labelsForTriples(triple);
+            }
+
+            @Override
+            public List<String> labelsFor(Node graph, Node subject, Node predicate, Node object) {
+                return labelsStore.labelsFor(graph, subject, predicate, object);
+            }
+        };
+    }
+}
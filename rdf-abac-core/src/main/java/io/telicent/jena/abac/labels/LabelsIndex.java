@@ -17,9 +17,9 @@
 package io.telicent.jena.abac.labels;
 
 import java.util.*;
-import java.util.Map.Entry;
-import java.util.stream.Collectors;
+import java.util.function.BiConsumer;
 
+import io.telicent.jena.abac.ABAC;
 import io.telicent.jena.abac.core.AuthzException;
 import io.telicent.jena.abac.core.VocabAuthzLabels;
 import org.apache.jena.atlas.lib.Cache;
@@ -27,10 +27,12 @@ import org.apache.jena.atlas.lib.CacheFactory;
 import org.apache.jena.atlas.logging.Log;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.rdf.model.impl.Util;
 import org.apache.jena.riot.RiotException;
 import org.apache.jena.riot.other.G;
+import org.apache.jena.riot.out.NodeFmtLib;
 import org.apache.jena.riot.system.PrefixMap;
 import org.apache.jena.riot.system.PrefixMapFactory;
 import org.apache.jena.riot.tokens.Token;
@@ -75,6 +77,16 @@ public class LabelsIndex {
     private Map<Node, TriplePattern> P  = new HashMap<>();
     private Map<Node, TriplePattern> ANY = new HashMap<>();
 
+    // Labels for each pattern, by the subject of the pattern in the labels graph.
+    private Map<Node, List<String>> patternLabels = new HashMap<>();
+
+    // Bloom filter for the exact sector, built with the index. Null if not built.
+    private ExactFilter exactFilter = null;
+
+    // Off-heap exact sector, used instead of "exact" (see ABAC.labelsExactOffHeap).
+    // Null when the exact sector is on the heap.
+    private ExactTable exactTable = null;
+
     public LabelsIndex(Graph labels) {
         this.labels = labels;
     }
@@ -93,50 +105,205 @@ public class LabelsIndex {
      * @return List of labels.
      */
     public List<String> match(Triple triple) {
+        return match(triple.getSubject(), triple.getPredicate(), triple.getObject());
+    }
+
+    /**
+     * Match a triple given as subject, predicate and object.
+     * This does not allocate unless more than one pattern in a sector matches.
+     * The list returned must not be modified.
+     * @see #match(Triple)
+     */
+    public List<String> match(Node subject, Node predicate, Node object) {
         List<String> acc;
 
-        Map<Node, TriplePattern> subMap = exact.computeIfAbsent(triple.getSubject(), sx->new HashMap<>());
-        if ( subMap != null ) {
-            acc = labelsForTriple(triple,subMap);
-            if ( ! acc.isEmpty() )
-                return acc;
+        if ( mayBeExact(subject, predicate, object) ) {
+            if ( exactTable != null ) {
+                acc = exactTable.get(subject, predicate, object);
+                if ( acc != null )
+                    return acc;
+            }
+            Map<Node, TriplePattern> subMap = exact.get(subject);
+            if ( subMap != null ) {
+                acc = labelsFor(subject, predicate, object, subMap);
+                if ( ! acc.isEmpty() )
+                    return acc;
+            }
         }
         // Patterns.
-        acc = labelsForTriple(triple, SP);
+        acc = labelsFor(subject, predicate, object, SP);
         if ( ! acc.isEmpty() )
             return acc;
-        acc = labelsForTriple(triple, S);
+        acc = labelsFor(subject, predicate, object, S);
         if ( ! acc.isEmpty() )
             return acc;
-        acc = labelsForTriple(triple, P);
+        acc = labelsFor(subject, predicate, object, P);
         if ( ! acc.isEmpty() )
             return acc;
-        acc = labelsForTriple(triple, ANY);
+        acc = labelsFor(subject, predicate, object, ANY);
         if ( ! acc.isEmpty() )
             return acc;
         return List.of();
     }
 
-    private List<String> labelsForTriple(Triple triple, Map<Node, TriplePattern> sector) {
+    // Test whether there may be an exact entry for a triple.
+    private boolean mayBeExact(Node subject, Node predicate, Node object) {
+        if ( exact.isEmpty() && ( exactTable == null || exactTable.isEmpty() ) )
+            return false;
+        if ( exactFilter == null )
+            return true;
+        return exactFilter.mightContain(exactHash(subject, predicate, object));
+    }
+
+    private static long exactHash(Node subject, Node predicate, Node object) {
+        return ExactFilter.hash(subject.hashCode(), predicate.hashCode(), object.hashCode());
+    }
+
+    /**
+     * Set up the exact sector before building the index. Each entry is at least
+     * two triples of the labels graph, which gives an upper bound on the number
+     * of exact entries.
+     */
+    private void initExact(long labelsGraphSize, boolean offHeap) {
+        long entries = labelsGraphSize / 2;
+        exactFilter = ExactFilter.create((int)Math.min(entries, Integer.MAX_VALUE / 16));
+        if ( offHeap )
+            exactTable = new ExactTable(entries);
+    }
+
+    private List<String> labelsFor(Node subject, Node predicate, Node object, Map<Node, TriplePattern> sector) {
         if ( sector.isEmpty() )
             return List.of();
-        List<String> acc = new ArrayList<>();
-        List<Node> xs = patternMatches(triple, sector);
-        if ( ! xs.isEmpty() ) {
-            for ( Node x  : xs ) {
-                List<Node> attrLabels = G.listSP(labels, x, VocabAuthzLabels.pLabel);
-                attrLabels.forEach(a->acc.add(a.getLiteralLexicalForm()));
+        List<String> result = List.of();
+        boolean copied = false;
+        for ( Map.Entry<Node, TriplePattern> e : sector.entrySet() ) {
+            TriplePattern m = e.getValue();
+            if ( ! Match.match(subject, m.subject()) || ! Match.match(predicate, m.predicate()) || ! Match.match(object, m.object()) )
+                continue;
+            List<String> x = patternLabels(e.getKey());
+            if ( result.isEmpty() ) {
+                result = x;
+                continue;
+            }
+            // More than one pattern matched.
+            if ( ! copied ) {
+                result = new ArrayList<>(result);
+                copied = true;
             }
+            result.addAll(x);
         }
-        return acc;
+        return result;
     }
 
-    private static List<Node> patternMatches(Triple triple, Map<Node, TriplePattern> sector) {
-        return sector.entrySet().stream().filter(e->{
-            Node k = e.getKey();
-            TriplePattern m = e.getValue();
-            return Match.match(triple, m.subject(), m.predicate(), m.object());
-        }).map(Entry::getKey).collect(Collectors.toList());
+    // Labels for the pattern with the given labels graph subject.
+    private List<String> patternLabels(Node x) {
+        List<String> acc = patternLabels.get(x);
+        return ( acc == null ) ? List.of() : acc;
+    }
+
+    /**
+     * Apply an action to each pattern in the index, with the labels for that pattern.
+     */
+    /*package*/ void forEachPattern(BiConsumer<TriplePattern, List<String>> action) {
+        if ( exactTable != null )
+            scanExact((x, m)->action.accept(m, labelsInGraph(x)));
+        exact.values().forEach(subMap->forEachPattern(subMap, action));
+        forEachPattern(SP, action);
+        forEachPattern(S, action);
+        forEachPattern(P, action);
+        forEachPattern(ANY, action);
+    }
+
+    private void forEachPattern(Map<Node, TriplePattern> sector, BiConsumer<TriplePattern, List<String>> action) {
+        sector.forEach((x, m)->action.accept(m, patternLabels(x)));
+    }
+
+    // With the off-heap exact sector, the patterns and their subjects in the labels
+    // graph are not in the index. Find them in the labels graph.
+
+    private void scanExact(BiConsumer<Node, TriplePattern> action) {
+        G.execTxn(labels, ()->{
+            PrefixMap pmap = PrefixMapFactory.create(labels.getPrefixMapping());
+            ExtendedIterator<Triple> patterns = G.find(labels, null, VocabAuthzLabels.pPattern, null);
+            try {
+                while(patterns.hasNext()) {
+                    Triple t = patterns.next();
+                    TriplePattern m = parsePattern(t.getObject(), pmap);
+                    if ( m != null && isExact(m) )
+                        action.accept(t.getSubject(), m);
+                }
+            } finally { patterns.close(); }
+        });
+    }
+
+    // Entries for an exact pattern. Try the forms of pattern string written by
+    // the labels store and by data uploads before looking at all patterns.
+    private List<Node> scanExact(TriplePattern m) {
+        if ( exactTable.get(m.subject(), m.predicate(), m.object()) == null )
+            return List.of();
+        Triple triple = Triple.create(m.subject(), m.predicate(), m.object());
+        String str1 = LabelsStoreImpl.tripleToString(triple);
+        String str2 = NodeFmtLib.strNT(m.subject())+" "+NodeFmtLib.strNT(m.predicate())+" "+NodeFmtLib.strNT(m.object());
+        List<Node> entries = new ArrayList<>();
+        G.execTxn(labels, ()->{
+            for ( String str : List.of(str1, str2) ) {
+                G.find(labels, null, VocabAuthzLabels.pPattern, NodeFactory.createLiteral(str))
+                 .forEachRemaining(t->{
+                     if ( ! entries.contains(t.getSubject()) )
+                         entries.add(t.getSubject());
+                 });
+            }
+        });
+        if ( ! entries.isEmpty() )
+            return entries;
+        scanExact((x, pattern)->{
+            if ( m.equals(pattern) )
+                entries.add(x);
+        });
+        return entries;
+    }
+
+    private List<String> labelsInGraph(Node x) {
+        return G.calcTxn(labels, ()->
+            G.listSP(labels, x, VocabAuthzLabels.pLabel).stream()
+                .filter(Node::isLiteral)
+                .map(Node::getLiteralLexicalForm)
+                .toList());
+    }
+
+    private static boolean isExact(TriplePattern m) {
+        return m.subject().isConcrete() && m.predicate().isConcrete() && m.object().isConcrete();
+    }
+
+    /**
+     * The subjects in the labels graph of the entries for a pattern.
+     * These are the entries with the same pattern, not all the patterns that match it.
+     */
+    /*package*/ List<Node> entriesFor(TriplePattern m) {
+        Node s = m.subject();
+        Node p = m.predicate();
+        Node o = m.object();
+        Map<Node, TriplePattern> sector;
+        if ( exactTable != null && isExact(m) )
+            return scanExact(m);
+        if ( s.isConcrete() && p.isConcrete() && o.isConcrete() )
+            sector = exact.get(s);
+        else if ( s.isConcrete() && p.isConcrete() )
+            sector = SP;
+        else if ( s.isConcrete() )
+            sector = S;
+        else if ( p.isConcrete() )
+            sector = P;
+        else
+            sector = ANY;
+        if ( sector == null )
+            return List.of();
+        List<Node> entries = new ArrayList<>();
+        sector.forEach((x, pattern)->{
+            if ( m.equals(pattern) )
+                entries.add(x);
+        });
+        return entries;
     }
 
     // ---- Index builder
@@ -151,6 +318,7 @@ public class LabelsIndex {
 
     private static LabelsIndex buildIndex$(Graph labels) {
         LabelsIndex labelsIndex = new LabelsIndex(labels);
+        labelsIndex.initExact(labels.size(), ABAC.labelsExactOffHeap);
         PrefixMap pmap = PrefixMapFactory.create(labels.getPrefixMapping()) ;
         // [ authz:pattern "" ; authz:label "" ; authz:label ""]
         //    Possibly several authz:label "" per pattern.
@@ -202,6 +370,28 @@ public class LabelsIndex {
 
     /** Add an entry into the index. */
     /*package*/ void insertIntoIndex(Node x, TriplePattern m, List<Node> attrLabels) {
+        List<String> strLabels = new ArrayList<>(attrLabels.size());
+        attrLabels.forEach(a->{
+            if ( a.isLiteral() )
+                strLabels.add(a.getLiteralLexicalForm());
+        });
+        if ( exactTable != null && isExact(m) ) {
+            // Only the labels are kept, off-heap.
+            boolean indexed = false;
+            for(Node label : attrLabels) {
+                if ( ! Util.isSimpleString(label) ) {
+                    Log.warn(LabelsIndex.class, "Not a string literal: "+label );
+                    continue;
+                }
+                indexed = true;
+            }
+            if ( indexed ) {
+                exactTable.add(m.subject(), m.predicate(), m.object(), strLabels);
+                exactFilter.add(exactHash(m.subject(), m.predicate(), m.object()));
+            }
+            return;
+        }
+        patternLabels.put(x, List.copyOf(strLabels));
         for(Node label : attrLabels) {
             if ( ! Util.isSimpleString(label) ) {
                 Log.warn(LabelsIndex.class, "Not a string literal: "+label );
@@ -213,6 +403,8 @@ public class LabelsIndex {
             if ( s.isConcrete() && p.isConcrete() && o.isConcrete() ) {
                 Map<Node, TriplePattern> subMap = exact.computeIfAbsent(s, sx->new HashMap<>());
                 subMap.put(x, m);
+                if ( exactFilter != null )
+                    exactFilter.add(exactHash(s, p, o));
             } else if ( s.isConcrete() && p.isConcrete() && ! o.isConcrete() ) {
                 SP.put(x, m);
             } else if ( s.isConcrete() && ! p.isConcrete() && ! o.isConcrete() ) {
@@ -279,8 +471,20 @@ public class LabelsIndex {
         return n;
     }
 
+    /**
+     * The index is no longer used: give up the memory of the off-heap exact sector.
+     * Lookups running on the index may throw {@link ExactTable.Released}.
+     */
+    /*package*/ void release() {
+        if ( exactTable != null )
+            exactTable.release();
+    }
+
     private void clear() {
         exact.clear();
+        exactFilter = null;
+        exactTable = null;
+        patternLabels.clear();
         SP.clear();
         S.clear();
         P.clear();
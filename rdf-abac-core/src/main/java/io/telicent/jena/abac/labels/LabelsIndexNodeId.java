@@ -0,0 +1,194 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.labels;
+
+import java.util.*;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+
+/**
+ * A {@link LabelsIndex} translated to TDB2 {@link NodeId NodeIds} for one
+ * {@link DatasetGraphTDB}, so that labels can be found for a tuple from the
+ * storage indexes without turning the NodeIds into Nodes.
+ * <p>
+ * The match order is the same as {@link LabelsIndex#match}.
+ * <p>
+ * A pattern that uses a node that is not in the node table can not match
+ * anything yet. It is kept and tried again by {@link #refresh}.
+ * <p>
+ * TDB2 keeps some literals, such as small integers, inline in the NodeId as a value,
+ * so {@code "01"^^xsd:integer} and {@code "1"^^xsd:integer} have the same NodeId
+ * while the label patterns are different nodes. Exact patterns with an inline object
+ * are not put in the NodeId index; {@link #match} returns null for such an object
+ * and the labels are found from the Nodes.
+ * Once built, an index is not modified.
+ */
+/*package*/ class LabelsIndexNodeId {
+
+    private record KeySPO(NodeId s, NodeId p, NodeId o) {}
+    private record KeySP(NodeId s, NodeId p) {}
+
+    private final LabelsIndex source;
+    private final DatasetGraphTDB dsgTDB;
+
+    private final Map<KeySPO, List<String>> exact = new HashMap<>();
+    private final Map<KeySP, List<String>> SP = new HashMap<>();
+    private final Map<NodeId, List<String>> S = new HashMap<>();
+    private final Map<NodeId, List<String>> P = new HashMap<>();
+    private final List<String> ANY = new ArrayList<>();
+    // Objects of exact patterns that TDB2 inlines in the NodeId.
+    private final Set<NodeId> inlineObjects = new HashSet<>();
+    // Bloom filter for the exact entries. Set when the index is built.
+    private ExactFilter exactFilter = null;
+
+    // Patterns with a node that is not (yet) in the node table.
+    private final Set<TriplePattern> unresolved = new HashSet<>();
+
+    /**
+     * Build a NodeId index.
+     * This must be called inside a transaction on the TDB2 dataset.
+     */
+    /*package*/ static LabelsIndexNodeId build(LabelsIndex source, DatasetGraphTDB dsgTDB) {
+        LabelsIndexNodeId index = new LabelsIndexNodeId(source, dsgTDB);
+        NodeTable nodeTable = nodeTable(dsgTDB);
+        source.forEachPattern((m, labels)->index.insert(nodeTable, m, labels));
+        index.buildExactFilter();
+        return index;
+    }
+
+    private LabelsIndexNodeId(LabelsIndex source, DatasetGraphTDB dsgTDB) {
+        this.source = source;
+        this.dsgTDB = dsgTDB;
+    }
+
+    /** Is this index for the given {@link LabelsIndex} and TDB2 storage? */
+    /*package*/ boolean isFor(LabelsIndex labelsIndex, DatasetGraphTDB dsg) {
+        return source == labelsIndex && dsgTDB == dsg;
+    }
+
+    /**
+     * Try again to resolve patterns that use nodes not in the node table.
+     * Returns this index if nothing changed, otherwise a new index.
+     * This must be called inside a transaction on the TDB2 dataset.
+     */
+    /*package*/ LabelsIndexNodeId refresh() {
+        if ( unresolved.isEmpty() )
+            return this;
+        NodeTable nodeTable = nodeTable(dsgTDB);
+        boolean changed = false;
+        for ( TriplePattern m : unresolved ) {
+            if ( resolve(nodeTable, m) != null ) {
+                changed = true;
+                break;
+            }
+        }
+        if ( ! changed )
+            return this;
+        return build(source, dsgTDB);
+    }
+
+    /**
+     * Labels for a triple, given as NodeIds. Returns an empty list if no pattern matches.
+     * Returns null if the labels must be found from the Nodes of the triple.
+     */
+    /*package*/ List<String> match(NodeId s, NodeId p, NodeId o) {
+        if ( ! inlineObjects.isEmpty() && inlineObjects.contains(o) )
+            return null;
+        List<String> acc;
+        if ( ! exact.isEmpty() && exactFilter.mightContain(exactHash(s, p, o)) ) {
+            acc = exact.get(new KeySPO(s, p, o));
+            if ( acc != null )
+                return acc;
+        }
+        if ( ! SP.isEmpty() ) {
+            acc = SP.get(new KeySP(s, p));
+            if ( acc != null )
+                return acc;
+        }
+        acc = S.get(s);
+        if ( acc != null )
+            return acc;
+        acc = P.get(p);
+        if ( acc != null )
+            return acc;
+        return ANY;
+    }
+
+    private static long exactHash(NodeId s, NodeId p, NodeId o) {
+        return ExactFilter.hash(s.hashCode(), p.hashCode(), o.hashCode());
+    }
+
+    private void buildExactFilter() {
+        ExactFilter filter = ExactFilter.create(exact.size());
+        exact.keySet().forEach(k->filter.add(exactHash(k.s(), k.p(), k.o())));
+        exactFilter = filter;
+    }
+
+    private void insert(NodeTable nodeTable, TriplePattern m, List<String> labels) {
+        if ( labels.isEmpty() )
+            return;
+        NodeId[] ids = resolve(nodeTable, m);
+        if ( ids == null ) {
+            unresolved.add(m);
+            return;
+        }
+        NodeId s = ids[0];
+        NodeId p = ids[1];
+        NodeId o = ids[2];
+        List<String> acc;
+        if ( s != null && p != null && o != null && NodeId.isInline(o) ) {
+            inlineObjects.add(o);
+            return;
+        }
+        if ( s != null && p != null && o != null )
+            acc = exact.computeIfAbsent(new KeySPO(s, p, o), x->new ArrayList<>());
+        else if ( s != null && p != null )
+            acc = SP.computeIfAbsent(new KeySP(s, p), x->new ArrayList<>());
+        else if ( s != null )
+            acc = S.computeIfAbsent(s, x->new ArrayList<>());
+        else if ( p != null )
+            acc = P.computeIfAbsent(p, x->new ArrayList<>());
+        else
+            acc = ANY;
+        acc.addAll(labels);
+    }
+
+    /**
+     * NodeIds for the concrete slots of a pattern, null for wildcard slots.
+     * Returns null if a concrete node is not in the node table.
+     */
+    private static NodeId[] resolve(NodeTable nodeTable, TriplePattern m) {
+        NodeId[] ids = new NodeId[3];
+        Node[] nodes = { m.subject(), m.predicate(), m.object() };
+        for ( int i = 0 ; i < 3 ; i++ ) {
+            if ( ! nodes[i].isConcrete() )
+                continue;
+            NodeId nid = nodeTable.getNodeIdForNode(nodes[i]);
+            if ( NodeId.isDoesNotExist(nid) )
+                return null;
+            ids[i] = nid;
+        }
+        return ids;
+    }
+
+    /*package*/ static NodeTable nodeTable(DatasetGraphTDB dsgTDB) {
+        return dsgTDB.getTripleTable().getNodeTupleTable().getNodeTable();
+    }
+}
@@ -16,18 +16,58 @@
 
 package io.telicent.jena.abac.labels;
 
+import java.util.Collection;
 import java.util.List;
 
+import io.telicent.jena.abac.core.DatasetGraphABAC;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.system.StreamRDF;
 import org.apache.jena.sparql.core.Transactional;
 
 public interface LabelsStore { //implements Transactional {
     public List<String> labelsForTriples(Triple triple);
 
+    /**
+     * Labels for a triple in a graph, without needing a {@link Triple} object.
+     * The graph name may be null; it is available for stores that label by graph.
+     * The default implementation ignores the graph and calls {@link #labelsForTriples}.
+     */
+    public default List<String> labelsFor(Node graph, Node subject, Node predicate, Node object) {
+        return labelsForTriples(Triple.create(subject, predicate, object));
+    }
+
     public Transactional getTransactional();
 
+    /**
+     * Called when a transaction on {@link #getTransactional()} that may write
+     * starts outside the store, by a caller that will call {@link #afterCommit} or
+     * {@link #afterAbort} when it finishes. {@link DatasetGraphABAC} calls this for
+     * its transactions.
+     * <p>
+     * Changes to the labels in a transaction without this call are used by other
+     * threads once the transaction has finished: until the store sees that no write
+     * transaction is active, lookups on other threads wait for it.
+     */
+    public default void beforeWrite() {}
+
+    /**
+     * Called when a write transaction on {@link #getTransactional()}, started outside
+     * the store, has committed. Changes to the labels made in the transaction are
+     * used for {@link #labelsForTriples} by other threads after this call.
+     * Changes made by the store in its own transactions do not need this call.
+     * @see #beforeWrite
+     */
+    public default void afterCommit() {}
+
+    /**
+     * Called when a write transaction on {@link #getTransactional()}, started outside
+     * the store, has aborted or ended without committing.
+     * @see #afterCommit
+     */
+    public default void afterAbort() {}
+
     // Triples
     // Slots
     // Pattern
@@ -56,6 +96,36 @@ public interface LabelsStore { //implements Transactional {
     /** Add a graph of label descriotions to the store. */
     public void add(Graph labelsData);
 
+    /**
+     * Remove the label descriptions for a concrete or pattern triple.
+     * This removes the descriptions with the same pattern, not all the
+     * descriptions that apply to the triple.
+     */
+    public default void remove(Triple triple) {
+        remove(List.of(triple));
+    }
+
+    /** Remove the label descriptions for each of a number of concrete or pattern triples. */
+    public void remove(Collection<Triple> triples);
+
+    /**
+     * Write the label descriptions to a {@link StreamRDF}, directly from the storage.
+     * This must be called inside a transaction on {@link #getTransactional()}.
+     * <p>
+     * Without an offset or a limit, descriptions are written in storage order.
+     * A page is taken from the descriptions ordered by pattern string, so pages
+     * from separate calls fit together while the labels do not change.
+     *
+     * @param output  Destination
+     * @param filter  Only descriptions with a pattern that has these subject, predicate
+     *                and object, where {@code Node.ANY} matches any. Null for all descriptions.
+     * @param offset  Number of label descriptions to skip.
+     * @param limit   Maximum number of label descriptions, or -1 for no limit.
+     */
+    public default void export(StreamRDF output, Triple filter, long offset, long limit) {
+        LabelsExport.export(getGraph(), output, filter, offset, limit);
+    }
+
     /** Get labels as graph.
      *  This is more of a development and deployment helper; the graph may be very large.
      *  Returns a copy of the labels graph so it is not connected to the LabelsStore.
@@ -0,0 +1,155 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.labels;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+import io.telicent.jena.abac.ABAC;
+import io.telicent.jena.abac.AE;
+import io.telicent.jena.abac.core.VocabAuthzLabels;
+import io.telicent.jena.abac.labels.LabelsIndex.AuthzTriplePatternException;
+import org.apache.jena.atlas.lib.Pair;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.out.NodeFmtLib;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.system.Txn;
+
+/**
+ * Builder for a {@link LabelsStore} from a large number of triple patterns and labels.
+ * <p>
+ * Unlike calling {@link LabelsStore#add(Triple, List)} repeatedly, the builder
+ * collects the patterns first. Labels for the same pattern are merged into one
+ * entry and identical label sets are shared. The labels graph is then written
+ * in batches, in pattern order, one write transaction per batch, and the index
+ * is built once when the store is created.
+ *
+ * <pre>
+ *    LabelsStore store = Labels.builder()
+ *        .storage(dsg)
+ *        .add(pattern1, List.of("label1"))
+ *        .addAll(stream)
+ *        .build();
+ * </pre>
+ */
+public class LabelsStoreBuilder {
+
+    private static final int DefaultBatchSize = 10_000;
+
+    private DatasetGraph dsg       = null;
+    private Node         graphName = null;
+    private int          batchSize = DefaultBatchSize;
+
+    // Pattern to labels. Label sets are shared via "labelSets".
+    private final Map<Triple, List<String>> patterns = new HashMap<>();
+    private final Map<List<String>, List<String>> labelSets = new HashMap<>();
+    // Label literals, created once per label.
+    private final Map<String, Node> labelNodes = new HashMap<>();
+
+    LabelsStoreBuilder() {}
+
+    /** Store the labels in the default graph of the dataset. The default is a new in-memory dataset. */
+    public LabelsStoreBuilder storage(DatasetGraph dsg) {
+        return storage(dsg, null);
+    }
+
+    /** Store the labels in a named graph of the dataset. */
+    public LabelsStoreBuilder storage(DatasetGraph dsg, Node graphName) {
+        this.dsg = Objects.requireNonNull(dsg);
+        this.graphName = graphName;
+        return this;
+    }
+
+    /** Number of patterns written to the labels graph in each transaction. */
+    public LabelsStoreBuilder batchSize(int batchSize) {
+        if ( batchSize <= 0 )
+            throw new IllegalArgumentException("Batch size must be positive: "+batchSize);
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /** A concrete or pattern triple */
+    public LabelsStoreBuilder add(Triple triple, String label) {
+        return add(triple, List.of(label));
+    }
+
+    /** A concrete or pattern triple */
+    public LabelsStoreBuilder add(Triple triple, List<String> labels) {
+        if ( !LabelsIndex.isPatternTriple(triple) )
+            throw new AuthzTriplePatternException("Bad triple pattern: "+NodeFmtLib.str(triple));
+        List<String> labelSet = labelSet(labels);
+        List<String> current = patterns.get(triple);
+        if ( current != null ) {
+            // Same pattern again - merge the labels.
+            List<String> merged = new ArrayList<>(current);
+            labelSet.stream().filter(x->!merged.contains(x)).forEach(merged::add);
+            labelSet = labelSet(merged);
+        }
+        patterns.put(triple, labelSet);
+        return this;
+    }
+
+    /** Add a stream of patterns and their labels. */
+    public LabelsStoreBuilder addAll(Stream<Pair<Triple, List<String>>> stream) {
+        stream.forEach(pair->add(pair.getLeft(), pair.getRight()));
+        return this;
+    }
+
+    /** Shared, canonical, duplicate-free form of a list of labels. */
+    private List<String> labelSet(List<String> labels) {
+        List<String> x = labels.stream()
+                .map(label->ABAC.canonicalLabels ? AE.canonical(label) : label)
+                .distinct()
+                .toList();
+        return labelSets.computeIfAbsent(x, k->k);
+    }
+
+    /** Write the labels graph and create the store. The builder is cleared. */
+    public LabelsStore build() {
+        DatasetGraph storage = ( dsg != null ) ? dsg : DatasetGraphFactory.createTxnMem();
+        Graph graph = ( graphName == null ) ? storage.getDefaultGraph() : storage.getGraph(graphName);
+
+        // Pattern order for locality in the storage.
+        List<Map.Entry<String, Triple>> entries = new ArrayList<>(patterns.size());
+        patterns.keySet().forEach(t->entries.add(Map.entry(LabelsStoreImpl.tripleToString(t), t)));
+        entries.sort(Map.Entry.comparingByKey());
+
+        for ( int start = 0 ; start < entries.size() ; start += batchSize ) {
+            List<Map.Entry<String, Triple>> batch = entries.subList(start, Math.min(start+batchSize, entries.size()));
+            Txn.executeWrite(storage, ()->writeBatch(graph, batch));
+        }
+        patterns.clear();
+        labelSets.clear();
+        labelNodes.clear();
+        return LabelsStoreImpl.create(graph, storage);
+    }
+
+    private void writeBatch(Graph graph, List<Map.Entry<String, Triple>> batch) {
+        for ( Map.Entry<String, Triple> e : batch ) {
+            Node entry = NodeFactory.createBlankNode();
+            graph.add(entry, VocabAuthzLabels.pPattern, NodeFactory.createLiteral(e.getKey()));
+            for ( String label : patterns.get(e.getValue()) ) {
+                Node obj = labelNodes.computeIfAbsent(label, NodeFactory::createLiteral);
+                graph.add(entry, VocabAuthzLabels.pLabel, obj);
+            }
+        }
+    }
+}
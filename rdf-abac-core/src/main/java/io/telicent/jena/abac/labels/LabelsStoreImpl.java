@@ -18,10 +18,15 @@ package io.telicent.jena.abac.labels;
 
 import static org.apache.jena.sparql.util.NodeUtils.nullToAny;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+import io.telicent.jena.abac.ABAC;
 import io.telicent.jena.abac.AE;
 import io.telicent.jena.abac.SysABAC;
 import io.telicent.jena.abac.attributes.AttributeException;
@@ -30,6 +35,7 @@ import io.telicent.jena.abac.labels.LabelsIndex.AuthzTriplePatternException;
 import org.apache.jena.atlas.lib.NotImplemented;
 import org.apache.jena.atlas.logging.FmtLog;
 import org.apache.jena.graph.*;
+import org.apache.jena.query.ReadWrite;
 import org.apache.jena.rdf.model.impl.Util;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFWriter;
@@ -37,10 +43,13 @@ import org.apache.jena.riot.other.G;
 import org.apache.jena.riot.out.NodeFmtLib;
 import org.apache.jena.riot.system.PrefixMap;
 import org.apache.jena.riot.system.PrefixMapFactory;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.sparql.JenaTransactionException;
 import org.apache.jena.sparql.core.Transactional;
 import org.apache.jena.sparql.graph.GraphFactory;
 import org.apache.jena.sparql.util.FmtUtils;
 import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.store.DatasetGraphTDB;
 import org.apache.jena.util.iterator.ExtendedIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +65,50 @@ public class LabelsStoreImpl implements LabelsStore {
     private PrefixMap pmap;
 
     private final AtomicReference<LabelsIndex> labelsIndex = new AtomicReference<>(null);
+    // Each write transaction that changes the labels takes the next number from
+    // "writes". "changes" is the highest number of a transaction known to have
+    // finished; as there is one writer at a time, so have all before it.
+    // "indexedChanges" is the number the published index was built at.
+    private final AtomicLong writes = new AtomicLong(0);
+    private final AtomicLong changes = new AtomicLong(0);
+    private volatile long indexedChanges = -1;
+    // Highest number of a transaction that changed the labels without the store
+    // being told when it finishes (see LabelsStore#beforeWrite).
+    private volatile long unmanagedWrites = 0;
+    // System.nanoTime() of the first change not in the published index.
+    private volatile long staleSince = 0;
+    // Held while publishing an index or counting a change.
+    private final Object publishLock = new Object();
+    // Held while building an index outside a transaction, so concurrent callers wait for one build.
+    private final Object buildLock = new Object();
+    // The write transaction of this thread.
+    private final ThreadLocal<Pending> pending = new ThreadLocal<>();
+    // Background rebuild queued or running, else null.
+    private final AtomicReference<CompletableFuture<Void>> rebuildInProgress = new AtomicReference<>(null);
+    // Each store has at most one rebuild queued or running. A rebuild may wait for a writer to finish.
+    private static final ExecutorService rebuildExecutor = Executors.newCachedThreadPool(r->{
+        Thread thread = new Thread(r, "LabelsIndexRebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // How long a reader in a transaction waits for a background rebuild before building its own index.
+    private static final long rebuildWaitMillis = 1000;
+
+    /**
+     * The write transaction of a thread. {@code managed} if the store is told when
+     * it finishes. {@code ticket} is its number, or 0 before it changes the labels.
+     * The index, if not null, is built from the labels graph as seen by the
+     * transaction, after its last change.
+     */
+    private static class Pending {
+        final boolean managed;
+        long ticket = 0;
+        LabelsIndex index = null;
+        Pending(boolean managed) { this.managed = managed; }
+    }
+
+    // The labels index in TDB2 NodeId form, for the last TDB2 dataset asked for.
+    private final AtomicReference<LabelsIndexNodeId> labelsIndexNodeId = new AtomicReference<>(null);
     private final Transactional transactional;
 
     /*package*/ static LabelsStore create(Graph labelsGraph, Transactional transactional) {
@@ -73,7 +126,7 @@ public class LabelsStoreImpl implements LabelsStore {
             checkShape(graph);
             this.pmap = prefixMap(labelsGraph);
         });
-        buildIndex();
+        // The index is built by "create".
     }
 
     /**
@@ -87,13 +140,27 @@ public class LabelsStoreImpl implements LabelsStore {
 
     @Override
     public void add(Graph labels) {
-        Txn.executeWrite(transactional, ()-> {
+        executeWrite(()-> {
             checkShape(labels);
-            GraphUtil.addInto(labelsGraph, labels);
-            buildIndex();
+            if ( labels == labelsGraph ) {
+                // Creating the store from the storage.
+                if ( ABAC.canonicalLabels )
+                    canonicalLabels(labelsGraph);
+            } else if ( ABAC.canonicalLabels )
+                labels.find().forEachRemaining(t->labelsGraph.add(canonicalLabel(t)));
+            else
+                GraphUtil.addInto(labelsGraph, labels);
+            changed();
+            // Check the labels now: a bad pattern aborts the change.
+            ensureIndex(false);
         });
     }
 
+    /** The graph used for storing the labels. */
+    /*package*/ Graph storageGraph() {
+        return labelsGraph;
+    }
+
     @Override
     public Graph getGraph() {
         Graph gResult = GraphFactory.createDefaultGraph();
@@ -110,45 +177,329 @@ public class LabelsStoreImpl implements LabelsStore {
             return null;
         }
 
+        LabelsIndex index;
         try {
-            ensureIndex();
+            index = ensureIndex();
         } catch (AuthzTriplePatternException ex) {
             LOG.error("Failed to update index: "+ex.getMessage());
             return List.of(SysABAC.denyLabel);
         }
 
         try {
-            List<String> x = labelsIndex.get().match(triple);
+            List<String> x = index.match(triple);
             //FmtLog.info(ABAC.LOG, "%s : %s\n", str(triple), x);
             return x;
+        } catch (ExactTable.Released ex) {
+            // Replaced while in use.
+            return labelsForTriples(triple);
         } catch (Exception ex) {
             LOG.error("Failed to process: "+triple, ex);
             return null;
         }
     }
 
-    private void ensureIndex() {
+    /**
+     * Return the index of labels for the NodeIds of a TDB2 dataset.
+     * This must be called inside a transaction on the TDB2 dataset.
+     */
+    /*package*/ LabelsIndexNodeId labelsIndexNodeId(DatasetGraphTDB dsgTDB) {
+        LabelsIndex index = ensureIndex();
+        LabelsIndexNodeId current = labelsIndexNodeId.get();
+        LabelsIndexNodeId indexNodeId = ( current != null && current.isFor(index, dsgTDB) )
+                ? current.refresh()
+                : LabelsIndexNodeId.build(index, dsgTDB);
+        if ( indexNodeId != current )
+            labelsIndexNodeId.compareAndSet(current, indexNodeId);
+        return indexNodeId;
+    }
+
+    @Override
+    public List<String> labelsFor(Node graph, Node subject, Node predicate, Node object) {
+        if ( ! subject.isConcrete() || ! predicate.isConcrete() || ! object.isConcrete() )
+            // Logs the error.
+            return labelsForTriples(Triple.create(subject, predicate, object));
+        LabelsIndex index;
         try {
-            if (labelsIndex.get() == null )
-                buildIndex();
+            index = ensureIndex();
+        } catch (AuthzTriplePatternException ex) {
+            LOG.error("Failed to update index: "+ex.getMessage());
+            return List.of(SysABAC.denyLabel);
+        }
+        try {
+            return index.match(subject, predicate, object);
+        } catch (ExactTable.Released ex) {
+            // Replaced while in use.
+            return labelsFor(graph, subject, predicate, object);
+        } catch (Exception ex) {
+            LOG.error("Failed to process: "+Triple.create(subject, predicate, object), ex);
+            return null;
+        }
+    }
+
+    /**
+     * Make sure there is an index to use.
+     * <p>
+     * If the labels have changed since the index was built, and the previous
+     * index is within the staleness bound ({@link ABAC#labelsIndexStaleness}),
+     * the previous index is used and a rebuild is started in the background.
+     * Otherwise, the index is rebuilt now, with concurrent callers waiting for
+     * the one rebuild.
+     */
+    private LabelsIndex ensureIndex() {
+        return ensureIndex(true);
+    }
+
+    /**
+     * As {@link #ensureIndex()}; if {@code allowStale} is false, the index includes
+     * all labels, regardless of the staleness bound.
+     */
+    private LabelsIndex ensureIndex(boolean allowStale) {
+        Pending p = pending.get();
+        if ( p != null ) {
+            if ( p.ticket != 0 && inWriteTransaction() ) {
+                // Uncommitted changes: an index for this transaction only.
+                if ( p.index == null )
+                    p.index = LabelsIndex.buildIndex(labelsGraph);
+                return p.index;
+            }
+            if ( p.ticket != 0 || ! transactional.isInTransaction() ) {
+                // The transaction that changed the labels has finished without
+                // the store being told.
+                pending.remove();
+                if ( p.ticket != 0 )
+                    countChange(p.ticket);
+            }
+        }
+        LabelsIndex index = labelsIndex.get();
+        if ( index != null && isIndexCurrent() )
+            return index;
+        if ( allowStale && index != null && ABAC.labelsIndexStaleness > 0 ) {
+            long age = System.nanoTime() - staleSince;
+            if ( age < TimeUnit.MILLISECONDS.toNanos(ABAC.labelsIndexStaleness) ) {
+                rebuildIndexBackground();
+                return index;
+            }
+        }
+        try {
+            return rebuildIndex();
         } catch (RuntimeException ex) {
             LOG.warn("Failed to build index", ex);
             throw ex;
         }
     }
 
-    private void buildIndex() {
-        LabelsIndex index = LabelsIndex.buildIndex(labelsGraph);
-        if ( index == null ) {}
-        // Check zero or one default
-        // Default settings.
-        labelsIndex.set(index);
+    private boolean isIndexCurrent() {
+        long c = changes.get();
+        return labelsIndex.get() != null && indexedChanges == c && unmanagedWrites <= c;
+    }
+
+    private boolean inWriteTransaction() {
+        return transactional.isInTransaction() && transactional.transactionMode() == ReadWrite.WRITE;
+    }
+
+    /** Record a change to the labels graph by the current write transaction. */
+    private void changed() {
+        Pending p = pending.get();
+        if ( p == null ) {
+            p = new Pending(false);
+            pending.set(p);
+        }
+        // A ticket already counted is from an earlier transaction of this thread.
+        if ( p.ticket == 0 || p.ticket <= changes.get() ) {
+            if ( ! p.managed && isIndexCurrent() )
+                staleSince = System.nanoTime();
+            p.ticket = writes.incrementAndGet();
+            if ( ! p.managed )
+                unmanagedWrites = p.ticket;
+        }
+        p.index = null;
+    }
+
+    /** Count the changes up to {@code ticket} as finished. The published index may now be out of date. */
+    private void countChange(long ticket) {
+        synchronized(publishLock) {
+            long c = changes.get();
+            if ( ticket <= c )
+                return;
+            changes.set(ticket);
+            if ( indexedChanges == c )
+                staleSince = System.nanoTime();
+        }
+    }
+
+    /** Publish an index that includes the changes up to {@code version}, unless a later one is published. */
+    private void publish(LabelsIndex index, long version) {
+        synchronized(publishLock) {
+            if ( version < indexedChanges )
+                return;
+            LabelsIndex previous = labelsIndex.getAndSet(index);
+            indexedChanges = version;
+            if ( previous != null && previous != index )
+                previous.release();
+        }
+    }
+
+    @Override
+    public void beforeWrite() {
+        Pending p = pending.get();
+        // A transaction starting on this thread means any earlier one has finished.
+        if ( p != null && p.ticket != 0 )
+            countChange(p.ticket);
+        pending.set(new Pending(true));
+    }
+
+    @Override
+    public void afterCommit() {
+        Pending p = pending.get();
+        if ( p == null )
+            return;
+        pending.remove();
+        if ( p.ticket == 0 )
+            return;
+        synchronized(publishLock) {
+            countChange(p.ticket);
+            // The index of the transaction is the committed state. It is not
+            // published if a later transaction has been counted.
+            if ( p.index != null )
+                publish(p.index, p.ticket);
+        }
+    }
+
+    @Override
+    public void afterAbort() {
+        Pending p = pending.get();
+        if ( p == null )
+            return;
+        pending.remove();
+        // Not all storage undoes changes on abort, so assume the labels have changed.
+        if ( p.ticket != 0 )
+            countChange(p.ticket);
+    }
+
+    /**
+     * Perform a change to the labels, in its own write transaction if not already
+     * in one. If in a transaction, the index is published when the transaction
+     * finishes.
+     */
+    private void executeWrite(Runnable action) {
+        if ( transactional.isInTransaction() ) {
+            // Part of a larger transaction, which decides whether the change
+            // commits. Not Txn.executeWrite, which ends the transaction on an exception.
+            if ( transactional.transactionMode() != ReadWrite.WRITE && ! transactional.promote() )
+                throw new JenaTransactionException("Can't change the labels in a read transaction");
+            action.run();
+            return;
+        }
+        beforeWrite();
+        try {
+            Txn.executeWrite(transactional, action);
+        } catch (RuntimeException ex) {
+            afterAbort();
+            throw ex;
+        }
+        afterCommit();
+    }
+
+    /** Rebuild the index, unless another thread has just done so, and return the latest index. */
+    private LabelsIndex rebuildIndex() {
+        if ( ! transactional.isInTransaction() ) {
+            synchronized(buildLock) {
+                if ( isIndexCurrent() )
+                    return labelsIndex.get();
+                if ( unmanagedWrites > changes.get() )
+                    // A transaction that changed the labels may still be active.
+                    return rebuildIndexAfterWriters();
+                // The transaction starts after reading the count.
+                long version = changes.get();
+                LabelsIndex index = Txn.calculateRead(transactional, ()->LabelsIndex.buildIndex(labelsGraph));
+                publish(index, version);
+                return index;
+            }
+        }
+        if ( inWriteTransaction() ) {
+            // There is only one writer, and this transaction has not changed the
+            // labels, so all numbered transactions have finished.
+            // Not under "buildLock": a background rebuild may be waiting for this transaction.
+            long version = writes.get();
+            LabelsIndex index = LabelsIndex.buildIndex(labelsGraph);
+            countChange(version);
+            publish(index, version);
+            return index;
+        }
+        // A reader: its view may be older than the latest change, so the index is
+        // built in the background, in a new transaction.
+        long wanted = Math.max(changes.get(), unmanagedWrites);
+        long finish = System.currentTimeMillis() + rebuildWaitMillis;
+        try {
+            while ( indexedChanges < wanted ) {
+                long wait = finish - System.currentTimeMillis();
+                if ( wait <= 0 )
+                    break;
+                rebuildIndexBackground().get(wait, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            // Build here.
+        }
+        LabelsIndex index = labelsIndex.get();
+        if ( index != null && indexedChanges >= wanted )
+            return index;
+        // Index for this transaction only.
+        return LabelsIndex.buildIndex(labelsGraph);
+    }
+
+    /**
+     * Build the index in a write transaction, which starts when any active writer
+     * has finished. The transaction does not change anything and is aborted.
+     */
+    private LabelsIndex rebuildIndexAfterWriters() {
+        transactional.begin(ReadWrite.WRITE);
+        try {
+            long version = writes.get();
+            LabelsIndex index = LabelsIndex.buildIndex(labelsGraph);
+            countChange(version);
+            publish(index, version);
+            return index;
+        } finally {
+            transactional.abort();
+            transactional.end();
+        }
+    }
+
+    private CompletableFuture<Void> rebuildIndexBackground() {
+        CompletableFuture<Void> current = rebuildInProgress.get();
+        if ( current != null )
+            return current;
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if ( ! rebuildInProgress.compareAndSet(null, future) ) {
+            current = rebuildInProgress.get();
+            return ( current != null ) ? current : CompletableFuture.completedFuture(null);
+        }
+        rebuildExecutor.execute(()->{
+            try {
+                rebuildIndex();
+                rebuildInProgress.set(null);
+                future.complete(null);
+            } catch (RuntimeException ex) {
+                // Readers will try again, and after the staleness bound, rebuild themselves.
+                LOG.warn("Failed to build index in the background", ex);
+                rebuildInProgress.set(null);
+                future.completeExceptionally(ex);
+            }
+        });
+        return future;
     }
 
     private static void buildIndex(Graph graph) {
 
     }
 
+    @Override
+    public void export(StreamRDF output, Triple filter, long offset, long limit) {
+        LabelsExport.export(labelsGraph, output, filter, offset, limit);
+    }
+
     @Override
     public boolean isEmpty() { return labelsGraph.isEmpty(); }
 
@@ -230,13 +581,39 @@ public class LabelsStoreImpl implements LabelsStore {
     }
 
 
+    /** Replace label strings in a graph by their canonical form. */
+    private static void canonicalLabels(Graph graph) {
+        List<Triple> labelTriples = G.find(graph, Node.ANY, VocabAuthzLabels.pLabel, Node.ANY).toList();
+        for ( Triple t : labelTriples ) {
+            Triple t2 = canonicalLabel(t);
+            if ( t2 == t )
+                continue;
+            graph.delete(t);
+            graph.add(t2);
+        }
+    }
+
+    /** A label triple with the label in canonical form. Other triples are returned unchanged. */
+    private static Triple canonicalLabel(Triple t) {
+        if ( ! VocabAuthzLabels.pLabel.equals(t.getPredicate()) )
+            return t;
+        Node labelNode = t.getObject();
+        if ( ! Util.isSimpleString(labelNode) )
+            return t;
+        String label = labelNode.getLiteralLexicalForm();
+        String label2 = AE.canonical(label);
+        if ( label.equals(label2) )
+            return t;
+        return Triple.create(t.getSubject(), VocabAuthzLabels.pLabel, NodeFactory.createLiteral(label2));
+    }
+
     // Triple may be a pattern (wildcards), but must be S
     @Override
     public void add(Triple triple, List<String> labels) {
-        add$(triple, labels);
+        executeWrite(()->add$(triple, labels));
     }
 
-    /** Add a triple pattern but do not rebuild index. */
+    /** Add a triple pattern but do not rebuild index. Called inside a write transaction. */
     private void add$(Triple triple, List<String> labels) {
         if ( !LabelsIndex.isPatternTriple(triple) )
             throw new AuthzTriplePatternException("Bad triple pattern: "+NodeFmtLib.str(triple));
@@ -248,15 +625,51 @@ public class LabelsStoreImpl implements LabelsStore {
         Triple t1 = Triple.create(entry, VocabAuthzLabels.pPattern, NodeFactory.createLiteral(s));
         labelsGraph.add(t1);
         labels.forEach(x->{
-            Node obj = NodeFactory.createLiteral(x);
+            String label = ABAC.canonicalLabels ? AE.canonical(x) : x;
+            Node obj = NodeFactory.createLiteral(label);
             labelsGraph.add(entry, VocabAuthzLabels.pLabel, obj);
         });
-        // No built index.
-        labelsIndex.set(null);
+        // Index out of date.
+        changed();
+    }
+
+    @Override
+    public void remove(Collection<Triple> triples) {
+        if ( triples.isEmpty() )
+            return;
+        executeWrite(()->removeEntries$(entriesFor(triples)));
+    }
+
+    private List<Node> entriesFor(Collection<Triple> triples) {
+        // Find entries with an up-to-date index.
+        LabelsIndex index = ensureIndex(false);
+        List<Node> entries = new ArrayList<>();
+        try {
+            for ( Triple triple : triples )
+                entries.addAll(index.entriesFor(TriplePattern.create(triple)));
+        } catch (ExactTable.Released ex) {
+            // Replaced while in use.
+            return entriesFor(triples);
+        }
+        return entries;
+    }
+
+    /** Remove label descriptions, given their subjects in the labels graph. */
+    /*package*/ void removeEntries(Collection<Node> entries) {
+        if ( entries.isEmpty() )
+            return;
+        executeWrite(()->removeEntries$(entries));
+    }
+
+    private void removeEntries$(Collection<Node> entries) {
+        if ( entries.isEmpty() )
+            return;
+        entries.forEach(x->labelsGraph.remove(x, Node.ANY, Node.ANY));
+        changed();
     }
 
     /** Triple pattern to string. */
-    private static String tripleToString(Triple triple) {
+    /*package*/ static String tripleToString(Triple triple) {
         String s = FmtUtils.stringForTriple(triple);
         return s;
     }
@@ -16,6 +16,7 @@
 
 package io.telicent.jena.abac.labels;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.jena.atlas.logging.Log;
@@ -51,6 +52,13 @@ public class LabelsStoreOne implements LabelsStore {
         return labels;
     }
 
+    @Override
+    public List<String> labelsFor(Node graph, Node subject, Node predicate, Node object) {
+        if ( ! subject.isConcrete() || ! predicate.isConcrete() || ! object.isConcrete() )
+            return labelsForTriples(Triple.create(subject, predicate, object));
+        return labels;
+    }
+
     @Override
     public void add(Triple triple, List<String> labels) {
         throw new UnsupportedOperationException("Can't add to LabelsStoreOne");
@@ -66,6 +74,10 @@ public class LabelsStoreOne implements LabelsStore {
         throw new UnsupportedOperationException("Can't load into LabelsStoreOne");
     }
 
+    /** No label descriptions to remove. */
+    @Override
+    public void remove(Collection<Triple> triples) {}
+
     @Override
     public boolean isEmpty() { return true; }
 
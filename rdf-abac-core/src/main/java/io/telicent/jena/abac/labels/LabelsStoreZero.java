@@ -16,6 +16,7 @@
 
 package io.telicent.jena.abac.labels;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.jena.atlas.logging.Log;
@@ -49,6 +50,13 @@ public class LabelsStoreZero implements LabelsStore {
         return List.of();
     }
 
+    @Override
+    public List<String> labelsFor(Node graph, Node subject, Node predicate, Node object) {
+        if ( ! subject.isConcrete() || ! predicate.isConcrete() || ! object.isConcrete() )
+            return labelsForTriples(Triple.create(subject, predicate, object));
+        return List.of();
+    }
+
     @Override
     public void add(Triple triple, List<String> labels) {
         throw new UnsupportedOperationException("Can't add to LabelsStoreZero");
@@ -64,6 +72,10 @@ public class LabelsStoreZero implements LabelsStore {
         throw new UnsupportedOperationException("Can't load into LabelsStoreZero");
     }
 
+    /** No label descriptions to remove. */
+    @Override
+    public void remove(Collection<Triple> triples) {}
+
     @Override
     public boolean isEmpty() { return true; }
 
@@ -18,19 +18,25 @@ package io.telicent.jena.abac.labels;
 
 import static org.apache.jena.riot.out.NodeFmtLib.str;
 
-import java.util.List;
+import java.util.*;
 
+import io.telicent.jena.abac.ABAC;
 import io.telicent.jena.abac.AE;
 import io.telicent.jena.abac.AttributeValueSet;
 import io.telicent.jena.abac.SysABAC;
 import io.telicent.jena.abac.attributes.AttributeException;
 import io.telicent.jena.abac.attributes.AttributeExpr;
 import io.telicent.jena.abac.attributes.ValueTerm;
+import io.telicent.jena.abac.attributes.syntax.AE_Allow;
+import io.telicent.jena.abac.attributes.syntax.AE_Deny;
+import io.telicent.jena.abac.attributes.syntax.AttrExprEvaluator;
 import io.telicent.jena.abac.core.CxtABAC;
+import io.telicent.jena.abac.core.DecisionCache;
 import io.telicent.jena.abac.core.QuadFilter;
 import org.apache.jena.atlas.lib.Cache;
+import org.apache.jena.atlas.lib.CacheFactory;
 import org.apache.jena.atlas.logging.FmtLog;
-import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.Node;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.Quad;
 import org.slf4j.Logger;
@@ -65,13 +71,83 @@ import org.slf4j.LoggerFactory;
         this.debug = generalDebug ? true : cxt.debug();
     }
 
-    // [ABAC] optimize! cache parsing of labels. cache evaluation per-request needed!
+    // Parsed labels, shared by all requests. See ABAC.labelExprCacheSize.
+    // Parsing depends on settings, so the cache is cleared when they change.
+    private static final Cache<String, AttributeExpr> labelExprs = CacheFactory.createCache(ABAC.labelExprCacheSize);
+    private static volatile int labelExprsSettings = parseSettings();
+
+    private static int parseSettings() {
+        return ( ABAC.LEGACY ? 1 : 0 ) | ( ABAC.labelParserFastPath ? 2 : 0 ) | ( ABAC.canonicalLabels ? 4 : 0 );
+    }
+
+    private static AttributeExpr parsedLabel(String label) {
+        int settings = parseSettings();
+        if ( settings != labelExprsSettings ) {
+            synchronized(labelExprs) {
+                if ( settings != labelExprsSettings ) {
+                    labelExprs.clear();
+                    labelExprsSettings = settings;
+                }
+            }
+        }
+        return labelExprs.getOrFill(label, ()->AE.parseExpr(label));
+    }
 
     @Override
     public boolean test(Quad quad) {
-        Triple triple = quad.asTriple();
+        List<String> dataLabels = labels.labelsFor(quad.getGraph(), quad.getSubject(), quad.getPredicate(), quad.getObject());
+        boolean b = decide(dataLabels);
+        if ( debug )
+            FmtLog.info(logFilter, "Filter %-5s (%s) %s", b, str(quad.asTriple()), dataLabels);
+        return b;
+    }
+
+    /**
+     * Test a block of quads. Labels are looked up for the block, grouped by subject,
+     * and each distinct set of labels is evaluated once for the block.
+     */
+    @Override
+    public BitSet testBlock(List<Quad> quads) {
+        int N = quads.size();
+        BitSet selection = new BitSet(N);
+        if ( N == 0 )
+            return selection;
+        // Group by subject for locality in the labels lookup.
+        // Each group is a chain through next[], in the original order; the map holds {first, last}.
+        Map<Node, int[]> groups = new LinkedHashMap<>();
+        int[] next = new int[N];
+        for ( int i = 0 ; i < N ; i++ ) {
+            next[i] = -1;
+            int[] group = groups.get(quads.get(i).getSubject());
+            if ( group == null ) {
+                groups.put(quads.get(i).getSubject(), new int[] {i, i});
+                continue;
+            }
+            next[group[1]] = i;
+            group[1] = i;
+        }
 
-        List<String> dataLabels = labels.apply(triple);
+        // Key null is "no labels configured".
+        Map<List<String>, Boolean> decisions = new HashMap<>();
+        for ( int[] group : groups.values() ) {
+            for ( int i = group[0] ; i >= 0 ; i = next[i] ) {
+                Quad quad = quads.get(i);
+                List<String> dataLabels = labels.labelsFor(quad.getGraph(), quad.getSubject(), quad.getPredicate(), quad.getObject());
+                boolean b = decisions.computeIfAbsent(dataLabels, this::decide);
+                if ( debug )
+                    FmtLog.info(logFilter, "Filter %-5s (%s) %s", b, str(quad), dataLabels);
+                if ( b )
+                    selection.set(i);
+            }
+        }
+        return selection;
+    }
+
+    /**
+     * Decide visibility given the labels for a triple.
+     * {@code dataLabels} is null for "no labels configured" and empty for "no labels for this triple".
+     */
+    /*package*/ boolean decide(List<String> dataLabels) {
         if ( dataLabels == null ) {
             // No labels configured
             if ( debug )
@@ -90,30 +166,48 @@ import org.slf4j.LoggerFactory;
         // User: cxt.
         AttributeValueSet requestAttr = cxt.requestAttributes();
 
-        boolean b = determineOutcome(cxt, debug, dataLabels, requestAttr);
-        if ( debug )
-            FmtLog.info(logFilter, "Filter %-5s (%s) %s", b, str(triple), dataLabels);
-        return b;
-    };
+        return determineOutcome(cxt, debug, dataLabels, requestAttr);
+    }
+
+    /*package*/ boolean debug() {
+        return debug;
+    }
 
     private static boolean determineOutcome(CxtABAC cxt, boolean debug, List<String> dataLabels, AttributeValueSet reqAttr) {
         // -- Concrete quoted triple
         // When there is more than one label attribute on the
         // data all expression must pass.
         for(String dataLabel : dataLabels ) {
-            Cache<String, ValueTerm> cache = cxt.labelEvalCache();
+            // Each label is specialized to the request once, and is usually a constant.
+            AttributeExpr specialized = cxt.specializedLabel(dataLabel, label->specialize(cxt, label, reqAttr));
             if ( debug ) {
-                FmtLog.info(logFilter, "Attribute: '%s' (cache = %s)", dataLabel, cache.getIfPresent(dataLabel));
+                FmtLog.info(logFilter, "Attribute: '%s' (specialized = %s)", dataLabel, specialized);
             }
-            ValueTerm value = cache.getOrFill(dataLabel, ()->eval1(cxt, debug, dataLabel, reqAttr));
-            if ( ! value.getBoolean() )
+            if ( specialized == AE_Allow.value() )
+                continue;
+            if ( specialized == AE_Deny.value() )
+                return false;
+            // The value depends only on the request, so it is kept for the rest of the request.
+            boolean b = eval1(cxt, specialized).getBoolean();
+            cxt.specializedLabelValue(dataLabel, b);
+            if ( ! b )
                 return false;
         }
         return true;
     }
 
-    private static ValueTerm eval1(CxtABAC cxt, boolean debug, String dataLabel, AttributeValueSet reqAttr) {
-      AttributeExpr aExpr = AE.parseExpr(dataLabel);
+    private static AttributeExpr specialize(CxtABAC cxt, String dataLabel, AttributeValueSet reqAttr) {
+        AttributeExpr aExpr = parsedLabel(dataLabel);
+        DecisionCache decisionCache = cxt.decisionCache();
+        // Decisions shared between requests are only for labels that depend on the request attributes alone.
+        if ( decisionCache != null && AttrExprEvaluator.isRequestOnly(aExpr) ) {
+            ValueTerm value = decisionCache.getOrFill(reqAttr, dataLabel, ()->eval1(cxt, aExpr));
+            return value.getBoolean() ? AE_Allow.value() : AE_Deny.value();
+        }
+        return AE.partialEval(aExpr, cxt);
+    }
+
+    private static ValueTerm eval1(CxtABAC cxt, AttributeExpr aExpr) {
       ValueTerm value = aExpr.eval(cxt);
       if ( value == null )
           throw new AttributeException("Null return from AttributeExpr.eval");
@@ -0,0 +1,91 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.labels;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+import io.telicent.jena.abac.SysABAC;
+import io.telicent.jena.abac.labels.LabelsIndex.AuthzTriplePatternException;
+import org.apache.jena.atlas.lib.tuple.Tuple;
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+
+/**
+ * Label filter for TDB2 storage tuples, used as the TDB2 tuple filter
+ * (see {@code SystemTDB.symTupleFilter}).
+ * <p>
+ * The tuple is a triple (S,P,O) from the triple table or a quad (G,S,P,O) from the quad table.
+ * For a {@link LabelsStoreImpl}, labels are found with a {@link LabelsIndexNodeId}
+ * and the NodeIds are not turned into Nodes, except where the index can not decide
+ * (see {@link LabelsIndexNodeId#match}). Other label stores are called with the
+ * triple. The decision is made by {@link SecurityFilterByLabel}.
+ */
+/*package*/ class SecurityFilterByLabelTDB2 implements Predicate<Tuple<NodeId>> {
+
+    private final DatasetGraphTDB dsgTDB;
+    private final LabelsStore labelsStore;
+    private final SecurityFilterByLabel filter;
+    // Set on first use, which is inside the query transaction.
+    private LabelsIndexNodeId index = null;
+    private List<String> indexFailed = null;
+
+    SecurityFilterByLabelTDB2(DatasetGraphTDB dsgTDB, LabelsStore labelsStore, SecurityFilterByLabel filter) {
+        this.dsgTDB = dsgTDB;
+        this.labelsStore = labelsStore;
+        this.filter = filter;
+    }
+
+    @Override
+    public boolean test(Tuple<NodeId> tuple) {
+        int i = tuple.len() - 3;
+        NodeId s = tuple.get(i);
+        NodeId p = tuple.get(i+1);
+        NodeId o = tuple.get(i+2);
+        List<String> dataLabels = labels(s, p, o);
+        boolean b = filter.decide(dataLabels);
+        if ( filter.debug() )
+            FmtLog.info(SecurityFilterByLabel.logFilter, "Filter %-5s (%s %s %s) %s", b, s, p, o, dataLabels);
+        return b;
+    }
+
+    private List<String> labels(NodeId s, NodeId p, NodeId o) {
+        if ( labelsStore instanceof LabelsStoreImpl labelsStoreImpl ) {
+            if ( indexFailed != null )
+                return indexFailed;
+            if ( index == null ) {
+                try {
+                    index = labelsStoreImpl.labelsIndexNodeId(dsgTDB);
+                } catch (AuthzTriplePatternException ex) {
+                    // As LabelsStoreImpl.labelsForTriples
+                    indexFailed = List.of(SysABAC.denyLabel);
+                    return indexFailed;
+                }
+            }
+            List<String> acc = index.match(s, p, o);
+            if ( acc != null )
+                return acc;
+        }
+        NodeTable nodeTable = LabelsIndexNodeId.nodeTable(dsgTDB);
+        return labelsStore.labelsFor(null,
+                                     nodeTable.getNodeForNodeId(s),
+                                     nodeTable.getNodeForNodeId(p),
+                                     nodeTable.getNodeForNodeId(o));
+    }
+}
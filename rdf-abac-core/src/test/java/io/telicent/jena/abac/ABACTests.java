@@ -33,6 +33,7 @@ import org.apache.jena.graph.Graph;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
 import org.apache.jena.sparql.exec.QueryExec;
 import org.apache.jena.sparql.util.IsoMatcher;
 import org.slf4j.Logger;
@@ -40,8 +41,13 @@ import org.slf4j.Logger;
 public class ABACTests {
 
     public static void runTest(String filename, int count) {
+        runTest(filename, DatasetGraphFactory.createTxnMem(), count);
+    }
+
+    /** Run a test, with {@code data} as the storage for the data. */
+    public static void runTest(String filename, DatasetGraph data, int count) {
         DatasetGraph aio = RDFDataMgr.loadDatasetGraph(filename);
-        DatasetGraphABAC dsgz = BuildAIO.setupByTriG(aio, null);
+        DatasetGraphABAC dsgz = BuildAIO.setupByTriG(aio, data, null);
         Graph expected = aio.getGraph(VocabAuthzTest.graphForTestResult);
 
         // == Request
@@ -51,7 +57,7 @@ public class ABACTests {
 
         String queryString = "CONSTRUCT WHERE { ?s ?p ?o }";
         // === Result
-        Graph actual = QueryExec.dataset(dsgr).query(queryString).construct();
+        Graph actual = dsgr.calculateRead(()->QueryExec.dataset(dsgr).query(queryString).construct());
 
         boolean b = IsoMatcher.isomorphic(expected, actual);
         if ( !b ) {
@@ -59,8 +59,12 @@ public class BuildAIO {
     }
 
     public static DatasetGraphABAC setupByTriG(DatasetGraph aio, String dftTripleAttributes) {
-        DatasetGraph data = DatasetGraphFactory.createTxnMem();
-        GraphUtil.addInto(data.getDefaultGraph(), aio.getDefaultGraph());
+        return setupByTriG(aio, DatasetGraphFactory.createTxnMem(), dftTripleAttributes);
+    }
+
+    /** Set up, using the {@code data} dataset as the storage for the data. */
+    public static DatasetGraphABAC setupByTriG(DatasetGraph aio, DatasetGraph data, String dftTripleAttributes) {
+        data.executeWrite(()->GraphUtil.addInto(data.getDefaultGraph(), aio.getDefaultGraph()));
         // use copies to ensure complete isolation in tests.
         return buildFromGraphs(data,
                                copy(aio.getGraph(VocabAuthzTest.graphForLabels)),
@@ -27,18 +27,26 @@ import org.junit.platform.suite.api.Suite;
     , TestAttributeParser.class
     , TestAttributeExprList.class
     , TestAttributeExprParse.class
+    , TestAttributeParserFastPath.class
+    , TestAttributeExprNormalize.class
     , TestHierarchy.class
 
     , TestAttributeValue.class
     , TestAttributeValueList.class
+    , TestAttributeValueSet.class
 
     // Main test suite for attribute expression evaluation.
     , TestAttributeExprEval.class
 
     , TestLabelsStore.class
+    , TestLabelsStoreBuilder.class
+    , TestLabelsRemove.class
     , TestLabelMatch.class
     , TestLabels.class
+    , TestLabelsTDB2.class
+    , TestQuadFilterBlock.class
     , TestAssemblerABAC.class
+    , TestDecisionCache.class
 })
 
 public class TS_ABAC {}
@@ -16,7 +16,12 @@
 
 package io.telicent.jena.abac;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.time.Duration;
 
 import io.telicent.jena.abac.core.DatasetGraphABAC;
 import io.telicent.jena.abac.core.VocabAuthzDataset;
@@ -41,5 +46,24 @@ public class TestAssemblerABAC {
         assertNotNull(ds);
         DatasetGraphABAC dsgz = (DatasetGraphABAC)ds.asDatasetGraph();
         assertNotNull(dsgz.labelsStore());
+        assertNull(dsgz.decisionCache());
+    }
+
+    @Test public void assemble2() {
+        JenaSystem.init();
+        VocabAuthzDataset.init();
+        Dataset ds = (Dataset)AssemblerUtils.build(DIR+"abac-assembler-decision-cache.ttl", VocabAuthzDataset.tDatasetAuthz);
+        DatasetGraphABAC dsgz = (DatasetGraphABAC)ds.asDatasetGraph();
+        assertNotNull(dsgz.decisionCache());
+        assertEquals(Duration.ofSeconds(2), dsgz.decisionCache().ttl());
+    }
+
+    @Test public void assemble3() {
+        JenaSystem.init();
+        VocabAuthzDataset.init();
+        Dataset ds = (Dataset)AssemblerUtils.build(DIR+"abac-assembler-labels-graph.ttl", VocabAuthzDataset.tDatasetAuthz);
+        DatasetGraphABAC dsgz = (DatasetGraphABAC)ds.asDatasetGraph();
+        assertNotNull(dsgz.labelsStore());
+        assertSame(dsgz.getWrapped(), dsgz.labelsStore().getTransactional());
     }
 }
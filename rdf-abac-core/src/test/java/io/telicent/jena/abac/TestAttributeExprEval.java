@@ -18,15 +18,18 @@ package io.telicent.jena.abac;
 
 import static io.telicent.jena.abac.attributes.ValueTerm.FALSE;
 import static io.telicent.jena.abac.attributes.ValueTerm.TRUE;
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assertions.*;
 
 import java.util.Map;
 
 import io.telicent.jena.abac.attributes.Attribute;
+import io.telicent.jena.abac.attributes.AttributeExpr;
 import io.telicent.jena.abac.attributes.AttributeSyntaxError;
 import io.telicent.jena.abac.attributes.ValueTerm;
+import io.telicent.jena.abac.attributes.syntax.AE_And;
+import io.telicent.jena.abac.attributes.syntax.AE_Deny;
+import io.telicent.jena.abac.attributes.syntax.AttrExprEvaluator;
+import io.telicent.jena.abac.core.CxtABAC;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.DatasetGraphZero;
 import org.junit.jupiter.api.Test;
@@ -94,6 +97,111 @@ public class TestAttributeExprEval extends AbstractParserTests {
     @Test public void eval_bad_03() { bad(AttributeSyntaxError.class, "attr1=A || !", "attr1=A"); }
     @Test public void eval_bad_04() { bad(AttributeSyntaxError.class, "! || attr1=A", "attr1=A"); }
 
+    // Atomic tests are evaluated once per request, whichever labels they are in.
+    @Test public void eval_atoms_01() {
+        AttributeValueSet attrs = AttributeValueSet.of(AE.parseAttrValueList("attrH=secret, attr1=1"));
+        CxtABAC cxt = CxtABAC.context(attrs, map::get, dsg);
+        assertEquals(0, countAtoms(cxt));
+        assertEquals(TRUE, AE.parseExpr("attrH=public & attr1=1").eval(cxt));
+        assertEquals(2, countAtoms(cxt));
+        assertEquals(TRUE, AE.parseExpr("attr1=1 | attrH=public").eval(cxt));
+        assertEquals(FALSE, AE.parseExpr("attrH=private & attr1=1").eval(cxt));
+        assertEquals(3, countAtoms(cxt));
+        // Another request.
+        CxtABAC cxt2 = CxtABAC.context(attrs, map::get, dsg);
+        assertEquals(0, countAtoms(cxt2));
+    }
+
+    // Operands of "&" and "|" are reordered so that the deciding test comes first.
+    @Test public void eval_adaptive_and() {
+        adaptive("attr1=1 & attr2=9", FALSE);
+    }
+
+    @Test public void eval_adaptive_or() {
+        adaptive("attr2=9 | attr1=1", TRUE);
+    }
+
+    private static void adaptive(String label, ValueTerm expected) {
+        boolean b = ABAC.adaptiveLabelOrder;
+        try {
+            ABAC.adaptiveLabelOrder = true;
+            AttributeValueSet attrs = AttributeValueSet.of(AE.parseAttrValueList("attr1=1"));
+            AttributeExpr expr = AE.parseExpr(label);
+            CxtABAC cxt0 = CxtABAC.context(attrs, map::get, dsg);
+            assertEquals(expected, expr.eval(cxt0));
+            // Both operands are evaluated.
+            assertEquals(2, countAtoms(cxt0));
+            for ( int i = 0 ; i < 1000 ; i++ )
+                assertEquals(expected, expr.eval(CxtABAC.context(attrs, map::get, dsg)));
+            CxtABAC cxt1 = CxtABAC.context(attrs, map::get, dsg);
+            assertEquals(expected, expr.eval(cxt1));
+            // Only the deciding operand is evaluated.
+            assertEquals(1, countAtoms(cxt1));
+        } finally {
+            ABAC.adaptiveLabelOrder = b;
+        }
+    }
+
+    // Partial evaluation against the request attributes.
+    // {name} has a value that is not true or false; it is left for later, when it is an error.
+    @Test public void eval_partial_01() { partial("attr1=1 & attr2=9", "!"); }
+    @Test public void eval_partial_02() { partial("attr2=9 | (attr1=1 & attrH=public)", "*"); }
+    @Test public void eval_partial_03() { partial("attr1=1 & {name}", "{name}"); }
+    @Test public void eval_partial_04() { partial("attr2=9 | {name}", "{name}"); }
+    @Test public void eval_partial_05() { partial("attr2=9 & {name}", "!"); }
+    @Test public void eval_partial_06() { partial("attr1=1 | {name}", "*"); }
+    // The residual part is evaluated before the test that decides the outcome.
+    @Test public void eval_partial_07() {
+        AttributeExpr expected = new AE_And(AE.parseExpr("{name}"), AE_Deny.value());
+        assertEquals(expected, partial("{name} & attr2=9"));
+    }
+    @Test public void eval_partial_08() { partial("{name} | ( {name2} & attr1=1 )", "{name} | {name2}"); }
+
+    // Variables, with values for the request.
+    @Test public void eval_var_01() { testVar("{flag}", TRUE); }
+    @Test public void eval_var_02() { testVar("{other}", FALSE); }
+    @Test public void eval_var_03() { testVar("attr1 = {tenant}", TRUE); }
+    @Test public void eval_var_04() { testVar("attr1 != {tenant}", FALSE); }
+    @Test public void eval_var_05() { testVar("attr1 = {other}", FALSE); }
+    @Test public void eval_var_06() { testVar("attr2 = {tenant} | {flag}", TRUE); }
+
+    // Variables are resolved by partial evaluation.
+    @Test public void eval_var_partial_01() {
+        AttributeExpr expr = AE.partialEval(AE.parseExpr("attr1 = {tenant} & attr2=9"), varCxt());
+        assertEquals(AE_Deny.value(), expr);
+        assertFalse(AttrExprEvaluator.isRequestOnly(AE.parseExpr("attr1 = {tenant} & attr2=9")));
+        assertTrue(AttrExprEvaluator.isRequestOnly(AE.parseExpr("attr1 = 1 & attr2=9")));
+    }
+
+    private static void testVar(String label, ValueTerm expected) {
+        assertEquals(expected, AE.parseExpr(label).eval(varCxt()));
+    }
+
+    private static CxtABAC varCxt() {
+        AttributeValueSet attrs = AttributeValueSet.of(AE.parseAttrValueList("attr1=1, attrH=secret"));
+        Map<Attribute, ValueTerm> environment = Map.of(new Attribute("tenant"), ValueTerm.value("1"),
+                                                       new Attribute("flag"), ValueTerm.TRUE,
+                                                       new Attribute("name"), ValueTerm.value("abc"),
+                                                       new Attribute("name2"), ValueTerm.value("def"));
+        return CxtABAC.context(attrs, map::get, environment, dsg, null);
+    }
+
+    private static void partial(String label, String expected) {
+        assertEquals(AE.parseExpr(expected), partial(label));
+    }
+
+    private static AttributeExpr partial(String label) {
+        return AE.partialEval(AE.parseExpr(label), varCxt());
+    }
+
+    private static int countAtoms(CxtABAC cxt) {
+        int count = 0;
+        for ( int i = 0 ; i < cxt.atomSlotsAllocated() ; i++ ) {
+            if ( cxt.atomValue(i) != null )
+                count++;
+        }
+        return count;
+    }
 
     private <X extends Throwable> void bad(Class<X> expectedExceptionClass, String attributeExpr, String attributeValues) {
         assertThrows(expectedExceptionClass, ()->test(attributeExpr, attributeValues, null));
@@ -0,0 +1,103 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac;
+
+import static org.apache.jena.sparql.sse.SSE.parseTriple;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.atlas.logging.LogCtl;
+import org.apache.jena.graph.Triple;
+import org.junit.jupiter.api.Test;
+
+public class TestAttributeExprNormalize {
+
+    @Test public void normalize_01() { canonical("a", "a"); }
+    @Test public void normalize_02() { canonical("a & b", "a && b"); }
+    @Test public void normalize_03() { canonical("b&a", "a && b"); }
+    @Test public void normalize_04() { canonical("(a & b)", "a && b"); }
+    @Test public void normalize_05() { canonical("c & (b & a)", "a && b && c"); }
+    @Test public void normalize_06() { canonical("a & a", "a"); }
+    @Test public void normalize_07() { canonical("b | a | (c | a)", "a || b || c"); }
+
+    // Brackets needed.
+    @Test public void normalize_10() { canonical("(b | a) & c", "(a || b) && c"); }
+    @Test public void normalize_11() { canonical("c & (b | a)", "(a || b) && c"); }
+    // Brackets not needed.
+    @Test public void normalize_12() { canonical("(b & a) | c", "a && b || c"); }
+    @Test public void normalize_13() { canonical("c | (b & a)", "a && b || c"); }
+
+    @Test public void normalize_20() { canonical("y=2 & x != 1", "x != 1 && y = 2"); }
+    @Test public void normalize_21() { canonical("*", "*"); }
+    // Not parseable - unchanged.
+    @Test public void normalize_22() { canonical("a <", "a <"); }
+
+    @Test public void normalize_eval() {
+        String label = "(b | a) & c";
+        for ( String attrs : List.of("a", "a, c", "b, c", "c") ) {
+            assertEquals(AE.eval(label, attrs), AE.eval(AE.canonical(label), attrs), attrs);
+        }
+    }
+
+    @Test public void normalize_store() {
+        boolean b = ABAC.canonicalLabels;
+        try {
+            ABAC.canonicalLabels = true;
+            Triple triple = parseTriple("(:s :p :o)");
+            LabelsStore store = Labels.createLabelsStore();
+            store.add(triple, "(b & a)");
+            assertEquals(List.of("a && b"), store.labelsForTriples(triple));
+        } finally {
+            ABAC.canonicalLabels = b;
+        }
+    }
+
+    @Test public void normalize_store_graph() {
+        boolean b = ABAC.canonicalLabels;
+        try {
+            Triple triple1 = parseTriple("(:s :p :o1)");
+            Triple triple2 = parseTriple("(:s :p :o2)");
+            LabelsStore source = Labels.createLabelsStore();
+            source.add(triple2, "(d & c)");
+            LabelsStore store = Labels.createLabelsStore();
+            store.add(triple1, "(b & a)");
+            ABAC.canonicalLabels = true;
+            // Only the labels being added are rewritten.
+            store.add(source.getGraph());
+            assertEquals(List.of("c && d"), store.labelsForTriples(triple2));
+            assertEquals(List.of("(b & a)"), store.labelsForTriples(triple1));
+        } finally {
+            ABAC.canonicalLabels = b;
+        }
+    }
+
+    private static void canonical(String label, String expected) {
+        String level = LogCtl.getLevel(ABAC.AttrLOG);
+        LogCtl.disable(ABAC.AttrLOG);
+        try {
+            String actual = AE.canonical(label);
+            assertEquals(expected, actual);
+            // Idempotent
+            assertEquals(actual, AE.canonical(actual));
+        } finally {
+            LogCtl.setLevel(ABAC.AttrLOG, level);
+        }
+    }
+}
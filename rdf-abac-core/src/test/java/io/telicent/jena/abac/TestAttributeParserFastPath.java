@@ -0,0 +1,99 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import io.telicent.jena.abac.attributes.AttributeExpr;
+import io.telicent.jena.abac.attributes.AttributeSyntaxError;
+import org.apache.jena.atlas.logging.LogCtl;
+import org.junit.jupiter.api.Test;
+
+/** The fast path parser must give the same results as the general parser. */
+public class TestAttributeParserFastPath {
+
+    @Test public void fastPath_01() { same("a"); }
+    @Test public void fastPath_02() { same("a = b"); }
+    @Test public void fastPath_03() { same("a=b"); }
+    @Test public void fastPath_04() { same("a != b"); }
+    @Test public void fastPath_05() { same("a & b"); }
+    @Test public void fastPath_06() { same("a && b || c"); }
+    @Test public void fastPath_07() { same("a | b & c"); }
+    @Test public void fastPath_08() { same("(a | b) & c"); }
+    @Test public void fastPath_09() { same("((a))"); }
+    @Test public void fastPath_10() { same("  a.b-c:d_e  =  x+y  "); }
+    @Test public void fastPath_11() { same("_a=true"); }
+    @Test public void fastPath_12() { same("clearance=secret&nationality=GBR|employee"); }
+
+    // Not in the fast path subset.
+    @Test public void slowPath_01() { same("'my attr' = 'value'"); }
+    @Test public void slowPath_02() { same("a = 123"); }
+    @Test public void slowPath_03() { same("a = -1"); }
+    @Test public void slowPath_04() { same("{var}"); }
+    @Test public void slowPath_05() { same("a # comment"); }
+
+    // Errors are still errors.
+    @Test public void bad_01() { bad("a & & b"); }
+    @Test public void bad_02() { bad("(a"); }
+    @Test public void bad_03() { bad("true"); }
+    @Test public void bad_04() { bad("a < b"); }
+    @Test public void bad_05() { bad("a b"); }
+    @Test public void bad_06() { bad("a == b"); }
+    @Test public void bad_07() { bad("a=b."); }
+
+    @Test public void list_01() { sameList("a, b=c, d & e"); }
+    @Test public void list_02() { sameList("a,b"); }
+    @Test public void list_03() { sameList("'a', b"); }
+
+    private static void same(String string) {
+        AttributeExpr expr1 = withFastPath(true, ()->AE.parseExpr(string));
+        AttributeExpr expr2 = withFastPath(false, ()->AE.parseExpr(string));
+        assertEquals(expr2, expr1);
+        assertEquals(expr2.str(), expr1.str());
+    }
+
+    private static void sameList(String string) {
+        List<AttributeExpr> exprs1 = withFastPath(true, ()->AE.parseExprList(string));
+        List<AttributeExpr> exprs2 = withFastPath(false, ()->AE.parseExprList(string));
+        assertEquals(exprs2, exprs1);
+        assertEquals(AE.serialize(exprs2), AE.serialize(exprs1));
+    }
+
+    private static void bad(String string) {
+        String level = LogCtl.getLevel(ABAC.AttrLOG);
+        LogCtl.disable(ABAC.AttrLOG);
+        try {
+            assertThrows(AttributeSyntaxError.class, ()->withFastPath(true, ()->AE.parseExpr(string)));
+        } finally {
+            LogCtl.setLevel(ABAC.AttrLOG, level);
+        }
+    }
+
+    private static <X> X withFastPath(boolean setting, Supplier<X> action) {
+        boolean b = ABAC.labelParserFastPath;
+        try {
+            ABAC.labelParserFastPath = setting;
+            return action.get();
+        } finally {
+            ABAC.labelParserFastPath = b;
+        }
+    }
+}
@@ -18,9 +18,12 @@ package io.telicent.jena.abac;
 
 import static org.junit.Assert.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
+import io.telicent.jena.abac.attributes.Attribute;
 import io.telicent.jena.abac.attributes.AttributeSyntaxError;
 import io.telicent.jena.abac.attributes.AttributeValue;
+import io.telicent.jena.abac.attributes.ValueTerm;
 import org.junit.jupiter.api.Test;
 
 public class TestAttributeValue extends AbstractParserTests {
@@ -48,6 +51,18 @@ public class TestAttributeValue extends AbstractParserTests {
     @Test public void parse_legacy_attrValue_02() { legacy(false, ()->parseBadAttrValue("first+last@host")); }
     @Test public void parse_no_legacy_attrValue_02() { legacy(true, ()->parseAttrValue("first+last@host")); }
 
+    @Test public void intern_attrValue_01() {
+        AttributeValue av1 = AE.parseAttrValue("k=v");
+        AttributeValue av2 = AE.parseAttrValue("'k' = 'v'");
+        assertSame(av1.attribute(), av2.attribute());
+        assertSame(av1.value(), av2.value());
+    }
+
+    @Test public void intern_attrValue_02() {
+        assertSame(Attribute.create("k"), Attribute.create("k"));
+        assertSame(ValueTerm.value("v"), ValueTerm.value("v"));
+    }
+
     private void legacy(boolean setting, Runnable action) {
         boolean b = ABAC.LEGACY;
         ABAC.LEGACY = setting;
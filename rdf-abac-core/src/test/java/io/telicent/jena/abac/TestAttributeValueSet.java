@@ -0,0 +1,73 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import io.telicent.jena.abac.attributes.Attribute;
+import io.telicent.jena.abac.attributes.ValueTerm;
+import org.junit.jupiter.api.Test;
+
+public class TestAttributeValueSet {
+
+    @Test public void avs_intern_01() {
+        AttributeValueSet avs1 = avs("a, b=1, c");
+        AttributeValueSet avs2 = avs("c, b=1, a");
+        assertEquals(avs1, avs2);
+        assertSame(avs1, avs2);
+        assertEquals(avs1.fingerprint(), avs2.fingerprint());
+    }
+
+    @Test public void avs_intern_02() {
+        // Duplicates do not matter.
+        AttributeValueSet avs1 = avs("a, a, b");
+        AttributeValueSet avs2 = avs("b, a");
+        assertSame(avs1, avs2);
+    }
+
+    @Test public void avs_fingerprint_01() {
+        AttributeValueSet avs1 = avs("a=1, b=2");
+        AttributeValueSet avs2 = avs("a=2, b=1");
+        assertNotEquals(avs1, avs2);
+        assertNotEquals(avs1.fingerprint(), avs2.fingerprint());
+    }
+
+    @Test public void avs_fingerprint_02() {
+        AttributeValueSet avs1 = avs("a");
+        AttributeValueSet avs2 = avs("a=x");
+        assertNotEquals(avs1, avs2);
+        assertNotEquals(avs1.fingerprint(), avs2.fingerprint());
+    }
+
+    @Test public void avs_empty() {
+        assertSame(AttributeValueSet.EMPTY, avs(""));
+        assertTrue(AttributeValueSet.EMPTY.isEmpty());
+    }
+
+    @Test public void avs_immutable() {
+        AttributeValueSet avs = avs("a=1");
+        assertThrows(UnsupportedOperationException.class, ()->avs.get(new Attribute("a")).add(ValueTerm.value("2")));
+    }
+
+    private static AttributeValueSet avs(String string) {
+        if ( string.isEmpty() )
+            return AttributeValueSet.of(List.of());
+        return AttributeValueSet.of(AE.parseAttrValueList(string));
+    }
+}
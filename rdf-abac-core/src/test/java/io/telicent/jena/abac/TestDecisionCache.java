@@ -0,0 +1,165 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.telicent.jena.abac.attributes.Attribute;
+import io.telicent.jena.abac.attributes.ValueTerm;
+import io.telicent.jena.abac.core.*;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.atlas.lib.StrUtils;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.junit.jupiter.api.Test;
+
+public class TestDecisionCache {
+
+    private static Duration ttl = Duration.ofMinutes(1);
+
+    @Test public void decisionCache_1() {
+        DecisionCache cache = DecisionCache.create(ttl, null);
+        AtomicInteger counter = new AtomicInteger(0);
+        AttributeValueSet avs = AttributeValueSet.of("engineer");
+        ValueTerm v1 = cache.getOrFill(avs, "engineer", ()->{ counter.incrementAndGet(); return ValueTerm.TRUE; });
+        ValueTerm v2 = cache.getOrFill(AttributeValueSet.of("engineer"), "engineer", ()->{ counter.incrementAndGet(); return ValueTerm.FALSE; });
+        assertEquals(ValueTerm.TRUE, v1);
+        assertEquals(ValueTerm.TRUE, v2);
+        assertEquals(1, counter.get());
+    }
+
+    @Test public void decisionCache_2() {
+        // Different attributes, different entry.
+        DecisionCache cache = DecisionCache.create(ttl, null);
+        cache.getOrFill(AttributeValueSet.of("engineer"), "engineer", ()->ValueTerm.TRUE);
+        ValueTerm v = cache.getOrFill(AttributeValueSet.of("employee"), "engineer", ()->ValueTerm.FALSE);
+        assertEquals(ValueTerm.FALSE, v);
+        assertEquals(2, cache.size());
+    }
+
+    @Test public void decisionCache_hierarchy_1() {
+        DecisionCache cache = DecisionCache.create(ttl, null);
+        Attribute attr = new Attribute("clearance");
+        cache.observeHierarchy(attr, Hierarchy.create(attr, "public", "secret"));
+        cache.getOrFill(AttributeValueSet.of("engineer"), "engineer", ()->ValueTerm.TRUE);
+        // Same hierarchy
+        cache.observeHierarchy(attr, Hierarchy.create(attr, "public", "secret"));
+        assertEquals(1, cache.size());
+        // Changed hierarchy
+        cache.observeHierarchy(attr, Hierarchy.create(attr, "public", "secret", "top-secret"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test public void decisionCache_hierarchy_2() {
+        AttributesStoreLocal store = new AttributesStoreLocal();
+        DecisionCache cache = DecisionCache.create(ttl, store);
+        cache.getOrFill(AttributeValueSet.of("engineer"), "engineer", ()->ValueTerm.TRUE);
+        store.addHierarchy(Hierarchy.create("clearance", "public", "secret"));
+        ValueTerm v = cache.getOrFill(AttributeValueSet.of("engineer"), "engineer", ()->ValueTerm.FALSE);
+        assertEquals(ValueTerm.FALSE, v);
+    }
+
+    @Test public void decisionCache_bad() {
+        assertThrows(AuthzException.class, ()->DecisionCache.create(Duration.ZERO, null));
+    }
+
+    private static String labelsStr = StrUtils.strjoinNL
+            ("PREFIX : <http://example/>"
+            ,"PREFIX authz: <http://telicent.io/security#>"
+            ,"[ authz:pattern ':s :p1 :o' ; authz:label \"clearance=secret\" ] ."
+            ,"[ authz:pattern ':s :p2 :o' ; authz:label \"engineer\" ] ."
+            );
+
+    @Test public void decisionCache_dataset() {
+        DatasetGraph base = DatasetGraphFactory.createTxnMem();
+        Txn.executeWrite(base, ()->{
+            base.add(SSE.parseQuad("(:g :s :p1 :o)"));
+            base.add(SSE.parseQuad("(:g :s :p2 :o)"));
+        });
+        Graph labelsGraph = RDFParser.fromString(labelsStr).lang(Lang.TTL).toGraph();
+        LabelsStore labels = Labels.createLabelsStore(labelsGraph);
+
+        AttributesStoreLocal store = new AttributesStoreLocal();
+        AttributeValueSet userAttrs = AttributeValueSet.of(AE.parseAttrValueList("clearance=top-secret, engineer"));
+        store.put("u1", userAttrs);
+        store.addHierarchy(Hierarchy.create("clearance", "public", "secret", "top-secret"));
+
+        DecisionCache cache = DecisionCache.create(ttl, store);
+        DatasetGraphABAC dsgz = new DatasetGraphABAC(base, null, labels, null, store, cache);
+
+        assertEquals(2, count(dsgz, userAttrs, store));
+        assertEquals(2, cache.size());
+        // Second request: served from the decision cache.
+        assertEquals(2, count(dsgz, userAttrs, store));
+
+        // Change the hierarchy so top-secret is no longer above secret.
+        store.addHierarchy(Hierarchy.create("clearance", "public", "top-secret", "secret"));
+        assertEquals(1, count(dsgz, userAttrs, store));
+    }
+
+    private static String labelsVarStr = StrUtils.strjoinNL
+            ("PREFIX : <http://example/>"
+            ,"PREFIX authz: <http://telicent.io/security#>"
+            ,"[ authz:pattern ':s :p1 :o' ; authz:label \"tenant = {tenant}\" ] ."
+            ,"[ authz:pattern ':s :p2 :o' ; authz:label \"engineer\" ] ."
+            );
+
+    @Test public void decisionCache_dataset_environment() {
+        DatasetGraph base = DatasetGraphFactory.createTxnMem();
+        Txn.executeWrite(base, ()->{
+            base.add(SSE.parseQuad("(:g :s :p1 :o)"));
+            base.add(SSE.parseQuad("(:g :s :p2 :o)"));
+        });
+        Graph labelsGraph = RDFParser.fromString(labelsVarStr).lang(Lang.TTL).toGraph();
+        LabelsStore labels = Labels.createLabelsStore(labelsGraph);
+
+        AttributesStoreLocal store = new AttributesStoreLocal();
+        AttributeValueSet userAttrs = AttributeValueSet.of(AE.parseAttrValueList("tenant=t1, engineer"));
+        store.put("u1", userAttrs);
+
+        DecisionCache cache = DecisionCache.create(ttl, store);
+        DatasetGraphABAC dsgz = new DatasetGraphABAC(base, null, labels, null, store, cache);
+        Attribute tenant = new Attribute("tenant");
+
+        dsgz.setEnvironmentProvider(attrs->Map.of(tenant, ValueTerm.value("t1")));
+        assertEquals(2, count(dsgz, userAttrs, store));
+        // Labels with variables are not kept in the decision cache.
+        assertEquals(1, cache.size());
+
+        dsgz.setEnvironmentProvider(attrs->Map.of(tenant, ValueTerm.value("t2")));
+        assertEquals(1, count(dsgz, userAttrs, store));
+
+        dsgz.setEnvironmentProvider(EnvironmentProvider.noEnvironment);
+        assertEquals(1, count(dsgz, userAttrs, store));
+    }
+
+    private static long count(DatasetGraphABAC dsgz, AttributeValueSet attrs, AttributesStore store) {
+        DatasetGraph dsg = ABAC.requestDataset(dsgz, attrs, store);
+        return Txn.calculateRead(dsgz, ()->dsg.stream().count());
+    }
+}
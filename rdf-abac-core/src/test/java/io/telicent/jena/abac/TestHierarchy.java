@@ -17,12 +17,24 @@
 package io.telicent.jena.abac;
 
 import static io.telicent.jena.abac.Hierarchy.Comparison.*;
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.telicent.jena.abac.Hierarchy.Comparison;
+import io.telicent.jena.abac.attributes.Attribute;
 import io.telicent.jena.abac.attributes.AttributeException;
 import io.telicent.jena.abac.attributes.ValueTerm;
+import io.telicent.jena.abac.core.Attributes;
+import io.telicent.jena.abac.core.AttributesStore;
+import io.telicent.jena.abac.core.CxtABAC;
+import io.telicent.jena.abac.core.HierarchyGetter;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
 import org.junit.jupiter.api.Test;
 
 public class TestHierarchy {
@@ -113,6 +125,103 @@ public class TestHierarchy {
         compare(NONE, h, avx, avy);
     }
 
+    @Test public void hierarchy_implied_01() {
+        Hierarchy clearance = Hierarchy.create("clearance", "U", "C", "S", "TS");
+        AtomicInteger lookups = new AtomicInteger();
+        HierarchyGetter getter = a->{
+            lookups.incrementAndGet();
+            return a.equals(clearance.attribute()) ? clearance : null;
+        };
+        AttributeValueSet attrs = AttributeValueSet.of(AE.parseAttrValueList("clearance=S, role=manager"));
+        CxtABAC cxt = CxtABAC.context(attrs, getter, DatasetGraphFactory.empty());
+        assertEquals(Set.of(ValueTerm.value("U"), ValueTerm.value("C"), ValueTerm.value("S")),
+                     cxt.getImpliedValues(clearance.attribute()));
+        assertEquals(Set.of(ValueTerm.value("manager")), cxt.getImpliedValues(new Attribute("role")));
+        assertEquals(Set.of(), cxt.getImpliedValues(new Attribute("other")));
+        // Calculated once.
+        cxt.getImpliedValues(clearance.attribute());
+        assertEquals(2, lookups.get());
+    }
+
+    @Test public void hierarchy_implied_eval() {
+        Hierarchy clearance = Hierarchy.create("clearance", "U", "C", "S", "TS");
+        HierarchyGetter getter = a->a.equals(clearance.attribute()) ? clearance : null;
+        AttributeValueSet attrs = AttributeValueSet.of(AE.parseAttrValueList("clearance=S"));
+        CxtABAC cxt = CxtABAC.context(attrs, getter, DatasetGraphFactory.empty());
+        assertEquals(ValueTerm.TRUE, AE.parseExpr("clearance=U").eval(cxt));
+        assertEquals(ValueTerm.TRUE, AE.parseExpr("clearance=S").eval(cxt));
+        assertEquals(ValueTerm.FALSE, AE.parseExpr("clearance=TS").eval(cxt));
+        assertEquals(ValueTerm.FALSE, AE.parseExpr("clearance=X").eval(cxt));
+    }
+
+    // Partial order: U < C < S < TS and S < S-UK < S-UK-EYES; C < C-EU.
+    Hierarchy dag = Hierarchy.fromString("clearance: U, C, S, TS; S, S-UK, S-UK-EYES; C, C-EU");
+
+    @Test public void hierarchy_dag_01() {
+        checkHierarchy(dag);
+        assertFalse(dag.isLinear());
+        assertTrue(h.isLinear());
+        assertEquals(3, dag.chains().size());
+        assertEquals(List.of("U", "C", "S", "C-EU", "TS", "S-UK", "S-UK-EYES"), strings(dag.values()));
+    }
+
+    @Test public void hierarchy_dag_compare() {
+        compare(EQ, dag, ValueTerm.value("S"), ValueTerm.value("S"));
+        compare(LT, dag, ValueTerm.value("U"), ValueTerm.value("S-UK-EYES"));
+        compare(GT, dag, ValueTerm.value("S-UK"), ValueTerm.value("C"));
+        compare(NONE, dag, ValueTerm.value("TS"), ValueTerm.value("S-UK"));
+        compare(NONE, dag, ValueTerm.value("C-EU"), ValueTerm.value("S"));
+        compare(NONE, dag, ValueTerm.value("C-EU"), ValueTerm.value("X"));
+    }
+
+    @Test public void hierarchy_dag_below() {
+        assertEquals(List.of("U", "C", "S", "S-UK"), strings(dag.valuesBelow(ValueTerm.value("S-UK"))));
+        assertEquals(List.of("U", "C", "C-EU"), strings(dag.valuesBelow(ValueTerm.value("C-EU"))));
+        assertEquals(List.of(), dag.valuesBelow(ValueTerm.value("X")));
+    }
+
+    @Test public void hierarchy_dag_diamond() {
+        // Two routes from U to TS.
+        Hierarchy diamond = Hierarchy.fromString("level: U, A, TS; U, B, TS");
+        assertEquals(List.of("U", "A", "B", "TS"), strings(diamond.valuesBelow(ValueTerm.value("TS"))));
+        compare(NONE, diamond, ValueTerm.value("A"), ValueTerm.value("B"));
+        compare(LT, diamond, ValueTerm.value("B"), ValueTerm.value("TS"));
+    }
+
+    @Test public void hierarchy_dag_cycle() {
+        assertThrows(IllegalArgumentException.class, () -> Hierarchy.fromString("level: A, B; B, C; C, A"));
+    }
+
+    @Test public void hierarchy_dag_implied() {
+        HierarchyGetter getter = a->a.equals(dag.attribute()) ? dag : null;
+        AttributeValueSet attrs = AttributeValueSet.of(AE.parseAttrValueList("clearance=S-UK, clearance=C-EU"));
+        CxtABAC cxt = CxtABAC.context(attrs, getter, DatasetGraphFactory.empty());
+        assertEquals(ValueTerm.TRUE, AE.parseExpr("clearance=S").eval(cxt));
+        assertEquals(ValueTerm.TRUE, AE.parseExpr("clearance=C-EU").eval(cxt));
+        assertEquals(ValueTerm.FALSE, AE.parseExpr("clearance=TS").eval(cxt));
+        assertEquals(ValueTerm.FALSE, AE.parseExpr("clearance=S-UK-EYES").eval(cxt));
+    }
+
+    @Test public void hierarchy_dag_store() {
+        String store = """
+                PREFIX authz: <http://telicent.io/security#>
+                [] authz:hierarchy [ authz:attribute "clearance" ;
+                                     authz:attributeValues "U, C, S, TS" ] .
+                [] authz:hierarchy [ authz:attribute "clearance" ;
+                                     authz:attributeValues "S, S-UK, S-UK-EYES; C, C-EU" ] .
+                """;
+        Graph graph = RDFParser.fromString(store).lang(Lang.TTL).toGraph();
+        AttributesStore attributesStore = Attributes.buildStore(graph);
+        Hierarchy hierarchy = attributesStore.getHierarchy(new Attribute("clearance"));
+        assertEquals(Set.copyOf(dag.values()), Set.copyOf(hierarchy.values()));
+        compare(LT, hierarchy, ValueTerm.value("C"), ValueTerm.value("S-UK-EYES"));
+        compare(NONE, hierarchy, ValueTerm.value("TS"), ValueTerm.value("C-EU"));
+    }
+
+    private static List<String> strings(List<ValueTerm> values) {
+        return values.stream().map(ValueTerm::getString).toList();
+    }
+
     private static void compare(Comparison expected, Hierarchy h, ValueTerm av1, ValueTerm av2) {
         Comparison actual = h.compareTo(av1, av2);
         assertEquals(expected, actual);
@@ -17,9 +17,14 @@
 package io.telicent.jena.abac;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.telicent.jena.abac.labels.Labels;
 import io.telicent.jena.abac.labels.LabelsStore;
@@ -38,6 +43,7 @@ public class TestLabelMatch {
     private static Node p1 = SSE.parseNode(":p1");
     private static Node o = SSE.parseNode(":o");
     private static Node o1 = SSE.parseNode(":o1");
+    private static Node g = SSE.parseNode(":g");
     static {
         labels.add(s, p, o, "spo");
         labels.add(s, p, ANY_MARKER, "sp_");
@@ -53,6 +59,7 @@ public class TestLabelMatch {
         Triple t = triple("(:s1 :p1 :o1)");
         List<String> x = emptyLabelStore.labelsForTriples(t);
         assertEquals(List.of(), x);
+        assertEquals(List.of(), emptyLabelStore.labelsFor(null, t.getSubject(), t.getPredicate(), t.getObject()));
     }
 
     @Test public void label_match_spo() {
@@ -76,10 +83,89 @@ public class TestLabelMatch {
         match(s1, p1, o1, "???", "___");
     }
 
+    @Test public void label_match_manyExact() {
+        // Many exact labels: triples without one fall through to the patterns.
+        LabelsStore store = Labels.createLabelsStore();
+        int N = 1000;
+        for ( int i = 0 ; i < N ; i++ )
+            store.add(triple("(:s"+i+" :p "+i+")"), "exact"+i);
+        store.add(triple("(ANY :p ANY)"), "pattern");
+        for ( int i = 0 ; i < N ; i++ ) {
+            assertEquals(List.of("exact"+i), store.labelsForTriples(triple("(:s"+i+" :p "+i+")")));
+            assertEquals(List.of("pattern"), store.labelsForTriples(triple("(:s"+i+" :p "+(i+1)+")")));
+        }
+    }
+
+    @Test public void label_match_offHeap() {
+        boolean b = ABAC.labelsExactOffHeap;
+        try {
+            ABAC.labelsExactOffHeap = true;
+            LabelsStore store = Labels.createLabelsStore();
+            store.add(triple("(:s :p :o)"), "spo");
+            store.add(triple("(:s :p :o)"), "spo2");
+            store.add(triple("(:s :p 1)"), "int");
+            store.add(triple("(:s :p '1')"), "string");
+            store.add(triple("(:s :p 'abc'@en)"), "lang");
+            store.add(triple("(:s :p ANY)"), "sp_");
+            ABACTests.assertEqualsUnordered(List.of("spo", "spo2"), store.labelsForTriples(triple("(:s :p :o)")));
+            assertEquals(List.of("int"), store.labelsForTriples(triple("(:s :p 1)")));
+            assertEquals(List.of("string"), store.labelsForTriples(triple("(:s :p '1')")));
+            assertEquals(List.of("lang"), store.labelsForTriples(triple("(:s :p 'abc'@en)")));
+            assertEquals(List.of("sp_"), store.labelsForTriples(triple("(:s :p 'abc')")));
+            assertEquals(List.of("sp_"), store.labelsForTriples(triple("(:s :p :o1)")));
+            assertEquals(List.of(), store.labelsForTriples(triple("(:s1 :p :o)")));
+
+            // Enough entries to grow the table.
+            int N = 5000;
+            for ( int i = 0 ; i < N ; i++ )
+                store.add(triple("(:x"+i+" :p "+i+")"), "exact"+i);
+            for ( int i = 0 ; i < N ; i++ )
+                assertEquals(List.of("exact"+i), store.labelsForTriples(triple("(:x"+i+" :p "+i+")")));
+
+            store.remove(triple("(:s :p :o)"));
+            assertEquals(List.of("sp_"), store.labelsForTriples(triple("(:s :p :o)")));
+            assertEquals(List.of("int"), store.labelsForTriples(triple("(:s :p 1)")));
+        } finally {
+            ABAC.labelsExactOffHeap = b;
+        }
+    }
+
+    @Test public void label_match_offHeap_concurrent() throws Exception {
+        boolean b = ABAC.labelsExactOffHeap;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ABAC.labelsExactOffHeap = true;
+            LabelsStore store = Labels.createLabelsStore();
+            store.add(triple("(:s :p :o)"), "spo");
+            AtomicBoolean running = new AtomicBoolean(true);
+            // Lookups while the index is rebuilt, and the tables of earlier indexes reused.
+            Future<Integer> reader = executor.submit(()->{
+                int count = 0;
+                while ( running.get() ) {
+                    assertEquals(List.of("spo"), store.labelsForTriples(triple("(:s :p :o)")));
+                    count++;
+                }
+                return count;
+            });
+            for ( int i = 0 ; i < 500 ; i++ )
+                store.add(triple("(:x"+i+" :p "+i+")"), "exact"+i);
+            running.set(false);
+            assertTrue(reader.get() > 0);
+            for ( int i = 0 ; i < 500 ; i++ )
+                assertEquals(List.of("exact"+i), store.labelsForTriples(triple("(:x"+i+" :p "+i+")")));
+        } finally {
+            executor.shutdownNow();
+            ABAC.labelsExactOffHeap = b;
+        }
+    }
+
     private void match(Node s, Node p, Node o, String...expected) {
         Triple triple = Triple.create(s, p, o);
         List<String> x = labels.labelsForTriples(triple);
         List<String> e = Arrays.asList(expected);
         ABACTests.assertEqualsUnordered(e, x);
+        // Quad-style lookup, graph is ignored.
+        ABACTests.assertEqualsUnordered(e, labels.labelsFor(null, s, p, o));
+        ABACTests.assertEqualsUnordered(e, labels.labelsFor(g, s, p, o));
     }
 }
@@ -0,0 +1,196 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac;
+
+import static org.apache.jena.sparql.sse.SSE.parseTriple;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.telicent.jena.abac.core.Attributes;
+import io.telicent.jena.abac.core.AttributesStore;
+import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsCompaction;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.exec.UpdateExec;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.sparql.sse.SSE;
+import org.junit.jupiter.api.Test;
+
+public class TestLabelsRemove {
+
+    private static Triple triple1 = parseTriple("(:s :p :o1)");
+    private static Triple triple2 = parseTriple("(:s :q :o2)");
+    private static Triple triple3 = parseTriple("(:z :p :o3)");
+
+    @Test public void labelsRemove_1() {
+        LabelsStore store = Labels.createLabelsStore();
+        store.add(triple1, "label1");
+        store.add(triple2, "label2");
+        store.remove(triple1);
+        assertEquals(List.of(), store.labelsForTriples(triple1));
+        assertEquals(List.of("label2"), store.labelsForTriples(triple2));
+    }
+
+    @Test public void labelsRemove_pattern() {
+        LabelsStore store = Labels.createLabelsStore();
+        Triple pattern = parseTriple("(:s ANY ANY)");
+        store.add(pattern, "label1");
+        store.add(triple1, "label2");
+        // Only the entry for the pattern is removed.
+        store.remove(pattern);
+        assertEquals(List.of("label2"), store.labelsForTriples(triple1));
+        assertEquals(List.of(), store.labelsForTriples(triple2));
+    }
+
+    @Test public void labelsRemove_noEntry() {
+        LabelsStore store = Labels.createLabelsStore();
+        store.add(triple1, "label1");
+        store.remove(triple2);
+        assertEquals(List.of("label1"), store.labelsForTriples(triple1));
+    }
+
+    @Test public void labelsRemove_update() {
+        DatasetGraphABAC dsgz = setup();
+        update(dsgz, "DELETE DATA { :s :p :o1 }");
+        assertEquals(List.of(), dsgz.labelsStore().labelsForTriples(triple1));
+        assertEquals(List.of("label2"), dsgz.labelsStore().labelsForTriples(triple2));
+        // Pattern labels stay.
+        assertEquals(List.of("pattern"), dsgz.labelsStore().labelsForTriples(parseTriple("(:z :p :o1)")));
+    }
+
+    @Test public void labelsRemove_updateWhere() {
+        DatasetGraphABAC dsgz = setup();
+        update(dsgz, "DELETE WHERE { :s ?p ?o }");
+        assertEquals(List.of(), dsgz.labelsStore().labelsForTriples(triple1));
+        assertEquals(List.of(), dsgz.labelsStore().labelsForTriples(triple2));
+        assertEquals(List.of("label3"), dsgz.labelsStore().labelsForTriples(triple3));
+    }
+
+    @Test public void labelsRemove_updateStillInData() {
+        DatasetGraphABAC dsgz = setup();
+        // The triple is also in a named graph.
+        update(dsgz, "INSERT DATA { GRAPH :g { :s :p :o1 } }");
+        update(dsgz, "DELETE DATA { :s :p :o1 }");
+        assertEquals(List.of("label1"), dsgz.labelsStore().labelsForTriples(triple1));
+    }
+
+    @Test public void labelsRemove_abort() {
+        DatasetGraphABAC dsgz = setup();
+        dsgz.begin(TxnType.WRITE);
+        dsgz.delete(Quad.defaultGraphIRI, triple1.getSubject(), triple1.getPredicate(), triple1.getObject());
+        dsgz.abort();
+        dsgz.end();
+        assertEquals(List.of("label1"), dsgz.labelsStore().labelsForTriples(triple1));
+    }
+
+    @Test public void labelsRemove_deleteAny() {
+        DatasetGraphABAC dsgz = setup();
+        // More than one slice of deletes.
+        int N = 2500;
+        List<Triple> triples = new ArrayList<>();
+        for ( int i = 0 ; i < N ; i++ )
+            triples.add(Triple.create(SSE.parseNode(":x"), SSE.parseNode(":p"), NodeFactory.createLiteralByValue(i, XSDDatatype.XSDinteger)));
+        dsgz.executeWrite(()->triples.forEach(t->dsgz.add(Quad.create(Quad.defaultGraphIRI, t))));
+        triples.forEach(t->dsgz.labelsStore().add(t, "labelx"));
+
+        dsgz.executeWrite(()->dsgz.deleteAny(Node.ANY, SSE.parseNode(":x"), Node.ANY, Node.ANY));
+        assertTrue(dsgz.calculateRead(()->!dsgz.contains(Node.ANY, SSE.parseNode(":x"), Node.ANY, Node.ANY)));
+        assertEquals(List.of(), dsgz.labelsStore().labelsForTriples(triples.get(0)));
+        assertEquals(List.of(), dsgz.labelsStore().labelsForTriples(triples.get(N-1)));
+        assertEquals(List.of("label1"), dsgz.labelsStore().labelsForTriples(triple1));
+    }
+
+    @Test public void labelsRemove_deleteAny_unionGraph() {
+        DatasetGraphABAC dsgz = setup();
+        Quad quad = SSE.parseQuad("(:g :x :p 1)");
+        Triple triple = quad.asTriple();
+        dsgz.executeWrite(()->dsgz.add(quad));
+        dsgz.labelsStore().add(triple, "labelx");
+        // The union graph is not a graph that can be deleted from.
+        assertTimeoutPreemptively(Duration.ofSeconds(10),
+                                  ()->dsgz.executeWrite(()->dsgz.deleteAny(Quad.unionGraph, SSE.parseNode(":x"), Node.ANY, Node.ANY)));
+        assertTrue(dsgz.calculateRead(()->!dsgz.contains(quad)));
+        assertEquals(List.of(), dsgz.labelsStore().labelsForTriples(triple));
+        assertEquals(List.of("label1"), dsgz.labelsStore().labelsForTriples(triple1));
+    }
+
+    @Test public void labelsCompaction_1() {
+        DatasetGraphABAC dsgz = setup();
+        // Change the base dataset directly.
+        DatasetGraph dsg = dsgz.getBase();
+        dsg.executeWrite(()->{
+            dsg.getDefaultGraph().delete(triple1);
+            dsg.getDefaultGraph().delete(triple3);
+        });
+        assertEquals(List.of("label1"), dsgz.labelsStore().labelsForTriples(triple1));
+        LabelsCompaction compaction = new LabelsCompaction(dsgz);
+        assertEquals(2, compaction.compact());
+        assertEquals(List.of(), dsgz.labelsStore().labelsForTriples(triple1));
+        assertEquals(List.of("label2"), dsgz.labelsStore().labelsForTriples(triple2));
+        assertEquals(List.of("pattern"), dsgz.labelsStore().labelsForTriples(triple3));
+        // Nothing more to do.
+        assertEquals(0, compaction.compact());
+    }
+
+    @Test public void labelsCompaction_steps() {
+        DatasetGraphABAC dsgz = setup();
+        update(dsgz, "CLEAR DEFAULT");
+        LabelsCompaction compaction = new LabelsCompaction(dsgz);
+        int steps = 0;
+        while ( ! compaction.step(Duration.ZERO) )
+            steps++;
+        // At least one entry per step.
+        assertTrue(steps >= 2, "Steps: "+steps);
+        assertEquals(3, compaction.removed());
+        assertEquals(List.of(), dsgz.labelsStore().labelsForTriples(triple2));
+    }
+
+    private static DatasetGraphABAC setup() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        dsg.executeWrite(()->{
+            dsg.getDefaultGraph().add(triple1);
+            dsg.getDefaultGraph().add(triple2);
+            dsg.getDefaultGraph().add(triple3);
+        });
+        LabelsStore labels = Labels.createLabelsStore();
+        labels.add(triple1, "label1");
+        labels.add(triple2, "label2");
+        labels.add(triple3, "label3");
+        labels.add(parseTriple("(:z :p ANY)"), "pattern");
+        AttributesStore attributesStore = Attributes.buildStore(GraphFactory.createDefaultGraph());
+        return ABAC.authzDataset(dsg, labels, "*", attributesStore);
+    }
+
+    private static void update(DatasetGraph dsg, String updateString) {
+        String us = "PREFIX : <http://example/> "+updateString;
+        dsg.executeWrite(()->UpdateExec.dataset(dsg).update(us).execute());
+    }
+}
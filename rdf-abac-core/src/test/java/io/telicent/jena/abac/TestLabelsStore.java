@@ -20,16 +20,24 @@ import static io.telicent.jena.abac.ABACTests.assertEqualsUnordered;
 import static org.apache.jena.sparql.sse.SSE.parseTriple;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import io.telicent.jena.abac.core.VocabAuthzLabels;
 import io.telicent.jena.abac.labels.Labels;
 import io.telicent.jena.abac.labels.LabelsIndex;
 import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.atlas.lib.Lib;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.system.Txn;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
@@ -73,6 +81,120 @@ public class TestLabelsStore {
         assertEquals(List.of("label1"), x);
     }
 
+    @Test public void labelsStore_staleness() {
+        long x = ABAC.labelsIndexStaleness;
+        try {
+            ABAC.labelsIndexStaleness = 60_000;
+            LabelsStore store = Labels.createLabelsStore();
+            store.add(triple1, "label1");
+            assertEquals(List.of(), store.labelsForTriples(triple1));
+            store.add(triple2, "label2");
+            // Previous index, or the new one if the background rebuild has finished.
+            List<String> labels = store.labelsForTriples(triple2);
+            assertTrue(labels.isEmpty() || labels.equals(List.of("label2")));
+            // The background rebuild catches up.
+            long finish = System.currentTimeMillis() + 5_000;
+            while ( ! store.labelsForTriples(triple2).equals(List.of("label2")) ) {
+                assertTrue(System.currentTimeMillis() < finish, "Index not rebuilt");
+                Lib.sleep(10);
+            }
+            assertEquals(List.of("label1"), store.labelsForTriples(triple1));
+        } finally {
+            ABAC.labelsIndexStaleness = x;
+        }
+    }
+
+    @Test public void labelsStore_staleness_bound() {
+        long x = ABAC.labelsIndexStaleness;
+        try {
+            ABAC.labelsIndexStaleness = 1;
+            LabelsStore store = Labels.createLabelsStore();
+            store.add(triple1, "label1");
+            Lib.sleep(5);
+            // Beyond the staleness bound - rebuilt by the reader.
+            assertEquals(List.of("label1"), store.labelsForTriples(triple1));
+        } finally {
+            ABAC.labelsIndexStaleness = x;
+        }
+    }
+
+    @Test public void labelsStore_otherThread() throws InterruptedException {
+        LabelsStore store = Labels.createLabelsStore();
+        assertEquals(List.of(), store.labelsForTriples(triple1));
+        // Change in a transaction started outside the store, on another thread.
+        Thread writer = new Thread(()->Txn.executeWrite(store.getTransactional(), ()->store.add(triple1, "label1")));
+        writer.start();
+        writer.join();
+        assertEquals(List.of("label1"), store.labelsForTriples(triple1));
+    }
+
+    @Test public void labelsStore_export() {
+        LabelsStore store = Labels.createLabelsStore();
+        store.add(triple1, List.of("label1", "label2"));
+        store.add(triple2, "label3");
+        store.add(parseTriple("(:s1 ANY ANY)"), "label4");
+        assertEquals(3, exportPatterns(store, null, 0, -1));
+        assertEquals(7, exportTriples(store, null, 0, -1));
+        // Pages
+        assertEquals(2, exportPatterns(store, null, 0, 2));
+        assertEquals(1, exportPatterns(store, null, 2, 2));
+        assertEquals(0, exportPatterns(store, null, 3, 2));
+        // Filter
+        assertEquals(2, exportPatterns(store, Labels.parseTriplePattern("<http://example/s> ANY ANY"), 0, -1));
+        assertEquals(1, exportPatterns(store, Labels.parseTriplePattern("<http://example/s> ANY 123"), 0, -1));
+        assertEquals(1, exportPatterns(store, Labels.parseTriplePattern("<http://example/s1> ANY ANY"), 0, -1));
+        assertEquals(0, exportPatterns(store, Labels.parseTriplePattern("ANY <http://example/q> ANY"), 0, -1));
+        assertEquals(1, exportPatterns(store, Labels.parseTriplePattern("<http://example/s> ANY ANY"), 1, 5));
+    }
+
+    @Test public void labelsStore_export_pages() {
+        LabelsStore store = Labels.createLabelsStore();
+        for ( int i = 0 ; i < 50 ; i++ )
+            store.add(parseTriple("(:s"+i+" :p "+i+")"), "label"+i);
+        List<String> all = exportPatternStrings(store, 0, 50);
+        assertEquals(50, all.size());
+        assertEquals(all.stream().sorted().toList(), all);
+
+        // Pages from separate transactions fit together.
+        List<String> pages = new ArrayList<>();
+        for ( int offset = 0 ; offset < 50 ; offset += 7 )
+            pages.addAll(exportPatternStrings(store, offset, 7));
+        assertEquals(all, pages);
+
+        // Earlier pages stay the same when a later pattern is added.
+        List<String> page1 = exportPatternStrings(store, 7, 7);
+        store.add(parseTriple("(:z :p 1)"), "label");
+        assertEquals(page1, exportPatternStrings(store, 7, 7));
+        // Offset without a limit.
+        assertEquals(all.subList(45, 50), exportPatternStrings(store, 45, -1).subList(0, 5));
+    }
+
+    private static List<String> exportPatternStrings(LabelsStore store, long offset, long limit) {
+        List<String> patterns = new ArrayList<>();
+        Txn.executeRead(store.getTransactional(), ()->store.export(new StreamRDFBase() {
+            @Override public void triple(Triple triple) {
+                if ( triple.getPredicate().equals(VocabAuthzLabels.pPattern) )
+                    patterns.add(triple.getObject().getLiteralLexicalForm());
+            }
+        }, null, offset, limit));
+        return patterns;
+    }
+
+    private static long exportPatterns(LabelsStore store, Triple filter, long offset, long limit) {
+        Graph graph = export(store, filter, offset, limit);
+        return graph.find(null, VocabAuthzLabels.pPattern, null).toList().size();
+    }
+
+    private static long exportTriples(LabelsStore store, Triple filter, long offset, long limit) {
+        return export(store, filter, offset, limit).size();
+    }
+
+    private static Graph export(LabelsStore store, Triple filter, long offset, long limit) {
+        Graph graph = GraphFactory.createDefaultGraph();
+        Txn.executeRead(store.getTransactional(), ()->store.export(StreamRDFLib.graph(graph), filter, offset, limit));
+        return graph;
+    }
+
     private static String labelsGraph = """
             PREFIX foo: <http://example/>
             PREFIX authz: <http://telicent.io/security#>
@@ -0,0 +1,98 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac;
+
+import static io.telicent.jena.abac.ABACTests.assertEqualsUnordered;
+import static org.apache.jena.sparql.sse.SSE.parseNode;
+import static org.apache.jena.sparql.sse.SSE.parseTriple;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import io.telicent.jena.abac.core.VocabAuthzLabels;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsIndex;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.atlas.lib.Pair;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.junit.jupiter.api.Test;
+
+public class TestLabelsStoreBuilder {
+
+    private static Triple triple1 = parseTriple("(:s :p 123)");
+    private static Triple triple2 = parseTriple("(:s :p 'xyz')");
+
+    @Test public void labelsBuilder_1() {
+        LabelsStore store = Labels.builder().build();
+        assertEquals(List.of(), store.labelsForTriples(triple1));
+    }
+
+    @Test public void labelsBuilder_2() {
+        LabelsStore store = Labels.builder()
+                .add(triple1, "label1")
+                .add(triple2, "label2")
+                .add(parseTriple("(:s ANY ANY)"), "label3")
+                .build();
+        assertEquals(List.of("label1"), store.labelsForTriples(triple1));
+        assertEquals(List.of("label2"), store.labelsForTriples(triple2));
+        assertEquals(List.of("label3"), store.labelsForTriples(parseTriple("(:s :q :o)")));
+    }
+
+    @Test public void labelsBuilder_samePattern() {
+        LabelsStore store = Labels.builder()
+                .add(triple1, "label1")
+                .add(triple1, List.of("label2", "label1"))
+                .build();
+        assertEqualsUnordered(List.of("label1", "label2"), store.labelsForTriples(triple1));
+        // One entry for the pattern.
+        assertEquals(1, store.getGraph().find(null, VocabAuthzLabels.pPattern, null).toList().size());
+    }
+
+    @Test public void labelsBuilder_stream() {
+        LabelsStore store = Labels.builder()
+                .batchSize(7)
+                .addAll(IntStream.range(0, 100).mapToObj(i->Pair.create(triple(i), List.of("label"+(i%3)))))
+                .build();
+        for ( int i = 0 ; i < 100 ; i++ )
+            assertEquals(List.of("label"+(i%3)), store.labelsForTriples(triple(i)));
+    }
+
+    @Test public void labelsBuilder_storage() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        Node graphName = parseNode(":labels");
+        LabelsStore store = Labels.builder().storage(dsg, graphName).add(triple1, "label1").build();
+        assertEquals(List.of("label1"), store.labelsForTriples(triple1));
+        assertEquals(graphName, Labels.labelsGraphName(store, dsg));
+        // The store can be added to after building.
+        store.add(triple2, "label2");
+        assertEquals(List.of("label2"), store.labelsForTriples(triple2));
+    }
+
+    @Test public void labelsBuilder_badPattern() {
+        assertThrows(LabelsIndex.classOfInvalidPatternException(),
+                     ()->Labels.builder().add(parseTriple("(ANY ANY :o)"), "label1"));
+    }
+
+    private static Triple triple(int i) {
+        return parseTriple("(:s"+i+" :p "+i+")");
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac;
+
+import static org.apache.jena.sparql.sse.SSE.parseQuad;
+import static org.apache.jena.sparql.sse.SSE.parseTriple;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import io.telicent.jena.abac.core.Attributes;
+import io.telicent.jena.abac.core.AttributesStore;
+import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.core.DatasetGraphFilteredTDB2;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.logging.LogCtl;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.riot.RIOT;
+import org.apache.jena.shared.AddDeniedException;
+import org.apache.jena.shared.DeleteDeniedException;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.engine.QueryEngineRegistry;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.update.UpdateAction;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/** Label filtering with TDB2 storage, using the TDB2 tuple filter. */
+public class TestLabelsTDB2 {
+    static {
+        JenaSystem.init();
+        LogCtl.setLog4j2();
+        RIOT.getContext().set(RIOT.symTurtleDirectiveStyle, "sparql");
+    }
+
+    private final static String DIR = "src/test/files/labels/";
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("labels_files")
+    public void labelsTDB2(String filename, Integer expected) {
+        ABACTests.runTest(DIR+filename, DatabaseMgr.createDatasetGraph(), expected);
+    }
+
+    public static Stream<Arguments> labels_files() {
+        return TestLabels.labels_files();
+    }
+
+    @Test public void tdb2_filteredView() {
+        DatasetGraphABAC dsgz = setup();
+        DatasetGraph dsgr = ABAC.requestDataset(dsgz, attributes("a"), dsgz.attributesStore());
+        assertTrue(dsgr instanceof DatasetGraphFilteredTDB2);
+        assertEquals("QueryEngineFactoryFilteredTDB2", engineFactoryName(dsgr, "SELECT * { ?s ?p ?o }"));
+        assertEquals("QueryEngineFactoryFilteredTDB2", engineFactoryName(dsgr, "SELECT * { FILTER EXISTS { ?s ?p ?o } }"));
+        // Decided by the dataset. Named graphs are checked when the query is executed.
+        assertEquals("QueryEngineFactoryFilteredTDB2", engineFactoryName(dsgr, "SELECT * { GRAPH ?g { ?s ?p ?o } }"));
+        assertEquals("QueryEngineMainFactory", engineFactoryName(dsgr, "SELECT * FROM <http://example/g> { ?s ?p ?o }"));
+    }
+
+    @Test public void tdb2_query_01() {
+        DatasetGraphABAC dsgz = setup();
+        assertEquals(1, count(dsgz, "a", "SELECT * { ?s ?p ?o }"));
+        assertEquals(2, count(dsgz, "a, b", "SELECT * { ?s ?p ?o }"));
+        assertEquals(0, count(dsgz, "", "SELECT * { ?s ?p ?o }"));
+    }
+
+    @Test public void tdb2_query_02() {
+        DatasetGraphABAC dsgz = setup();
+        assertEquals(0, count(dsgz, "a", "SELECT * { :s :q ?o }"));
+        assertEquals(1, count(dsgz, "a", "SELECT * { FILTER EXISTS { :s :p ?o } }"));
+    }
+
+    @Test public void tdb2_query_namedGraph() {
+        // Evaluated on the filtered view, which has no named graphs.
+        DatasetGraphABAC dsgz = setup();
+        assertEquals(0, count(dsgz, "a", "SELECT * { GRAPH ?g { ?s ?p ?o } }"));
+        assertEquals(0, count(dsgz, "a", "SELECT * { FILTER EXISTS { GRAPH ?g { ?s ?p ?o } } }"));
+        assertEquals(0, count(dsgz, "a", "SELECT ?g { GRAPH ?g { } }"));
+        assertEquals(1, count(dsgz, "a", "SELECT * { ?s ?p ?o FILTER NOT EXISTS { GRAPH ?g { ?s ?p ?o } } }"));
+    }
+
+    @Test public void tdb2_inlineLiteral() {
+        // TDB2 stores "01"^^xsd:integer as the value 1, the same NodeId as "1"^^xsd:integer.
+        DatasetGraph dsg = DatabaseMgr.createDatasetGraph();
+        dsg.executeWrite(()->dsg.getDefaultGraph().add(parseTriple("(:s :p 1)")));
+        LabelsStore labels = Labels.createLabelsStore();
+        labels.add(parseTriple("(:s :p ANY)"), "a");
+        labels.add(parseTriple("(:s :p '01'^^xsd:integer)"), "b");
+        AttributesStore attributesStore = Attributes.buildStore(GraphFactory.createDefaultGraph());
+        DatasetGraphABAC dsgz = ABAC.authzDataset(dsg, labels, "*", attributesStore);
+
+        long countTDB2 = count(dsgz, "a", "SELECT * { ?s ?p ?o }");
+        DatasetGraph dsgr = ABAC.requestDataset(dsgz, attributes("a"), dsgz.attributesStore());
+        long countFind = dsgr.calculateRead(()->Iter.count(dsgr.find()));
+        assertEquals(1, countTDB2);
+        assertEquals(countFind, countTDB2);
+        boolean b = ABAC.labelFilterTDB2;
+        try {
+            ABAC.labelFilterTDB2 = false;
+            assertEquals(countTDB2, count(dsgz, "a", "SELECT * { ?s ?p ?o }"));
+        } finally {
+            ABAC.labelFilterTDB2 = b;
+        }
+    }
+
+    @Test public void tdb2_dataAdded() {
+        DatasetGraphABAC dsgz = setup();
+        // A label for a node that is not in the data yet.
+        dsgz.labelsStore().add(parseTriple("(:s :p :z)"), "b");
+        assertEquals(1, count(dsgz, "a", "SELECT * { ?s ?p ?o }"));
+        DatasetGraph dsg = dsgz.getBase();
+        dsg.executeWrite(()->dsg.getDefaultGraph().add(parseTriple("(:s :p :z)")));
+        assertEquals(1, count(dsgz, "a", "SELECT * { ?s ?p ?o }"));
+        assertEquals(3, count(dsgz, "a, b", "SELECT * { ?s ?p ?o }"));
+    }
+
+    @Test public void tdb2_switchOff() {
+        boolean b = ABAC.labelFilterTDB2;
+        try {
+            ABAC.labelFilterTDB2 = false;
+            DatasetGraphABAC dsgz = setup();
+            DatasetGraph dsgr = ABAC.requestDataset(dsgz, attributes("a"), dsgz.attributesStore());
+            assertTrue(! ( dsgr instanceof DatasetGraphFilteredTDB2 ));
+            assertEquals(1, count(dsgz, "a", "SELECT * { ?s ?p ?o }"));
+        } finally {
+            ABAC.labelFilterTDB2 = b;
+        }
+    }
+
+    @Test public void tdb2_exactOffHeap() {
+        boolean b = ABAC.labelsExactOffHeap;
+        try {
+            ABAC.labelsExactOffHeap = true;
+            DatasetGraphABAC dsgz = setup();
+            assertEquals(1, count(dsgz, "a", "SELECT * { ?s ?p ?o }"));
+            assertEquals(2, count(dsgz, "a, b", "SELECT * { ?s ?p ?o }"));
+            assertEquals(1, count(dsgz, "b", "SELECT * { ?s ?p ?o }"));
+        } finally {
+            ABAC.labelsExactOffHeap = b;
+        }
+    }
+
+    @Test public void tdb2_labelsInDataset() {
+        DatasetGraph dsg = DatabaseMgr.createDatasetGraph();
+        Node labelsGraphName = NodeFactory.createURI("http://example/labels");
+        LabelsStore labels = Labels.createLabelsStore(dsg, labelsGraphName);
+        dsg.executeWrite(()->{
+            dsg.getDefaultGraph().add(parseTriple("(:s :p :o1)"));
+            dsg.getDefaultGraph().add(parseTriple("(:s :q :o2)"));
+            labels.add(parseTriple("(:s :p ANY)"), "a");
+            labels.add(parseTriple("(:s :q :o2)"), "b");
+        });
+        // Labels and data are in the same dataset.
+        assertTrue(dsg.calculateRead(()->!dsg.getGraph(labelsGraphName).isEmpty()));
+
+        AttributesStore attributesStore = Attributes.buildStore(GraphFactory.createDefaultGraph());
+        DatasetGraphABAC dsgz = ABAC.authzDataset(dsg, labels, "*", attributesStore);
+        assertEquals(1, count(dsgz, "a", "SELECT * { ?s ?p ?o }"));
+        assertEquals(2, count(dsgz, "a, b", "SELECT * { ?s ?p ?o }"));
+        // The labels are not visible as data.
+        assertEquals(0, count(dsgz, "a, b", "SELECT * { GRAPH <http://example/labels> { ?s ?p ?o } }"));
+        DatasetGraph dsgr = ABAC.requestDataset(dsgz, attributes("a, b"), dsgz.attributesStore());
+        assertEquals(2, (long)dsgr.calculateRead(()->Iter.count(dsgr.find())));
+        // One transaction.
+        dsgz.executeRead(()->assertTrue(dsg.isInTransaction()));
+    }
+
+    @Test public void tdb2_labelsInDataset_update() {
+        DatasetGraph dsg = DatabaseMgr.createDatasetGraph();
+        Node labelsGraphName = NodeFactory.createURI("http://example/labels");
+        LabelsStore labels = Labels.createLabelsStore(dsg, labelsGraphName);
+        dsg.executeWrite(()->labels.add(parseTriple("(:s :p ANY)"), "a"));
+        AttributesStore attributesStore = Attributes.buildStore(GraphFactory.createDefaultGraph());
+        DatasetGraphABAC dsgz = ABAC.authzDataset(dsg, labels, "*", attributesStore);
+        long size = dsg.calculateRead(()->dsg.getGraph(labelsGraphName).size());
+
+        // Changes to the labels graph are refused.
+        String insert = "INSERT DATA { GRAPH <http://example/labels> { <http://example/x> <http://example/y> 1 } }";
+        assertThrows(AddDeniedException.class, ()->dsgz.executeWrite(()->UpdateAction.parseExecute(insert, dsgz)));
+        String delete = "DELETE WHERE { GRAPH <http://example/labels> { ?s ?p ?o } }";
+        assertThrows(DeleteDeniedException.class, ()->dsgz.executeWrite(()->UpdateAction.parseExecute(delete, dsgz)));
+        // Operations on all graphs leave the labels graph.
+        dsgz.executeWrite(()->{
+            dsgz.add(parseQuad("(:g :s :p :o)"));
+            UpdateAction.parseExecute("DROP ALL", dsgz);
+        });
+        assertEquals(size, (long)dsg.calculateRead(()->dsg.getGraph(labelsGraphName).size()));
+        assertTrue(dsg.calculateRead(()->dsg.getGraph(NodeFactory.createURI("http://example/g")).isEmpty()));
+        assertEquals(List.of("a"), labels.labelsForTriples(parseTriple("(:s :p :o)")));
+    }
+
+    @Test public void tdb2_labelsInDataset_abort() {
+        DatasetGraph dsg = DatabaseMgr.createDatasetGraph();
+        Node labelsGraphName = NodeFactory.createURI("http://example/labels");
+        LabelsStore labels = Labels.createLabelsStore(dsg, labelsGraphName);
+        AttributesStore attributesStore = Attributes.buildStore(GraphFactory.createDefaultGraph());
+        DatasetGraphABAC dsgz = ABAC.authzDataset(dsg, labels, "*", attributesStore);
+        Triple triple = parseTriple("(:s :p :o)");
+
+        dsgz.begin(ReadWrite.WRITE);
+        try {
+            labels.add(triple, "a");
+            // Seen by the transaction that made the change.
+            assertEquals(List.of("a"), labels.labelsForTriples(triple));
+            dsgz.abort();
+        } finally { dsgz.end(); }
+        assertEquals(List.of(), labels.labelsForTriples(triple));
+
+        dsgz.executeWrite(()->labels.add(triple, "b"));
+        assertEquals(List.of("b"), labels.labelsForTriples(triple));
+    }
+
+    @Test public void tdb2_labelsInDataset_otherThread() throws InterruptedException {
+        DatasetGraph dsg = DatabaseMgr.createDatasetGraph();
+        Node labelsGraphName = NodeFactory.createURI("http://example/labels");
+        LabelsStore labels = Labels.createLabelsStore(dsg, labelsGraphName);
+        Triple triple = parseTriple("(:s :p :o)");
+        assertEquals(List.of(), labels.labelsForTriples(triple));
+
+        // A write transaction not managed by an ABAC dataset, on another thread.
+        Thread writer = new Thread(()->Txn.executeWrite(dsg, ()->labels.add(triple, "a")));
+        writer.start();
+        writer.join();
+        assertEquals(List.of("a"), labels.labelsForTriples(triple));
+        assertEquals(List.of("a"), dsg.calculateRead(()->labels.labelsForTriples(triple)));
+    }
+
+    private static DatasetGraphABAC setup() {
+        DatasetGraph dsg = DatabaseMgr.createDatasetGraph();
+        dsg.executeWrite(()->{
+            dsg.getDefaultGraph().add(parseTriple("(:s :p :o1)"));
+            dsg.getDefaultGraph().add(parseTriple("(:s :q :o2)"));
+            dsg.add(parseQuad("(:g :s :p :o3)"));
+        });
+        LabelsStore labels = Labels.createLabelsStore();
+        labels.add(parseTriple("(:s :p ANY)"), "a");
+        labels.add(parseTriple("(:s :q :o2)"), "b");
+        AttributesStore attributesStore = Attributes.buildStore(GraphFactory.createDefaultGraph());
+        return ABAC.authzDataset(dsg, labels, "*", attributesStore);
+    }
+
+    private static String engineFactoryName(DatasetGraph dsg, String queryString) {
+        Query query = QueryFactory.create(queryString);
+        return QueryEngineRegistry.findFactory(query, dsg, dsg.getContext()).getClass().getSimpleName();
+    }
+
+    private static AttributeValueSet attributes(String attributes) {
+        return attributes.isEmpty()
+                ? AttributeValueSet.EMPTY
+                : AttributeValueSet.of(AE.parseAttrValueList(attributes));
+    }
+
+    private static long count(DatasetGraphABAC dsgz, String attributes, String queryString) {
+        DatasetGraph dsgr = ABAC.requestDataset(dsgz, attributes(attributes), dsgz.attributesStore());
+        String qs = "PREFIX : <http://example/> "+queryString;
+        return dsgr.calculateRead(()->Iter.count(QueryExec.dataset(dsgr).query(qs).select()));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac;
+
+import static org.apache.jena.sparql.sse.SSE.parseQuad;
+import static org.apache.jena.sparql.sse.SSE.parseTriple;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import io.telicent.jena.abac.core.CxtABAC;
+import io.telicent.jena.abac.core.QuadFilter;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.junit.jupiter.api.Test;
+
+public class TestQuadFilterBlock {
+
+    private static List<Quad> quads = List.of(parseQuad("(_ :s1 :p :o1)"),
+                                              parseQuad("(_ :s2 :p :o1)"),
+                                              parseQuad("(_ :s1 :q :o2)"),
+                                              parseQuad("(_ :s3 :p :o1)"),
+                                              parseQuad("(_ :s1 :p :o3)"),
+                                              parseQuad("(_ :s2 :q :o1)"),
+                                              parseQuad("(_ :s3 :r :o1)"));
+
+    private static QuadFilter filter(String attributes) {
+        LabelsStore labels = Labels.createLabelsStore();
+        labels.add(parseTriple("(:s1 ANY ANY)"), "a");
+        labels.add(parseTriple("(:s1 :q :o2)"), "b");
+        labels.add(parseTriple("(ANY :p ANY)"), "c");
+        CxtABAC cxt = CxtABAC.context(AttributeValueSet.of(AE.parseAttrValueList(attributes)), a->null,
+                                      DatasetGraphFactory.empty());
+        return Labels.securityFilterByLabel(null, labels::labelsForTriples, "*", cxt);
+    }
+
+    @Test public void filterBlock_01() { sameAsTest("a"); }
+    @Test public void filterBlock_02() { sameAsTest("a, b"); }
+    @Test public void filterBlock_03() { sameAsTest("c"); }
+    @Test public void filterBlock_04() { sameAsTest("b, c"); }
+
+    @Test public void filterBlock_empty() {
+        BitSet bits = filter("a").testBlock(List.of());
+        assertEquals(0, bits.cardinality());
+    }
+
+    @Test public void filterBlock_iterator() {
+        QuadFilter filter = filter("a, c");
+        List<Quad> expected = Iter.toList(Iter.filter(quads.iterator(), filter));
+        for ( int blockSize : new int[] {1, 2, 3, 100} ) {
+            List<Quad> actual = Iter.toList(QuadFilter.filter(quads.iterator(), filter, blockSize));
+            assertEquals(expected, actual, "Block size "+blockSize);
+        }
+    }
+
+    private static void sameAsTest(String attributes) {
+        QuadFilter filter = filter(attributes);
+        BitSet expected = new BitSet();
+        for ( int i = 0 ; i < quads.size() ; i++ ) {
+            if ( filter.test(quads.get(i)) )
+                expected.set(i);
+        }
+        BitSet actual = filter.testBlock(new ArrayList<>(quads));
+        assertEquals(expected, actual);
+    }
+}
@@ -16,14 +16,19 @@
 
 package io.telicent.jena.abac.fuseki;
 
+import java.util.List;
 import java.util.function.Consumer;
 
+import io.telicent.jena.abac.core.DatasetGraphABAC;
+import org.apache.jena.atlas.logging.FmtLog;
 import org.apache.jena.fuseki.patch.PatchApplyService;
 import org.apache.jena.fuseki.server.Operation;
 import org.apache.jena.fuseki.servlets.ActionService;
 import org.apache.jena.fuseki.servlets.HttpAction;
 import org.apache.jena.fuseki.servlets.SPARQL_Update;
+import org.apache.jena.fuseki.servlets.ServletOps;
 import org.apache.jena.riot.WebContent;
+import org.apache.jena.web.HttpSC;
 
 /**
  * Ingest point for ABAC changes (data loading, RDF Patch and SPARQL Update).
@@ -54,12 +59,40 @@ public class ABAC_ChangeDispatch extends ActionService implements ABAC_Processor
 
     @Override
     public void validate(HttpAction action) {
-        redirectByContentType(action, updateHandler::execute, patchHandler::execute, dataLoader::execute);
+        redirectByContentType(action, a->validateLabelled(a, updateHandler), a->validateLabelled(a, patchHandler), dataLoader::validate);
     }
 
+    // Deletes by SPARQL Update and RDF Patch also remove the labels for triples
+    // no longer in the data (see DatasetGraphABAC).
     @Override
     public void execute(HttpAction action) {
-        redirectByContentType(action, updateHandler::validate, patchHandler::validate, dataLoader::validate);
+        redirectByContentType(action, a->executeLabelled(a, updateHandler), a->executeLabelled(a, patchHandler), dataLoader::execute);
+    }
+
+    private static void validateLabelled(HttpAction action, ActionService handler) {
+        if ( action.getRequestHeader(ServerABAC.hSecurityLabel) != null && ! ( action.getDataset() instanceof DatasetGraphABAC ) ) {
+            FmtLog.warn(action.log, "[%d] Dataset '%s' does not support ABAC security labelling.", action.id, action.getDatasetName());
+            ServletOps.error(HttpSC.BAD_REQUEST_400, "This dataset does not support ABAC security labelling.");
+            return;
+        }
+        handler.validate(action);
+    }
+
+    /**
+     * SPARQL Update and RDF Patch with labelling as for a data upload: the
+     * {@code Security-Label} header applies to added triples, and, without the
+     * header, triples added to graph {@code authz:labels} are label descriptions.
+     */
+    private static void executeLabelled(HttpAction action, ActionService handler) {
+        if ( ! ( action.getDataset() instanceof DatasetGraphABAC dsgz ) ) {
+            handler.execute(action);
+            return;
+        }
+        String dftSecuritysLabel = action.getRequestHeader(ServerABAC.hSecurityLabel);
+        List<String> dataDftLabels = ABAC_DataLoader.parseAttributeList(dftSecuritysLabel);
+        if ( dataDftLabels != null )
+            FmtLog.info(action.log, "[%d] Security-Label %s", action.id, dataDftLabels);
+        dsgz.executeLabelled(dataDftLabels, ()->handler.execute(action));
     }
 
     private void redirectByContentType(HttpAction httpAction,
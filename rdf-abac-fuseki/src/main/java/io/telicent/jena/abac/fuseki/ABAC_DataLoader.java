@@ -24,6 +24,7 @@ import io.telicent.jena.abac.attributes.AttributeExpr;
 import io.telicent.jena.abac.core.DatasetGraphABAC;
 import io.telicent.jena.abac.core.StreamSplitter;
 import io.telicent.jena.abac.core.VocabAuthz;
+import org.apache.jena.atlas.json.JsonValue;
 import org.apache.jena.atlas.logging.FmtLog;
 import org.apache.jena.fuseki.servlets.ActionErrorException;
 import org.apache.jena.fuseki.servlets.ActionService;
@@ -38,6 +39,7 @@ import org.apache.jena.riot.RDFLanguages;
 import org.apache.jena.riot.system.StreamRDF;
 import org.apache.jena.riot.system.StreamRDFLib;
 import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
 import org.apache.jena.sparql.graph.GraphFactory;
 import org.apache.jena.web.HttpSC;
 
@@ -104,6 +106,11 @@ public class ABAC_DataLoader extends ActionService implements ABAC_Processor {
             return;
         }
 
+        if ( ServerABAC.groupCommitUploads ) {
+            executeGroupCommit(action, (DatasetGraphABAC)dsg);
+            return;
+        }
+
         action.begin(TxnType.WRITE);
         try {
             DatasetGraphABAC dsgz = (DatasetGraphABAC)dsg;
@@ -118,17 +125,23 @@ public class ABAC_DataLoader extends ActionService implements ABAC_Processor {
                 // Dataset default will apply at use time.
                 FmtLog.info(action.log, "[%d] Dataset default label: %s", action.id, dsgz.getDefaultLabel());
 
-            StreamRDF rdfData = StreamRDFLib.dataset(dsgz.getBase());
+            // Through the ABAC dataset, which refuses changes to a labels graph in the dataset.
+            StreamRDF rdfData = StreamRDFLib.dataset(dsgz);
             // Get all the labels - as they may come first, we need to collect them
             // together, then process them before the txn commit.
             Graph labelsGraph = GraphFactory.createDefaultGraph();
 
-            StreamRDF stream = new StreamSplitter(rdfData, labelsGraph, dataDftLabels);
-
-            UploadDetails details = DataUploader.incomingData(action, stream);
+            JsonValue details;
+            if ( ServerABAC.pipelinedUploads ) {
+                details = UploadPipeline.incomingData(action, rdfData, labelsGraph, dataDftLabels);
+            } else {
+                StreamRDF stream = new StreamSplitter(rdfData, labelsGraph, dataDftLabels);
+                details = DataUploader.incomingData(action, stream).detailsJson();
+            }
             applyLabels(dsgz, labelsGraph);
             action.commit();
-            ServletOps.uploadResponse(action, details);
+            ServletOps.success(action);
+            ServletOps.sendJson(action, details);
         }
         catch (ActionErrorException ex) { action.abortSilent(); throw ex; }
         catch (Throwable ex) {
@@ -138,7 +151,36 @@ public class ABAC_DataLoader extends ActionService implements ABAC_Processor {
         }
     }
 
-    private List<String> parseAttributeList(String securityLabelsList) {
+    /**
+     * Parse the upload into a buffer, then commit it with other uploads to the same dataset.
+     * See {@link ABAC_GroupCommit}.
+     */
+    private void executeGroupCommit(HttpAction action, DatasetGraphABAC dsgz) {
+        try {
+            String dftSecuritysLabel = action.getRequestHeader(ServerABAC.hSecurityLabel);
+            List<String> dataDftLabels = parseAttributeList(dftSecuritysLabel);
+            if ( dataDftLabels != null )
+                FmtLog.info(action.log, "[%d] Security-Label %s", action.id, dataDftLabels);
+            else
+                // Dataset default will apply at use time.
+                FmtLog.info(action.log, "[%d] Dataset default label: %s", action.id, dsgz.getDefaultLabel());
+
+            DatasetGraph data = DatasetGraphFactory.create();
+            Graph labelsGraph = GraphFactory.createDefaultGraph();
+            StreamRDF stream = new StreamSplitter(StreamRDFLib.dataset(data), labelsGraph, dataDftLabels);
+            UploadDetails details = DataUploader.incomingData(action, stream);
+
+            ABAC_GroupCommit.get(dsgz).commit(new ABAC_GroupCommit.Change(data, labelsGraph));
+            ServletOps.uploadResponse(action, details);
+        }
+        catch (ActionErrorException ex) { throw ex; }
+        catch (Throwable ex) {
+            ServletOps.errorOccurred(ex);
+            return;
+        }
+    }
+
+    /*package*/ static List<String> parseAttributeList(String securityLabelsList) {
         if ( securityLabelsList == null )
             return null;
         List<AttributeExpr> x = AE.parseExprList(securityLabelsList);
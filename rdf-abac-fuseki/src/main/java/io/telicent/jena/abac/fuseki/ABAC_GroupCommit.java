@@ -0,0 +1,164 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.fuseki;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.labels.Labels;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.GraphUtil;
+import org.apache.jena.graph.Node;
+import org.apache.jena.riot.out.NodeFmtLib;
+import org.apache.jena.shared.AddDeniedException;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.system.Txn;
+
+/**
+ * Group commit for labelled data uploads.
+ * <p>
+ * Each upload is parsed by its request thread, outside any transaction, into
+ * a {@link Change}. Changes are then committed together: the first request
+ * thread to get the commit lock applies all the changes waiting, up to
+ * {@link ServerABAC#groupCommitMaxBatch}, in one write transaction with one
+ * addition to the labels store. Requests arriving while a commit is in progress
+ * form the next group.
+ * <p>
+ * If a group fails, its changes are applied one by one so that each request gets
+ * its own outcome.
+ * <p>
+ * An upload with data for the labels graph of the dataset, if the labels are kept
+ * in the dataset, is refused before it joins a group. Labels are added in the
+ * same transaction as the data, and are used by other requests once the
+ * transaction has committed.
+ */
+/*package*/ class ABAC_GroupCommit {
+
+    private static final Map<DatasetGraphABAC, ABAC_GroupCommit> committers = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /*package*/ static ABAC_GroupCommit get(DatasetGraphABAC dsgz) {
+        return committers.computeIfAbsent(dsgz, ABAC_GroupCommit::new);
+    }
+
+    /** A parsed upload, waiting to be committed. */
+    /*package*/ static class Change {
+        private final DatasetGraph data;
+        private final Graph labels;
+        private final CompletableFuture<Void> outcome = new CompletableFuture<>();
+
+        /*package*/ Change(DatasetGraph data, Graph labels) {
+            this.data = data;
+            this.labels = labels;
+        }
+
+        /*package*/ CompletableFuture<Void> outcome() {
+            return outcome;
+        }
+    }
+
+    private final DatasetGraphABAC dsgz;
+    // Graph of the dataset holding the labels, else null.
+    private final Node labelsGraphName;
+    private final Queue<Change> pending = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock commitLock = new ReentrantLock();
+
+    private ABAC_GroupCommit(DatasetGraphABAC dsgz) {
+        this.dsgz = dsgz;
+        this.labelsGraphName = ( dsgz.labelsStore() == null ) ? null : Labels.labelsGraphName(dsgz.labelsStore(), dsgz.getBase());
+    }
+
+    /**
+     * Commit a change, together with any other changes waiting.
+     * Returns when the change has been committed; throws an exception if it failed.
+     */
+    /*package*/ void commit(Change change) {
+        commit(List.of(change));
+        try {
+            change.outcome.join();
+        } catch (CompletionException ex) {
+            if ( ex.getCause() instanceof RuntimeException rex )
+                throw rex;
+            throw ex;
+        }
+    }
+
+    /**
+     * Commit changes, together with any other changes waiting.
+     * Returns when all the changes are done; the outcome of each is in {@link Change#outcome()}.
+     */
+    /*package*/ void commit(List<Change> changes) {
+        for ( Change change : changes ) {
+            if ( labelsGraphName != null && change.data.containsGraph(labelsGraphName) ) {
+                // Refused before it joins a group, so it does not fail the other changes.
+                change.outcome.completeExceptionally(new AddDeniedException("Can't add to the labels graph: "+NodeFmtLib.displayStr(labelsGraphName)));
+                continue;
+            }
+            pending.add(change);
+        }
+        commitLock.lock();
+        try {
+            // Another thread may have committed these changes while this thread waited for the lock.
+            for ( Change change : changes ) {
+                while ( ! change.outcome.isDone() )
+                    commitGroup(nextGroup());
+            }
+        } finally { commitLock.unlock(); }
+    }
+
+    private List<Change> nextGroup() {
+        List<Change> group = new ArrayList<>();
+        Change c;
+        while ( group.size() < ServerABAC.groupCommitMaxBatch && (c = pending.poll()) != null )
+            group.add(c);
+        return group;
+    }
+
+    private void commitGroup(List<Change> group) {
+        if ( group.isEmpty() )
+            return;
+        try {
+            Txn.executeWrite(dsgz, ()->apply(group));
+        } catch (RuntimeException ex) {
+            if ( group.size() == 1 ) {
+                group.get(0).outcome.completeExceptionally(ex);
+                return;
+            }
+            // Find the failing change(s).
+            group.forEach(c->commitGroup(List.of(c)));
+            return;
+        }
+        group.forEach(c->c.outcome.complete(null));
+    }
+
+    private void apply(List<Change> group) {
+        Graph labelsGraph = GraphFactory.createDefaultGraph();
+        for ( Change c : group ) {
+            // Through the ABAC dataset, which refuses changes to a labels graph in the dataset.
+            c.data.find().forEachRemaining(dsgz::add);
+            GraphUtil.addInto(labelsGraph, c.labels);
+        }
+        // The labels store rolls back with the transaction if the group fails, and
+        // publishes the new labels when it commits (LabelsStore.afterCommit).
+        if ( ! labelsGraph.isEmpty() )
+            dsgz.labelsStore().add(labelsGraph);
+    }
+}
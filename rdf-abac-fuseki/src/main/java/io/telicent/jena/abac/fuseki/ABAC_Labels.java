@@ -18,23 +18,46 @@ package io.telicent.jena.abac.fuseki;
 
 import static java.lang.String.format;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsStore;
 import org.apache.jena.atlas.web.MediaType;
 import org.apache.jena.fuseki.servlets.ActionLib;
 import org.apache.jena.fuseki.servlets.ActionService;
 import org.apache.jena.fuseki.servlets.HttpAction;
 import org.apache.jena.fuseki.servlets.ServletOps;
 import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.system.StreamRDFWriter;
 import org.apache.jena.shared.JenaException;
 import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.graph.GraphFactory;
 
 /**
  * A Fuseki action to get the labels graph for a {@link DatasetGraphABAC}.
+ * <p>
+ * The labels are written as they are read from the labels storage, inside a read
+ * transaction. The request may select label descriptions by pattern and ask for
+ * a page of results with "offset" and "limit".
  */
 public class ABAC_Labels extends ActionService implements ABAC_Processor {
 
+    /** Only label descriptions with patterns matching this triple pattern (see {@link LabelsStore#export}). */
+    public static final String paramPattern = "pattern";
+    /** Number of label descriptions to skip. */
+    public static final String paramOffset  = "offset";
+    /** Maximum number of label descriptions to return. */
+    public static final String paramLimit   = "limit";
+
     public ABAC_Labels() {}
 
     @Override
@@ -68,25 +91,68 @@ public class ABAC_Labels extends ActionService implements ABAC_Processor {
     public void execute(HttpAction action) {
         DatasetGraph dsg = action.getDataset();
         DatasetGraphABAC dsgz = (DatasetGraphABAC)dsg;
-        Graph graph = dsgz.labelsStore().getGraph();
+        Triple filter = patternParam(action);
+        long offset = longParam(action, paramOffset, 0);
+        long limit = longParam(action, paramLimit, -1);
 
         try {
             action.beginRead();
             MediaType mediaType = ActionLib.contentNegotationRDF(action);
             Lang lang = RDFLanguages.contentTypeToLang(mediaType.getContentTypeStr());
-            if ( lang == null )
+            if ( lang == null || RDFLanguages.isQuads(lang) && ! RDFLanguages.isTriples(lang) )
                 lang = RDFLanguages.TURTLE;
             if ( action.verbose )
                 action.log.info(format("[%d]   Labels: Content-Type=%s, Charset=%s => %s",
                                        action.id, mediaType.getContentTypeStr(), mediaType.getCharset(), lang.getName()));
             ActionLib.setCommonHeaders(action);
-            ActionLib.graphResponse(action, graph, lang);
-
-            // Use the preferred MIME type.
-            ActionLib.graphResponse(action, graph, lang);
+            action.setResponseContentType(lang.getContentType().getContentTypeStr());
+            if ( ! Lang.RDFTHRIFT.equals(lang) && ! Lang.RDFPROTO.equals(lang) )
+                action.setResponseCharacterEncoding(WebContent.charsetUTF8);
+            OutputStream out = action.getResponseOutputStream();
+            LabelsStore labelsStore = dsgz.labelsStore();
+            if ( StreamRDFWriter.registered(lang) ) {
+                // Write directly from the labels storage.
+                StreamRDF stream = StreamRDFWriter.getWriterStream(out, lang);
+                labelsStore.export(stream, filter, offset, limit);
+            } else {
+                // Formats that need the whole graph.
+                Graph graph = GraphFactory.createDefaultGraph();
+                labelsStore.export(StreamRDFLib.graph(graph), filter, offset, limit);
+                RDFDataMgr.write(out, graph, lang);
+            }
+            out.flush();
             ServletOps.success(action);
         } catch (JenaException ex) {
             ServletOps.errorOccurred(ex);
+        } catch (IOException ex) {
+            ServletOps.errorOccurred(ex);
         } finally { action.endRead(); }
     }
+
+    private static Triple patternParam(HttpAction action) {
+        String patternStr = action.getRequestParameter(paramPattern);
+        if ( patternStr == null )
+            return null;
+        try {
+            return Labels.parseTriplePattern(patternStr);
+        } catch (RuntimeException ex) {
+            ServletOps.errorBadRequest("Bad pattern: "+patternStr);
+            return null;
+        }
+    }
+
+    private static long longParam(HttpAction action, String paramName, long dftValue) {
+        String str = action.getRequestParameter(paramName);
+        if ( str == null )
+            return dftValue;
+        try {
+            long x = Long.parseLong(str);
+            if ( x < 0 )
+                ServletOps.errorBadRequest("Negative value for '"+paramName+"': "+str);
+            return x;
+        } catch (NumberFormatException ex) {
+            ServletOps.errorBadRequest("Bad value for '"+paramName+"': "+str);
+            return dftValue;
+        }
+    }
 }
@@ -59,7 +59,8 @@ public class ABAC_Request {
 
         HierarchyGetter function = (a)->dsgz.attributesStore().getHierarchy(a);
 
-        CxtABAC cxt = CxtABAC.context(attributes, function, dsgz);
+        CxtABAC cxt = CxtABAC.context(attributes, function, dsgz.environmentProvider().environment(attributes),
+                                      dsgz, dsgz.decisionCache());
         FmtLog.info(action.log, "[%d] User %s : %s", action.id, requestUser, attributes);
 
         if ( Lib.equalsIgnoreCase("true", action.getRequestParameter("debug")) )
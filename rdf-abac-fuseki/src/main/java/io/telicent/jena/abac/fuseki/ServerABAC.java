@@ -44,6 +44,33 @@ public class ServerABAC {
 
     public static void init() {}
 
+    /**
+     * Commit concurrent labelled data uploads to a dataset together, in one write
+     * transaction with one update of the labels store. Each upload is parsed
+     * before it joins a group, outside the write transaction.
+     */
+    public static boolean groupCommitUploads = false;
+
+    /** Maximum number of uploads committed together when {@link #groupCommitUploads} is true. */
+    public static int groupCommitMaxBatch = 100;
+
+    /**
+     * Parse labelled data uploads on a separate thread, with the data written to the
+     * dataset and the labels collected at the same time, each as the parser produces them.
+     * This is for large uploads.
+     */
+    public static boolean pipelinedUploads = false;
+
+    /** Number of batches of parser output waiting when {@link #pipelinedUploads} is true. */
+    public static int pipelineQueueSize = 10;
+
+    /**
+     * Maximum number of uploads parsed on separate threads at the same time when
+     * {@link #pipelinedUploads} is true. Other uploads are parsed on the request thread.
+     * This is read as each upload starts.
+     */
+    public static int pipelineMaxParsers = 4;
+
     /**
      * Security-Label : The default label that applies to a data payload.
      */
@@ -0,0 +1,230 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.fuseki;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.telicent.jena.abac.core.StreamSplitter;
+import org.apache.jena.atlas.io.IO;
+import org.apache.jena.atlas.json.JsonValue;
+import org.apache.jena.atlas.lib.Pair;
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.atlas.web.ContentType;
+import org.apache.jena.fuseki.servlets.ActionLib;
+import org.apache.jena.fuseki.servlets.HttpAction;
+import org.apache.jena.fuseki.servlets.ServletOps;
+import org.apache.jena.fuseki.system.DataUploader;
+import org.apache.jena.fuseki.system.UploadDetails;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.*;
+import org.apache.jena.riot.lang.StreamRDFCounting;
+import org.apache.jena.riot.system.ErrorHandlerFactory;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.sparql.core.Quad;
+import org.slf4j.Logger;
+
+/**
+ * Pipelined parsing of a labelled data upload.
+ * <p>
+ * The request body is parsed on a separate thread into batches which are passed,
+ * through bounded queues, to two consumers running at the same time:
+ * <ul>
+ * <li>the request thread, which writes the data to the dataset (it holds the write transaction),</li>
+ * <li>a labels thread, which collects the labels graph, including the labels from a
+ *     {@code Security-Label} header.</li>
+ * </ul>
+ * Both consumers use a {@link StreamSplitter}: the data consumer without a labels
+ * graph, the labels consumer with the data discarded.
+ * <p>
+ * The {@link HttpAction} is only used on the request thread; the parser is given
+ * the request body input stream. Multipart uploads are parsed on the request thread.
+ * <p>
+ * At most {@link ServerABAC#pipelineMaxParsers} uploads use the pipeline at a time.
+ * Further uploads are parsed on the request thread.
+ */
+/*package*/ class UploadPipeline {
+
+    private static final int BatchSize = 1000;
+    // End of stream.
+    private static final List<Object> END = List.of();
+
+    // Two threads for each upload in the pipeline; the number of uploads is limited by "active".
+    private static final ExecutorService executor = Executors.newCachedThreadPool(r->{
+        Thread thread = new Thread(r, "UploadPipeline");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicInteger active = new AtomicInteger(0);
+
+    private final BlockingQueue<List<Object>> dataQueue;
+    private final BlockingQueue<List<Object>> labelsQueue;
+
+    private UploadPipeline(int queueSize) {
+        this.dataQueue = new ArrayBlockingQueue<>(queueSize);
+        this.labelsQueue = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    /**
+     * Parse the request body, sending the data to {@code data} on this thread
+     * and adding the labels to {@code labelsGraph}.
+     * Returns the upload details for the response.
+     * This must be called on the thread with the write transaction.
+     */
+    /*package*/ static JsonValue incomingData(HttpAction action, StreamRDF data, Graph labelsGraph, List<String> dataDftLabels) {
+        ContentType ct = ActionLib.getContentType(action);
+        Lang lang = ( ct == null ) ? null : RDFLanguages.contentTypeToLang(ct.getContentTypeStr());
+        if ( lang == null || ! RDFParserRegistry.isRegistered(lang) )
+            // Multipart, or an error which DataUploader reports.
+            return incomingDataDirect(action, data, labelsGraph, dataDftLabels);
+        if ( active.incrementAndGet() > ServerABAC.pipelineMaxParsers ) {
+            active.decrementAndGet();
+            return incomingDataDirect(action, data, labelsGraph, dataDftLabels);
+        }
+        try {
+            String base = ActionLib.wholeRequestURL(action.getRequest());
+            InputStream input = action.getRequestInputStream();
+            UploadPipeline pipeline = new UploadPipeline(ServerABAC.pipelineQueueSize);
+            StreamRDFCounting counts = pipeline.run(action.log, input, lang, base, data, labelsGraph, dataDftLabels);
+            FmtLog.info(action.log, "[%d] Body: Content-Type=%s => %s : %s", action.id, ct.getContentTypeStr(), lang.getName(),
+                        UploadDetails.detailsStr(counts.count(), counts.countTriples(), counts.countQuads()));
+            return UploadDetails.detailsJson(counts.count(), counts.countTriples(), counts.countQuads());
+        } catch (RiotException ex) {
+            ActionLib.consumeBody(action);
+            ServletOps.errorBadRequest("Parse error: "+ex.getMessage());
+            return null;
+        } catch (IOException ex) {
+            IO.exception(ex);
+            return null;
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    private static JsonValue incomingDataDirect(HttpAction action, StreamRDF data, Graph labelsGraph, List<String> dataDftLabels) {
+        return DataUploader.incomingData(action, new StreamSplitter(data, labelsGraph, dataDftLabels)).detailsJson();
+    }
+
+    private StreamRDFCounting run(Logger log, InputStream input, Lang lang, String base,
+                                  StreamRDF data, Graph labelsGraph, List<String> dataDftLabels) {
+        Future<StreamRDFCounting> parser = executor.submit(()->{
+            StreamBatcher batcher = new StreamBatcher();
+            StreamRDFCounting counting = StreamRDFLib.count(batcher);
+            try {
+                RDFParser.create()
+                         .errorHandler(ErrorHandlerFactory.errorHandlerStd(log))
+                         .source(input).lang(lang).base(base)
+                         .parse(counting);
+                batcher.flush();
+                return counting;
+            } finally {
+                send(END);
+            }
+        });
+        Future<?> labels = executor.submit(()->{
+            StreamRDF dest = new StreamSplitter(StreamRDFLib.sinkNull(), labelsGraph, dataDftLabels);
+            try {
+                consume(labelsQueue, dest);
+            } catch (RuntimeException ex) {
+                // Keep the parser moving so the data consumer finishes.
+                consume(labelsQueue, StreamRDFLib.sinkNull());
+                throw ex;
+            }
+            return null;
+        });
+        try {
+            StreamRDF dest = new StreamSplitter(data, null, dataDftLabels);
+            try {
+                consume(dataQueue, dest);
+            } catch (RuntimeException ex) {
+                // Keep the parser moving so the labels consumer finishes,
+                // and the request body is not used after the request.
+                consume(dataQueue, StreamRDFLib.sinkNull());
+                throw ex;
+            }
+            StreamRDFCounting counts = parser.get();
+            labels.get();
+            return counts;
+        } catch (ExecutionException ex) {
+            if ( ex.getCause() instanceof RuntimeException rex )
+                throw rex;
+            throw new RuntimeException(ex.getCause());
+        } catch (InterruptedException ex) {
+            parser.cancel(true);
+            labels.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static void consume(BlockingQueue<List<Object>> queue, StreamRDF dest) throws InterruptedException {
+        for ( ;; ) {
+            List<Object> batch = queue.take();
+            if ( batch == END )
+                return;
+            for ( Object obj : batch ) {
+                if ( obj instanceof Quad quad )
+                    dest.quad(quad);
+                else if ( obj instanceof Triple triple )
+                    dest.triple(triple);
+                else if ( obj instanceof Pair<?, ?> prefix )
+                    dest.prefix((String)prefix.getLeft(), (String)prefix.getRight());
+            }
+        }
+    }
+
+    private void send(List<Object> batch) throws InterruptedException {
+        dataQueue.put(batch);
+        labelsQueue.put(batch);
+    }
+
+    /** Parser output, in batches. */
+    private class StreamBatcher implements StreamRDF {
+        private List<Object> batch = new ArrayList<>(BatchSize);
+
+        private void add(Object obj) {
+            batch.add(obj);
+            if ( batch.size() >= BatchSize )
+                flush();
+        }
+
+        private void flush() {
+            if ( batch.isEmpty() )
+                return;
+            try {
+                send(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Upload pipeline cancelled");
+            }
+            batch = new ArrayList<>(BatchSize);
+        }
+
+        @Override public void start() {}
+        @Override public void triple(Triple triple) { add(triple); }
+        @Override public void quad(Quad quad) { add(quad); }
+        @Override public void base(String base) {}
+        @Override public void prefix(String prefix, String iri) { add(Pair.create(prefix, iri)); }
+        @Override public void finish() { flush(); }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.services;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import io.telicent.jena.abac.core.AuthzException;
+import org.apache.jena.atlas.io.IO;
+
+/**
+ * Binary encoding for the label evaluation service.
+ * <p>
+ * All integers are 32 bit, big-endian (as {@link DataOutputStream}).
+ * Strings are an integer byte length followed by the UTF-8 bytes.
+ * <p>
+ * Request:
+ * <pre>
+ *   user         : string
+ *   labelCount   : int
+ *   labels       : string * labelCount
+ *   itemCount    : int
+ *   items        : int * itemCount      -- index into the labels table
+ * </pre>
+ * Response:
+ * <pre>
+ *   itemCount    : int
+ *   bits         : byte * ((itemCount+7)/8)
+ * </pre>
+ * Item {@code i} is allowed if bit {@code (i & 7)} of byte {@code (i >> 3)} is set.
+ * <p>
+ * Each distinct label is sent, and evaluated, once per request however many items refer to it.
+ */
+public class LabelEvalCodec {
+
+    /** Content type of both the request and the response. */
+    public static final String contentType = "application/x-abac-label-eval";
+
+    /** A decoded request: a user, a table of labels and, for each item, the index of its label. */
+    public record LabelEvalRequest(String user, List<String> labels, int[] items) {
+        public LabelEvalRequest {
+            Objects.requireNonNull(user);
+            Objects.requireNonNull(labels);
+            Objects.requireNonNull(items);
+        }
+    }
+
+    // Guard against garbage in the length and count fields.
+    private static final int maxStringLength = 1024*1024;
+    private static final int maxLabelCount = 1024*1024;
+    private static final int maxItemCount = 64*1024*1024;
+    // Space allocated for labels and items before they have been read.
+    private static final int initialCapacity = 1024;
+
+    public static void writeRequest(OutputStream output, LabelEvalRequest request) {
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+            writeString(out, request.user());
+            out.writeInt(request.labels().size());
+            for ( String label : request.labels() )
+                writeString(out, label);
+            int[] items = request.items();
+            out.writeInt(items.length);
+            for ( int idx : items )
+                out.writeInt(idx);
+            out.flush();
+        } catch (IOException ex) { IO.exception(ex); }
+    }
+
+    public static LabelEvalRequest readRequest(InputStream input) {
+        return readRequest(input, -1);
+    }
+
+    /**
+     * Read a request of {@code length} bytes, or -1 if the length is not known.
+     * Counts are checked against a maximum, and against the bytes remaining,
+     * before space is allocated for them.
+     */
+    public static LabelEvalRequest readRequest(InputStream input, long length) {
+        try {
+            Input in = new Input(new DataInputStream(new BufferedInputStream(input)), length);
+            String user = in.readString();
+            // Each label is at least its length.
+            int labelCount = in.readCount("label count", maxLabelCount, 4);
+            List<String> labels = new ArrayList<>(Math.min(labelCount, initialCapacity));
+            for ( int i = 0 ; i < labelCount ; i++ )
+                labels.add(in.readString());
+            int itemCount = in.readCount("item count", maxItemCount, 4);
+            int[] items = new int[Math.min(itemCount, initialCapacity)];
+            for ( int i = 0 ; i < itemCount ; i++ ) {
+                int idx = in.readInt();
+                if ( idx < 0 || idx >= labelCount )
+                    throw new AuthzException("Label index out of range: item "+i+" : "+idx);
+                if ( i == items.length )
+                    items = Arrays.copyOf(items, (int)Math.min(itemCount, 2L*items.length));
+                items[i] = idx;
+            }
+            return new LabelEvalRequest(user, labels, items);
+        } catch (EOFException ex) {
+            throw new AuthzException("Truncated label evaluation request");
+        } catch (IOException ex) { IO.exception(ex); return null; }
+    }
+
+    public static void writeResponse(OutputStream output, boolean[] results) {
+        try {
+            DataOutputStream out = new DataOutputStream(output);
+            out.writeInt(results.length);
+            out.write(pack(results));
+            out.flush();
+        } catch (IOException ex) { IO.exception(ex); }
+    }
+
+    public static boolean[] readResponse(InputStream input) {
+        try {
+            Input in = new Input(new DataInputStream(input), -1);
+            int itemCount = in.readCount("item count", maxItemCount, 0);
+            byte[] bits = new byte[(itemCount+7)/8];
+            in.readFully(bits);
+            return unpack(bits, itemCount);
+        } catch (EOFException ex) {
+            throw new AuthzException("Truncated label evaluation response");
+        } catch (IOException ex) { IO.exception(ex); return null; }
+    }
+
+    /*package*/ static byte[] pack(boolean[] results) {
+        byte[] bits = new byte[(results.length+7)/8];
+        for ( int i = 0 ; i < results.length ; i++ ) {
+            if ( results[i] )
+                bits[i>>3] |= (byte)(1 << (i & 7));
+        }
+        return bits;
+    }
+
+    /*package*/ static boolean[] unpack(byte[] bits, int itemCount) {
+        boolean[] results = new boolean[itemCount];
+        for ( int i = 0 ; i < itemCount ; i++ )
+            results[i] = ( bits[i>>3] & (1 << (i & 7)) ) != 0;
+        return results;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Input with a count of the bytes remaining, if known. */
+    private static class Input {
+        private final DataInputStream in;
+        private long remaining;
+
+        Input(DataInputStream in, long length) {
+            this.in = in;
+            this.remaining = ( length < 0 ) ? Long.MAX_VALUE : length;
+        }
+
+        int readInt() throws IOException {
+            remaining -= 4;
+            return in.readInt();
+        }
+
+        String readString() throws IOException {
+            int len = readInt();
+            if ( len < 0 || len > maxStringLength || len > remaining )
+                throw new AuthzException("Bad string length: "+len);
+            byte[] bytes = new byte[len];
+            readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        void readFully(byte[] bytes) throws IOException {
+            remaining -= bytes.length;
+            in.readFully(bytes);
+        }
+
+        /** Read a count of things, each of which is at least {@code minBytes} long. */
+        int readCount(String what, int max, int minBytes) throws IOException {
+            int count = readInt();
+            if ( count < 0 || count > max || (long)count*minBytes > remaining )
+                throw new AuthzException("Bad "+what+": "+count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.services;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.http.HttpServlet;
+
+import io.telicent.jena.abac.AE;
+import io.telicent.jena.abac.AttributeValueSet;
+import io.telicent.jena.abac.attributes.AttributeException;
+import io.telicent.jena.abac.attributes.AttributeExpr;
+import io.telicent.jena.abac.attributes.ValueTerm;
+import io.telicent.jena.abac.core.AttributesStore;
+import io.telicent.jena.abac.core.AuthzException;
+import io.telicent.jena.abac.core.CxtABAC;
+import io.telicent.jena.abac.services.LabelEvalCodec.LabelEvalRequest;
+import org.apache.jena.fuseki.main.JettyServer;
+import org.apache.jena.fuseki.servlets.ActionProcessor;
+import org.apache.jena.fuseki.servlets.HttpAction;
+import org.apache.jena.fuseki.servlets.ServletAction;
+import org.apache.jena.fuseki.servlets.ServletOps;
+import org.apache.jena.web.HttpSC;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Label evaluation service: <code>(user, label) -&gt; yes or no</code>
+ * for a batch of items, using the binary encoding of {@link LabelEvalCodec}.
+ * <p>
+ * <code>POST /labels/eval</code>
+ */
+public class LabelEvalService {
+    private static Logger LOG = LoggerFactory.getLogger("io.telicent.jena.LabelEval");
+
+    public static String labelEvalPath = "/labels/eval";
+
+    public static String run(int port, AttributesStore storage) {
+        return baseURL(start(port, storage));
+    }
+
+    /** Start the service and return the server, which the caller stops. */
+    public static JettyServer start(int port, AttributesStore storage) {
+        HttpServlet servlet = createLabelEvalServlet(storage, LOG);
+        JettyServer jettyServer = JettyServer.create()
+            .port(port)
+            .addServlet(labelEvalPath, servlet)
+            .build()
+            .start();
+        LOG.info(format("LabelEvalService: %s", baseURL(jettyServer)));
+        return jettyServer;
+    }
+
+    public static String baseURL(JettyServer jettyServer) {
+        return "http://localhost:"+jettyServer.getPort();
+    }
+
+    static public HttpServlet createLabelEvalServlet(AttributesStore storage, Logger logger) {
+        logger = (logger == null) ? LOG : logger;
+        return new ServletAction(new LabelEvalActionProcessor(storage), logger);
+    }
+
+    /**
+     * Evaluate a request. Each label in the table is parsed and evaluated once.
+     * An unknown user is denied everything.
+     */
+    public static boolean[] evaluate(LabelEvalRequest request, AttributesStore storage) {
+        int[] items = request.items();
+        boolean[] results = new boolean[items.length];
+        AttributeValueSet attributes = storage.attributes(request.user());
+        if ( attributes == null )
+            return results;
+        CxtABAC cxt = CxtABAC.context(attributes, storage, null);
+        List<String> labels = request.labels();
+        boolean[] labelOutcomes = new boolean[labels.size()];
+        for ( int i = 0 ; i < labelOutcomes.length ; i++ )
+            labelOutcomes[i] = eval1(cxt, labels.get(i));
+        for ( int i = 0 ; i < items.length ; i++ )
+            results[i] = labelOutcomes[items[i]];
+        return results;
+    }
+
+    private static boolean eval1(CxtABAC cxt, String label) {
+        AttributeExpr aExpr = AE.parseExpr(label);
+        ValueTerm value = aExpr.eval(cxt);
+        if ( value == null || ! value.isBoolean() )
+            return false;
+        return value.getBoolean();
+    }
+
+    static class LabelEvalActionProcessor implements ActionProcessor {
+        private final AttributesStore storage;
+
+        public LabelEvalActionProcessor(AttributesStore storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public void execPost(HttpAction action) {
+            LabelEvalRequest request;
+            boolean[] results;
+            try {
+                request = LabelEvalCodec.readRequest(action.getRequestInputStream(), action.getRequestContentLengthLong());
+                results = evaluate(request, storage);
+            } catch (AuthzException | AttributeException ex) {
+                action.log.info(format("[%d] Bad request: %s", action.id, ex.getMessage()));
+                ServletOps.error(HttpSC.BAD_REQUEST_400, ex.getMessage());
+                return;
+            } catch (IOException ex) {
+                ServletOps.errorOccurred(ex);
+                return;
+            }
+            action.log.info(format("[%d] User = %s : labels = %d : items = %d",
+                                   action.id, request.user(), request.labels().size(), results.length));
+            try {
+                action.setResponseStatus(HttpSC.OK_200);
+                action.setResponseContentType(LabelEvalCodec.contentType);
+                action.setResponseContentLength(4+(results.length+7)/8);
+                LabelEvalCodec.writeResponse(action.getResponseOutputStream(), results);
+            } catch (IOException ex) { ServletOps.errorOccurred(ex); }
+            ServletOps.success(action);
+        }
+    }
+}
@@ -178,7 +178,7 @@ public class SimpleAttributesStore {
                 /*ServletOps.*/sendJsonError(action, HttpSC.BAD_REQUEST_400, "No {name} found");
                 return;
             }
-            Attribute attribute = new Attribute(name);
+            Attribute attribute = Attribute.create(name);
             Hierarchy lookup = storage.getHierarchy(attribute);
             if ( lookup == null ) {
                 action.log.info(format("[%d] Hierarchy = %s not found", action.id, name));
@@ -189,7 +189,16 @@ public class SimpleAttributesStore {
             JsonObject r = JSON.buildObject(builder->{
                 builder.key("tiers");
                 builder.startArray();
-                lookup.values().forEach( valueTerm -> builder.value(valueTerm.asString()) );
+                if ( lookup.isLinear() )
+                    lookup.values().forEach( valueTerm -> builder.value(valueTerm.asString()) );
+                else {
+                    // Partial order: an array of chains.
+                    lookup.chains().forEach(chain->{
+                        builder.startArray();
+                        chain.forEach( valueTerm -> builder.value(valueTerm.asString()) );
+                        builder.finishArray();
+                    });
+                }
                 builder.finishArray();
             });
             action.log.info(JSON.toStringFlat(r));
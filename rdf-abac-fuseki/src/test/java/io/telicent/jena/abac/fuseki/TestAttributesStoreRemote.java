@@ -20,8 +20,12 @@ import static io.telicent.jena.abac.services.LibAuthService.serviceURL;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import io.telicent.jena.abac.ABAC;
+import io.telicent.jena.abac.Hierarchy;
+import io.telicent.jena.abac.attributes.ValueTerm;
 import io.telicent.jena.abac.core.Attributes;
 import io.telicent.jena.abac.core.AttributesStore;
+import io.telicent.jena.abac.core.AttributesStoreLocal;
+import io.telicent.jena.abac.core.AttributesStoreRemote;
 import io.telicent.jena.abac.labels.Labels;
 import io.telicent.jena.abac.services.AttributeService;
 import io.telicent.jena.abac.services.SimpleAttributesStore;
@@ -77,6 +81,20 @@ public class TestAttributesStoreRemote {
                             ()->runTest("config-no-hierarchies.ttl", 1));
     }
 
+    @Test public void remote_hierarchy_partialOrder() {
+        AttributesStoreLocal attrStore = new AttributesStoreLocal();
+        Hierarchy hierarchy = Hierarchy.fromString("clearance: U, C, S, TS; S, S-UK");
+        attrStore.addHierarchy(hierarchy);
+        String mockServerURL = SimpleAttributesStore.run(0, attrStore);
+        String lookupUserAttribesURL = serviceURL(mockServerURL, AttributeService.lookupUserAttributeTemplate);
+        String lookupHierarchAttribesURL = serviceURL(mockServerURL, AttributeService.lookupHierarchyTemplate);
+
+        AttributesStore remote = new AttributesStoreRemote(lookupUserAttribesURL, lookupHierarchAttribesURL);
+        Hierarchy hierarchy2 = remote.getHierarchy(hierarchy.attribute());
+        assertEquals(hierarchy, hierarchy2);
+        assertEquals(Hierarchy.Comparison.NONE, hierarchy2.compareTo(ValueTerm.value("TS"), ValueTerm.value("S-UK")));
+    }
+
     private static void runTest(String configFile, int expected) {
         // Remote Attribute Store
         Graph g = RDFParser.source(DIR+"/attribute-store.ttl").toGraph();
@@ -0,0 +1,156 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.fuseki;
+
+import static io.telicent.jena.abac.services.LibAuthService.serviceURL;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.List;
+
+import io.telicent.jena.abac.core.Attributes;
+import io.telicent.jena.abac.core.AttributesStore;
+import io.telicent.jena.abac.core.AuthzException;
+import io.telicent.jena.abac.services.LabelEvalCodec;
+import io.telicent.jena.abac.services.LabelEvalCodec.LabelEvalRequest;
+import io.telicent.jena.abac.services.LabelEvalService;
+import org.apache.jena.fuseki.main.JettyServer;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.web.HttpNames;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/** Tests for the binary label evaluation service. */
+public class TestLabelEvalService {
+
+    private static String DIR = "src/test/files/integration";
+
+    private static AttributesStore attrStore;
+
+    @BeforeAll
+    public static void beforeAll() {
+        Graph g = RDFParser.source(DIR+"/attribute-store.ttl").toGraph();
+        attrStore = Attributes.buildStore(g);
+    }
+
+    private static final List<String> labels = List.of("engineer", "employee", "contractor", "clearance=ordinary", "engineer && employee");
+
+    @Test public void codec_request() {
+        LabelEvalRequest request = new LabelEvalRequest("u1@email", labels, new int[] {0, 4, 4, 1, 2});
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LabelEvalCodec.writeRequest(out, request);
+        LabelEvalRequest request2 = LabelEvalCodec.readRequest(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(request.user(), request2.user());
+        assertEquals(request.labels(), request2.labels());
+        assertArrayEquals(request.items(), request2.items());
+    }
+
+    @Test public void codec_response() {
+        for ( int n : new int[] {0, 1, 7, 8, 9, 17} ) {
+            boolean[] results = new boolean[n];
+            for ( int i = 0 ; i < n ; i++ )
+                results[i] = ( i % 3 == 0 );
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            LabelEvalCodec.writeResponse(out, results);
+            assertEquals(4+(n+7)/8, out.size());
+            boolean[] results2 = LabelEvalCodec.readResponse(new ByteArrayInputStream(out.toByteArray()));
+            assertArrayEquals(results, results2);
+        }
+    }
+
+    @Test public void codec_bad_index() {
+        LabelEvalRequest request = new LabelEvalRequest("u1@email", List.of("engineer"), new int[] {0, 1});
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LabelEvalCodec.writeRequest(out, request);
+        assertThrows(AuthzException.class, ()->LabelEvalCodec.readRequest(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    @Test public void evaluate_1() {
+        LabelEvalRequest request = new LabelEvalRequest("u1@email", labels, new int[] {0, 1, 2, 3, 4});
+        boolean[] results = LabelEvalService.evaluate(request, attrStore);
+        assertArrayEquals(new boolean[] {true, true, false, false, true}, results);
+    }
+
+    @Test public void evaluate_2() {
+        LabelEvalRequest request = new LabelEvalRequest("u2@email", labels, new int[] {4, 2, 2, 1});
+        boolean[] results = LabelEvalService.evaluate(request, attrStore);
+        assertArrayEquals(new boolean[] {false, true, true, false}, results);
+    }
+
+    @Test public void evaluate_unknown_user() {
+        LabelEvalRequest request = new LabelEvalRequest("nobody", labels, new int[] {0, 1});
+        boolean[] results = LabelEvalService.evaluate(request, attrStore);
+        assertArrayEquals(new boolean[] {false, false}, results);
+    }
+
+    @Test public void codec_bad_count() {
+        // A label count that the rest of the request does not have room for.
+        byte[] bytes = {0, 0, 0, 0, 0x7F, (byte)0xFF, (byte)0xFF, (byte)0xFF};
+        assertThrows(AuthzException.class, ()->LabelEvalCodec.readRequest(new ByteArrayInputStream(bytes), bytes.length));
+        // Too many labels, length not known.
+        byte[] bytes2 = {0, 0, 0, 0, 0x00, (byte)0x20, 0, 0};
+        assertThrows(AuthzException.class, ()->LabelEvalCodec.readRequest(new ByteArrayInputStream(bytes2)));
+    }
+
+    @Test public void service_1() throws Exception {
+        JettyServer server = LabelEvalService.start(0, attrStore);
+        try {
+            String url = serviceURL(LabelEvalService.baseURL(server), LabelEvalService.labelEvalPath);
+            service_1(url);
+        } finally { server.stop(); }
+    }
+
+    private void service_1(String url) throws Exception {
+        LabelEvalRequest request = new LabelEvalRequest("user1@email",
+                                                        List.of("clearance=ordinary", "clearance=top-secret"),
+                                                        new int[] {0, 1, 0});
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LabelEvalCodec.writeRequest(out, request);
+
+        HttpRequest httpRequest = HttpRequest.newBuilder(URI.create(url))
+                .header(HttpNames.hContentType, LabelEvalCodec.contentType)
+                .POST(BodyPublishers.ofByteArray(out.toByteArray()))
+                .build();
+        HttpResponse<byte[]> response = HttpClient.newHttpClient().send(httpRequest, BodyHandlers.ofByteArray());
+        assertEquals(200, response.statusCode());
+        boolean[] results = LabelEvalCodec.readResponse(new ByteArrayInputStream(response.body()));
+        assertArrayEquals(new boolean[] {true, false, true}, results);
+    }
+
+    @Test public void service_bad_request() throws Exception {
+        JettyServer server = LabelEvalService.start(0, attrStore);
+        try {
+            String url = serviceURL(LabelEvalService.baseURL(server), LabelEvalService.labelEvalPath);
+            HttpRequest httpRequest = HttpRequest.newBuilder(URI.create(url))
+                    .header(HttpNames.hContentType, LabelEvalCodec.contentType)
+                    .POST(BodyPublishers.ofByteArray(new byte[] {0, 0}))
+                    .build();
+            HttpResponse<byte[]> response = HttpClient.newHttpClient().send(httpRequest, BodyHandlers.ofByteArray());
+            assertEquals(400, response.statusCode());
+        } finally { server.stop(); }
+    }
+}
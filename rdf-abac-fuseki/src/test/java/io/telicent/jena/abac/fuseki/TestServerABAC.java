@@ -19,16 +19,31 @@ package io.telicent.jena.abac.fuseki;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.net.Authenticator;
 import java.net.http.HttpClient;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import io.telicent.jena.abac.ABAC;
+import io.telicent.jena.abac.core.Attributes;
 import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.core.VocabAuthzLabels;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsIndex;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.atlas.iterator.Iter;
 import org.apache.jena.atlas.lib.FileOps;
+import org.apache.jena.atlas.lib.IRILib;
 import org.apache.jena.atlas.lib.StrUtils;
 import org.apache.jena.atlas.logging.LogCtl;
 import org.apache.jena.fuseki.Fuseki;
@@ -36,18 +51,25 @@ import org.apache.jena.fuseki.main.FusekiServer;
 import org.apache.jena.fuseki.main.FusekiTestLib;
 import org.apache.jena.fuseki.system.FusekiLogging;
 import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.atlas.web.HttpException;
 import org.apache.jena.http.HttpRDF;
 import org.apache.jena.http.auth.AuthLib;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.WebContent;
 import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
 import org.apache.jena.sparql.exec.RowSet;
 import org.apache.jena.sparql.exec.RowSetOps;
 import org.apache.jena.sparql.exec.RowSetRewindable;
 import org.apache.jena.sparql.exec.http.DSP;
 import org.apache.jena.sparql.exec.http.GSP;
 import org.apache.jena.sparql.exec.http.QueryExecHTTPBuilder;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -316,6 +338,33 @@ public class TestServerABAC {
         } finally { server.stop(); }
     }
 
+    @Test public void get_labels_export() {
+        FusekiServer server = server("config-server-authz.ttl");
+        server.start();
+        try {
+            String URL="http://localhost:"+server.getPort()+"/ds";
+            load(server);
+            Graph g1 = HttpRDF.httpGetGraph(URL+"/labels", null);
+            // Not sent twice.
+            Graph g1nt = HttpRDF.httpGetGraph(URL+"/labels", WebContent.contentTypeNTriples);
+            assertEquals(g1.size(), g1nt.size());
+            Graph g2 = HttpRDF.httpGetGraph(URL+"/labels", WebContent.contentTypeRDFThrift);
+            assertTrue(g1.isIsomorphicWith(g2));
+
+            // Pages of 2 label descriptions.
+            assertEquals(5, countPatterns(g1));
+            assertEquals(2, countPatterns(HttpRDF.httpGetGraph(URL+"/labels?limit=2", null)));
+            assertEquals(1, countPatterns(HttpRDF.httpGetGraph(URL+"/labels?offset=4&limit=2", null)));
+            // By pattern.
+            String pattern = IRILib.encodeUriComponent("<http://example/s1> ANY ANY");
+            assertEquals(2, countPatterns(HttpRDF.httpGetGraph(URL+"/labels?pattern="+pattern, null)));
+        } finally { server.stop(); }
+    }
+
+    private static int countPatterns(Graph graph) {
+        return graph.find(null, VocabAuthzLabels.pPattern, null).toList().size();
+    }
+
     private static final String DatabaseArea = "target/databases";
 
     @Test public void server_restart() {
@@ -483,6 +532,223 @@ public class TestServerABAC {
         } finally { server.stop(); }
     }
 
+    @Test public void load_groupCommit() {
+        boolean b = ServerABAC.groupCommitUploads;
+        ServerABAC.groupCommitUploads = true;
+        FusekiServer server = server("config-server.ttl");
+        server.start();
+        String URL = "http://localhost:"+server.getPort()+"/ds";
+        try {
+            int N = 20;
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<?>> uploads = new ArrayList<>();
+                for ( int i = 0 ; i < N ; i++ ) {
+                    String label = ( i % 2 == 0 ) ? "manager" : "engineer";
+                    String payload = StrUtils.strjoinNL("Content-type: text/turtle",
+                                                        "Security-Label: "+label,
+                                                        "",
+                                                        "PREFIX : <http://example/>",
+                                                        ":s"+i+" :p "+i+" .");
+                    uploads.add(executor.submit(()->PlayLib.sendStringHTTP(URL+"/upload", payload)));
+                }
+                for ( Future<?> f : uploads )
+                    f.get();
+            } catch (InterruptedException | ExecutionException ex) {
+                throw new RuntimeException(ex);
+            } finally {
+                executor.shutdown();
+            }
+            query(URL, "u1", N/2);
+            query(URL, "u2", N/2);
+            query(URL, "u3", 0);
+            // A bad upload fails on its own.
+            String badPayload = StrUtils.strjoinNL("Content-type: text/turtle",
+                                                   "Security-Label: manager",
+                                                   "",
+                                                   "PREFIX : <http://example/>",
+                                                   ":s :p");
+            silentAll(()->assertThrows(HttpException.class, ()->PlayLib.sendStringHTTP(URL+"/upload", badPayload)));
+            query(URL, "u1", N/2);
+        } finally {
+            server.stop();
+            ServerABAC.groupCommitUploads = b;
+        }
+    }
+
+    @Test public void groupCommit_retry() {
+        DatasetGraph dsg = DatasetGraphFactory.createTxnMem();
+        LabelsStore labels = Labels.createLabelsStore();
+        DatasetGraphABAC dsgz = ABAC.authzDataset(dsg, labels, "*", Attributes.buildStore(GraphFactory.createDefaultGraph()));
+        ABAC_GroupCommit.Change change1 = groupCommitChange(":s1 :p 1 .", "[ authz:pattern '<http://example/s1> <http://example/p> 1' ; authz:label 'manager' ] .");
+        // Bad pattern: the group fails, and the changes are applied one by one.
+        ABAC_GroupCommit.Change change2 = groupCommitChange(":s2 :p 2 .", "[ authz:pattern '<http://example/s2' ; authz:label 'manager' ] .");
+        ABAC_GroupCommit.Change change3 = groupCommitChange(":s3 :p 3 .", "");
+
+        String[] loggers = { Labels.class.getName(), LabelsIndex.class.getName() };
+        Map<String, String> levels = new HashMap<>();
+        for ( String logger : loggers ) {
+            levels.put(logger, LogCtl.getLevel(logger));
+            LogCtl.disable(logger);
+        }
+        try {
+            ABAC_GroupCommit.get(dsgz).commit(List.of(change1, change2, change3));
+        } finally {
+            levels.forEach(LogCtl::setLevel);
+        }
+
+        assertFalse(change1.outcome().isCompletedExceptionally());
+        assertTrue(change2.outcome().isCompletedExceptionally());
+        assertFalse(change3.outcome().isCompletedExceptionally());
+        Triple triple1 = SSE.parseTriple("(:s1 :p 1)");
+        Triple triple2 = SSE.parseTriple("(:s2 :p 2)");
+        Triple triple3 = SSE.parseTriple("(:s3 :p 3)");
+        dsg.executeRead(()->{
+            assertTrue(dsg.getDefaultGraph().contains(triple1));
+            assertFalse(dsg.getDefaultGraph().contains(triple2));
+            assertTrue(dsg.getDefaultGraph().contains(triple3));
+        });
+        assertEquals(List.of("manager"), labels.labelsForTriples(triple1));
+        assertEquals(List.of(), labels.labelsForTriples(triple2));
+    }
+
+    private static ABAC_GroupCommit.Change groupCommitChange(String data, String labels) {
+        String prefixes = "PREFIX : <http://example/>\nPREFIX authz: <"+VocabAuthzLabels.getURI()+">\n";
+        DatasetGraph dsg = DatasetGraphFactory.create();
+        RDFParser.fromString(prefixes+data).lang(Lang.TTL).parse(dsg);
+        Graph graph = GraphFactory.createDefaultGraph();
+        RDFParser.fromString(prefixes+labels).lang(Lang.TTL).parse(graph);
+        return new ABAC_GroupCommit.Change(dsg, graph);
+    }
+
+    @Test public void load_pipelined() {
+        boolean b = ServerABAC.pipelinedUploads;
+        ServerABAC.pipelinedUploads = true;
+        FusekiServer server = server("config-server.ttl");
+        server.start();
+        String URL = "http://localhost:"+server.getPort()+"/ds";
+        try {
+            load(server);
+            query(URL, "u1", 3);
+            query(URL, "u2", 2);
+            // Several batches.
+            int N = 2500;
+            StringBuilder sb = new StringBuilder();
+            sb.append("Content-type: text/turtle\n");
+            sb.append("Security-Label: engineer\n");
+            sb.append("\n");
+            sb.append("PREFIX : <http://example/>\n");
+            for ( int i = 0 ; i < N ; i++ )
+                sb.append(":x"+i+" :p "+i+" .\n");
+            PlayLib.sendStringHTTP(URL+"/upload", sb.toString());
+            query(URL, "u1", 3);
+            query(URL, "u2", 2+N);
+            // Parse error after the first batches.
+            sb.append(":s :p");
+            silentAll(()->assertThrows(HttpException.class, ()->PlayLib.sendStringHTTP(URL+"/upload", sb.toString())));
+            query(URL, "u2", 2+N);
+        } finally {
+            server.stop();
+            ServerABAC.pipelinedUploads = b;
+        }
+    }
+
+    @Test public void load_pipelined_concurrent() throws Exception {
+        boolean b = ServerABAC.pipelinedUploads;
+        int maxParsers = ServerABAC.pipelineMaxParsers;
+        ServerABAC.pipelinedUploads = true;
+        // Read as each upload starts: some uploads are parsed on the request thread.
+        ServerABAC.pipelineMaxParsers = 1;
+        FusekiServer server = server("config-server.ttl");
+        server.start();
+        String URL = "http://localhost:"+server.getPort()+"/ds";
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            load(server);
+            int N = 1500;
+            List<Future<?>> uploads = new ArrayList<>();
+            for ( int j = 0 ; j < 4 ; j++ ) {
+                StringBuilder sb = new StringBuilder();
+                sb.append("Content-type: text/turtle\n");
+                sb.append("Security-Label: engineer\n");
+                sb.append("\n");
+                sb.append("PREFIX : <http://example/>\n");
+                for ( int i = 0 ; i < N ; i++ )
+                    sb.append(":x"+j+"_"+i+" :p "+i+" .\n");
+                uploads.add(executor.submit(()->PlayLib.sendStringHTTP(URL+"/upload", sb.toString())));
+            }
+            for ( Future<?> upload : uploads )
+                upload.get();
+            query(URL, "u1", 3);
+            query(URL, "u2", 2+4*N);
+        } finally {
+            executor.shutdownNow();
+            server.stop();
+            ServerABAC.pipelinedUploads = b;
+            ServerABAC.pipelineMaxParsers = maxParsers;
+        }
+    }
+
+    @Test public void load_validateBeforeExecute() {
+        FusekiServer server = server("config-server.ttl");
+        DatasetGraph dsg0 = server.getDataAccessPointRegistry().get("/ds").getDataService().getDataset();
+        server.start();
+        String URL = "http://localhost:"+server.getPort()+"/ds";
+        try {
+            load(server);
+            long before = Txn.calculateRead(dsg0, ()->Iter.count(dsg0.find()));
+            // Triples without a "Security-Label" header fail validation.
+            String payload = StrUtils.strjoinNL
+                    ("Content-type: text/turtle"
+                    ,""
+                    ,"PREFIX : <http://example/>"
+                    ,":s :p :o ."
+                    );
+            silentAll(()->assertThrows(HttpException.class, ()->PlayLib.sendStringHTTP(URL+"/upload", payload)));
+            long after = Txn.calculateRead(dsg0, ()->Iter.count(dsg0.find()));
+            assertEquals(before, after);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test public void update_labelled() {
+        FusekiServer server = server("config-server.ttl");
+        server.start();
+        String URL = "http://localhost:"+server.getPort()+"/ds";
+        try {
+            // SPARQL Update with a Security-Label header.
+            String update = StrUtils.strjoinNL("Content-type: application/sparql-update",
+                                               "Security-Label: manager",
+                                               "",
+                                               "PREFIX : <http://example/>",
+                                               "INSERT DATA { :s1 :p 1 . :s2 :p 2 }");
+            PlayLib.sendStringHTTP(URL+"/upload", update);
+            query(URL, "u1", 2);
+            query(URL, "u2", 0);
+
+            // RDF Patch with label descriptions in graph authz:labels.
+            String patch = StrUtils.strjoinNL("Content-type: application/rdf-patch",
+                                              "",
+                                              "TX .",
+                                              "A <http://example/s3> <http://example/p> 3 .",
+                                              "A <_:b1> <http://telicent.io/security#pattern> \"<http://example/s3> <http://example/p> 3\" <http://telicent.io/security#labels> .",
+                                              "A <_:b1> <http://telicent.io/security#label> \"engineer\" <http://telicent.io/security#labels> .",
+                                              "TC .");
+            PlayLib.sendStringHTTP(URL+"/upload", patch);
+            query(URL, "u1", 2);
+            query(URL, "u2", 1);
+
+            // Delete removes the data and its label.
+            String delete = StrUtils.strjoinNL("Content-type: application/sparql-update",
+                                               "",
+                                               "PREFIX : <http://example/>",
+                                               "DELETE DATA { :s1 :p 1 }");
+            PlayLib.sendStringHTTP(URL+"/upload", delete);
+            query(URL, "u1", 1);
+        } finally { server.stop(); }
+    }
+
     private HttpClient createHttpClient(String user, String password) {
         Authenticator authenticator1 = AuthLib.authenticator(user, password);
         return HttpClient.newBuilder()